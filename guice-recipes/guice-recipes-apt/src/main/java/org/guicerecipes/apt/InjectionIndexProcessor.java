@@ -0,0 +1,200 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.apt;
+
+import java.io.*;
+import java.util.*;
+
+import javax.annotation.processing.*;
+import javax.lang.model.*;
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import javax.lang.model.util.*;
+import javax.tools.*;
+
+/**
+ * An annotation processor which writes an index of the members of each compiled class which are annotated with one of the injection or lifecycle annotations supported by
+ * guice-recipes, so that the runtime can find them without walking every declared field and method by reflection.
+ * <p>
+ * The index is written to {@value #INDEX_RESOURCE} and contains one line per compiled class, including classes with no annotated members, followed by the names of the annotated fields
+ * and the signatures of the annotated methods, such as <code>setFoo(java.lang.String)</code>, using the binary names of the erased parameter types. Methods which are not annotated
+ * but override an annotated method of a super class are listed too so that the runtime can tell the super class method has been overridden. Lines starting with <code>@</code> list the annotations the index covers, which can be extended with the
+ * {@value #ANNOTATIONS_OPTION} option as a comma separated list of annotation class names.
+ * 
+ * @version $Revision: 1.1 $
+ */
+@SupportedAnnotationTypes("*")
+@SupportedOptions(InjectionIndexProcessor.ANNOTATIONS_OPTION)
+public class InjectionIndexProcessor extends AbstractProcessor {
+	public static final String INDEX_RESOURCE = "META-INF/guice-recipes/injection.index";
+	public static final String ANNOTATIONS_OPTION = "org.guicerecipes.annotations";
+
+	private static final String[] DEFAULT_ANNOTATIONS = { "javax.annotation.Resource", "javax.annotation.PostConstruct", "javax.annotation.PreDestroy", "javax.ejb.EJB",
+			"javax.persistence.PersistenceContext", "org.springframework.beans.factory.annotation.Autowired", "org.guicerecipes.Configures" };
+
+	private final Set<String> annotationNames = new LinkedHashSet<String>(Arrays.asList(DEFAULT_ANNOTATIONS));
+	private final Map<String, List<String>> index = new TreeMap<String, List<String>>();
+
+	@Override
+	public synchronized void init(ProcessingEnvironment processingEnv) {
+		super.init(processingEnv);
+		String option = processingEnv.getOptions().get(ANNOTATIONS_OPTION);
+		if (option != null) {
+			for (String name : option.split(",")) {
+				name = name.trim();
+				if (name.length() > 0) {
+					annotationNames.add(name);
+				}
+			}
+		}
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		if (roundEnv.processingOver()) {
+			writeIndex();
+		} else {
+			for (Element element : roundEnv.getRootElements()) {
+				indexType(element);
+			}
+		}
+		// we only observe the annotations so let other processors see them too
+		return false;
+	}
+
+	protected void indexType(Element element) {
+		ElementKind kind = element.getKind();
+		if (!kind.isClass() && !kind.isInterface()) {
+			return;
+		}
+		TypeElement type = (TypeElement) element;
+		List<String> members = new ArrayList<String>();
+		for (Element member : type.getEnclosedElements()) {
+			ElementKind memberKind = member.getKind();
+			if (memberKind.isClass() || memberKind.isInterface()) {
+				indexType(member);
+			} else if (memberKind == ElementKind.FIELD) {
+				if (isAnnotated(member)) {
+					members.add(member.getSimpleName().toString());
+				}
+			} else if (memberKind == ElementKind.METHOD) {
+				ExecutableElement method = (ExecutableElement) member;
+				if (isAnnotated(method) || overridesAnnotated(type, method)) {
+					members.add(getSignature(method));
+				}
+			}
+		}
+		if (kind.isClass()) {
+			Elements elements = processingEnv.getElementUtils();
+			index.put(elements.getBinaryName(type).toString(), members);
+		}
+	}
+
+	protected boolean isAnnotated(Element member) {
+		for (AnnotationMirror annotation : member.getAnnotationMirrors()) {
+			TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+			if (annotationNames.contains(annotationType.getQualifiedName().toString())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if the given method of the given type overrides an annotated method of one of its super classes
+	 */
+	protected boolean overridesAnnotated(TypeElement type, ExecutableElement method) {
+		Set<Modifier> modifiers = method.getModifiers();
+		if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC)) {
+			return false;
+		}
+		Elements elements = processingEnv.getElementUtils();
+		for (TypeMirror superclass = type.getSuperclass(); superclass.getKind() == TypeKind.DECLARED;) {
+			TypeElement superType = (TypeElement) ((DeclaredType) superclass).asElement();
+			for (Element member : superType.getEnclosedElements()) {
+				if (member.getKind() == ElementKind.METHOD && member.getSimpleName().equals(method.getSimpleName()) && isAnnotated(member)
+						&& elements.overrides(method, (ExecutableElement) member, type)) {
+					return true;
+				}
+			}
+			superclass = superType.getSuperclass();
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the name of the given method followed by the binary names of its erased parameter types in brackets
+	 */
+	protected String getSignature(ExecutableElement method) {
+		StringBuilder buffer = new StringBuilder(method.getSimpleName());
+		buffer.append('(');
+		Types types = processingEnv.getTypeUtils();
+		for (VariableElement parameter : method.getParameters()) {
+			if (buffer.charAt(buffer.length() - 1) != '(') {
+				buffer.append(',');
+			}
+			buffer.append(getTypeName(types.erasure(parameter.asType())));
+		}
+		return buffer.append(')').toString();
+	}
+
+	private String getTypeName(TypeMirror type) {
+		switch (type.getKind()) {
+		case ARRAY:
+			return getTypeName(((ArrayType) type).getComponentType()) + "[]";
+		case DECLARED:
+			return processingEnv.getElementUtils().getBinaryName((TypeElement) ((DeclaredType) type).asElement()).toString();
+		default:
+			return type.toString();
+		}
+	}
+
+	protected void writeIndex() {
+		if (index.isEmpty()) {
+			return;
+		}
+		try {
+			FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX_RESOURCE);
+			PrintWriter writer = new PrintWriter(new OutputStreamWriter(resource.openOutputStream(), "UTF-8"));
+			try {
+				writer.println("# generated by " + getClass().getName());
+				for (String annotationName : annotationNames) {
+					writer.println("@" + annotationName);
+				}
+				for (Map.Entry<String, List<String>> entry : index.entrySet()) {
+					writer.print(entry.getKey());
+					for (String member : entry.getValue()) {
+						writer.print(' ');
+						writer.print(member);
+					}
+					writer.println();
+				}
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Could not write " + INDEX_RESOURCE + ": " + e);
+		}
+	}
+}
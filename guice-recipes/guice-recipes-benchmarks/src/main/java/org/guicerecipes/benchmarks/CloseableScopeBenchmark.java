@@ -0,0 +1,84 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.benchmarks;
+
+import java.lang.annotation.*;
+import java.util.concurrent.*;
+
+import org.guicerecipes.util.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.Scope;
+
+import com.google.inject.*;
+import com.google.inject.name.*;
+
+/**
+ * Measures looking up the objects of a {@link CloseableScope} from many threads at once, mostly hits once the scope has been filled
+ * 
+ * @version $Revision: 1.1 $
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class CloseableScopeBenchmark {
+	/** the number of keys in the scope which must be a power of two */
+	@Param( { "16", "1024" })
+	int keys;
+
+	private Provider<Object>[] providers;
+	private int mask;
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		CloseableScope scope = new CloseableScope(BenchmarkScoped.class);
+		providers = new Provider[keys];
+		mask = keys - 1;
+		for (int i = 0; i < keys; i++) {
+			providers[i] = scope.scope(Key.get(Object.class, Names.named("key" + i)), new Provider<Object>() {
+				public Object get() {
+					return new Object();
+				}
+			});
+		}
+	}
+
+	@Benchmark
+	public Object get(Cursor cursor) {
+		return providers[cursor.next++ & mask].get();
+	}
+
+	/**
+	 * The next key each thread looks up, starting from a different key in each thread
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next = ThreadLocalRandom.current().nextInt();
+	}
+
+	@Target( { ElementType.TYPE, ElementType.METHOD })
+	@Retention(RetentionPolicy.RUNTIME)
+	@ScopeAnnotation
+	public @interface BenchmarkScoped {
+	}
+}
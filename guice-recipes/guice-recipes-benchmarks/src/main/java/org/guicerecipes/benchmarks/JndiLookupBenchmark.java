@@ -0,0 +1,76 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.benchmarks;
+
+import java.util.concurrent.*;
+
+import javax.naming.*;
+
+import org.guicerecipes.jndi.internal.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures looking up names in a {@link JndiContext} of increasing size, including names in a sub context and names which are not bound
+ * 
+ * @version $Revision: 1.1 $
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JndiLookupBenchmark {
+	@Param( { "100", "1000", "10000", "100000" })
+	int bindings;
+
+	private JndiContext context;
+	private String name;
+	private String nestedName;
+
+	@Setup
+	public void setUp() throws Exception {
+		context = new JndiContext();
+		for (int i = 0; i < bindings; i++) {
+			context.bind("entry" + i, "value" + i);
+		}
+		context.bind("env/jdbc/dataSource", "dataSource");
+		name = "entry" + (bindings / 2);
+		nestedName = "env/jdbc/dataSource";
+	}
+
+	@Benchmark
+	public Object lookup() throws NamingException {
+		return context.lookup(name);
+	}
+
+	@Benchmark
+	public Object lookupNested() throws NamingException {
+		return context.lookup(nestedName);
+	}
+
+	@Benchmark
+	public Object lookupMissing() {
+		try {
+			return context.lookup("missing");
+		} catch (NamingException e) {
+			return e;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.benchmarks;
+
+import java.util.concurrent.*;
+
+import org.guicerecipes.benchmarks.SyntheticModules.*;
+import org.guicerecipes.jsr250.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.Scope;
+
+import com.google.inject.*;
+
+/**
+ * Measures creating an object injected with @Resource fields or methods, comparing the reflective injection with the generated members injectors
+ * 
+ * @version $Revision: 1.1 $
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Jsr250InjectionBenchmark {
+	@Param( { "false", "true" })
+	boolean generateMembersInjectors;
+
+	@Param( { "100", "10000" })
+	int bindings;
+
+	private Injector injector;
+
+	@Setup
+	public void setUp() {
+		Jsr250Module module = new Jsr250Module();
+		module.setGenerateMembersInjectors(generateMembersInjectors);
+		injector = Guice.createInjector(module, SyntheticModules.newModule(bindings));
+	}
+
+	@Benchmark
+	public Object fieldInjection() {
+		return injector.getInstance(ResourceFieldBean.class);
+	}
+
+	@Benchmark
+	public Object methodInjection() {
+		return injector.getInstance(ResourceMethodBean.class);
+	}
+}
@@ -0,0 +1,164 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.benchmarks;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import javax.annotation.*;
+
+import org.springframework.beans.factory.annotation.*;
+
+import com.google.inject.*;
+import com.google.inject.name.*;
+
+/**
+ * Generates modules with a given number of bindings so that the benchmarks can be run against injectors of any size, from a hundred to a hundred thousand bindings.
+ * <p>
+ * Half of the bindings are named {@link Service} singletons, alternating between two implementations with a {@link PreDestroy} method, and the other half are named string constants
+ * so that the queries by type have bindings to skip over.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public final class SyntheticModules {
+	private static final AtomicLong destroyed = new AtomicLong();
+
+	private SyntheticModules() {
+	}
+
+	/**
+	 * Returns a module with the given number of bindings
+	 */
+	public static Module newModule(final int bindings) {
+		return new AbstractModule() {
+			@Override
+			protected void configure() {
+				for (int i = 0; i < bindings; i++) {
+					if (i % 2 == 0) {
+						Service service = (i % 4 == 0) ? new ServiceA(i) : new ServiceB(i);
+						bind(Key.get(Service.class, Names.named(serviceName(i / 2)))).toInstance(service);
+					} else {
+						bindConstant().annotatedWith(Names.named("constant" + i)).to("value" + i);
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns the name of the given service bound by {@link #newModule(int)}
+	 */
+	public static String serviceName(int index) {
+		return "service" + index;
+	}
+
+	/**
+	 * Returns the number of times a {@link PreDestroy} method has been invoked, so that the closing can't be optimised away
+	 */
+	public static long getDestroyed() {
+		return destroyed.get();
+	}
+
+	public interface Service {
+		int getId();
+	}
+
+	public abstract static class ServiceSupport implements Service {
+		private final int id;
+
+		protected ServiceSupport(int id) {
+			this.id = id;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		@PreDestroy
+		public void destroy() {
+			destroyed.incrementAndGet();
+		}
+	}
+
+	public static class ServiceA extends ServiceSupport {
+		public ServiceA(int id) {
+			super(id);
+		}
+	}
+
+	public static class ServiceB extends ServiceSupport {
+		public ServiceB(int id) {
+			super(id);
+		}
+	}
+
+	/**
+	 * Injected with @Resource fields which are looked up by name
+	 */
+	public static class ResourceFieldBean {
+		@Resource(name = "service0")
+		Service first;
+
+		@Resource(name = "service1")
+		Service second;
+
+		@Resource(name = "constant1")
+		String constant;
+	}
+
+	/**
+	 * Injected with @Resource methods which are looked up by name
+	 */
+	public static class ResourceMethodBean {
+		Service first;
+		Service second;
+		String constant;
+
+		@Resource(name = "service0")
+		public void setFirst(Service first) {
+			this.first = first;
+		}
+
+		@Resource(name = "service1")
+		public void setSecond(Service second) {
+			this.second = second;
+		}
+
+		@Resource(name = "constant1")
+		public void setConstant(String constant) {
+			this.constant = constant;
+		}
+	}
+
+	public static class AutowiredSingleBean {
+		@Autowired
+		@Qualifier("service0")
+		Service service;
+	}
+
+	public static class AutowiredCollectionBean {
+		@Autowired
+		List<Service> services;
+	}
+
+	public static class AutowiredMapBean {
+		@Autowired
+		Map<String, Service> services;
+	}
+}
@@ -18,13 +18,16 @@
 
 package org.guicerecipes;
 
+import java.io.*;
 import java.lang.annotation.*;
 import java.lang.reflect.*;
 import java.util.*;
 import java.util.Map.*;
+import java.util.concurrent.*;
 
 import org.guicerecipes.jndi.*;
 import org.guicerecipes.jndi.internal.*;
+import org.guicerecipes.metrics.*;
 import org.guicerecipes.support.*;
 import org.guicerecipes.support.internal.*;
 
@@ -33,14 +36,22 @@ import com.google.inject.*;
 import com.google.inject.internal.*;
 import com.google.inject.matcher.*;
 import com.google.inject.name.*;
+import com.google.inject.spi.*;
 import com.google.inject.util.*;
 
 /** @version $Revision: 1.1 $ */
 public class Injectors {
 	public static final String MODULE_CLASS_NAMES = "org.guicerecipes.modules";
+	public static final String PRE_SCAN = "org.guicerecipes.preScan";
+	public static final String PROFILE = "org.guicerecipes.profile";
+	public static final String PROFILE_REPORT = "org.guicerecipes.profileReport";
 
 	/**
 	 * Creates an injector from the given properties, loading any modules define by the {@link #MODULE_CLASS_NAMES} property value (space separated) along with any other modules passed as an argument.
+	 * If the {@link #PRE_SCAN} property is <code>true</code> the bound classes are scanned in parallel first, see {@link #createInjector(Executor, Module...)}
+	 * <p>
+	 * If the {@link #PROFILE} property is <code>true</code> the creation of the injector is profiled, see {@link #createInjector(InjectorProfiler, Module...)}, and the report is
+	 * written to the file named by the {@link #PROFILE_REPORT} property if there is one, as JSON if its name ends with .json otherwise as text.
 	 * 
 	 * @param environment the properties used to create the injector
 	 * @param overridingModules any modules which override the modules referenced in the environment such as to provide the actual JNDI context
@@ -69,10 +80,113 @@ public class Injectors {
 				}
 			}
 		}
-		Injector injector = Guice.createInjector(Modules.override(modules).with(overridingModules));
+		Module module = Modules.override(modules).with(overridingModules);
+		InjectorProfiler profiler = null;
+		Object profile = environment.get(PROFILE);
+		if (profile != null && Boolean.valueOf(profile.toString())) {
+			profiler = new InjectorProfiler();
+		}
+		ExecutorService executor = null;
+		Object preScan = environment.get(PRE_SCAN);
+		if (preScan != null && Boolean.valueOf(preScan.toString())) {
+			executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "guice-recipes pre-scan");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		Injector injector;
+		try {
+			injector = createInjector(executor, profiler, module);
+		} finally {
+			if (executor != null) {
+				executor.shutdown();
+			}
+		}
+		Object report = environment.get(PROFILE_REPORT);
+		if (profiler != null && report != null) {
+			try {
+				profiler.writeReport(new File(report.toString()));
+			} catch (IOException e) {
+				// the report is only diagnostic so lets not fail the injector
+			}
+		}
 		return injector;
 	}
 
+	/**
+	 * Creates an injector from the given modules after scanning the classes they bind for the annotations used by the {@link GuiceyFruitModule} listeners in parallel with the given
+	 * executor, so that the listeners mostly find the annotated members already scanned while the injector is created. The modules are only configured once.
+	 */
+	public static Injector createInjector(Executor preScanExecutor, Module... modules) {
+		return createInjector(preScanExecutor, null, modules);
+	}
+
+	/**
+	 * Creates an injector from the given modules recording the time spent by the {@link GuiceyFruitModule} listeners, annotation handlers, member providers and {@link Configures}
+	 * methods in the given profiler, along with the overall time to create the injector. The profiler is bound in the injector so that its report can be looked at afterwards.
+	 */
+	public static Injector createInjector(InjectorProfiler profiler, Module... modules) {
+		return createInjector(null, profiler, modules);
+	}
+
+	private static Injector createInjector(Executor preScanExecutor, final InjectorProfiler profiler, Module... modules) {
+		if (profiler == null) {
+			return createInjector(preScanExecutor, modules, null);
+		}
+		InjectorProfiler previous = InjectorProfiler.getCurrent();
+		InjectorProfiler.setCurrent(profiler);
+		InjectorProfiler.Timer timer = profiler.start(InjectorProfiler.INJECTOR, "createInjector");
+		try {
+			return createInjector(preScanExecutor, modules, new AbstractModule() {
+				@Override
+				protected void configure() {
+					bind(InjectorProfiler.class).toInstance(profiler);
+				}
+			});
+		} finally {
+			timer.stop();
+			InjectorProfiler.setCurrent(previous);
+		}
+	}
+
+	private static Injector createInjector(Executor preScanExecutor, Module[] modules, Module profilerModule) {
+		List<Module> list = Lists.newArrayList(modules);
+		if (profilerModule != null) {
+			list.add(profilerModule);
+		}
+		if (preScanExecutor == null) {
+			return Guice.createInjector(list);
+		}
+		List<Element> elements = Elements.getElements(list);
+		PreScanner preScanner = new PreScanner();
+		preScanner.addElements(elements);
+		preScanner.scan(preScanExecutor);
+		return Guice.createInjector(Elements.getModule(elements));
+	}
+
+	/**
+	 * Creates all the singletons of the injector ahead of their first use in the calling thread, see {@link #warmUp(Injector, Class, Executor)}
+	 */
+	public static Map<Key<?>, Long> warmUp(Injector injector, Executor executor) {
+		return warmUp(injector, Singleton.class, executor);
+	}
+
+	/**
+	 * Creates all the objects of the injector within the given scope ahead of their first use. The bindings are ordered into levels from their dependencies so that the bindings of
+	 * each level only depend on bindings of earlier levels, then the objects of each level are created in parallel using the given executor.
+	 * <p>
+	 * Note that Guice creates its singletons while holding a lock shared by all injectors, so there is no speed-up from creating them in parallel; singletons are instead created in
+	 * dependency order in the calling thread and the executor is only used for other scopes, such as a {@link org.guicerecipes.util.CloseableScope}.
+	 * 
+	 * @return the time in nanoseconds taken to create each binding in the order they were created, which is also recorded in the {@link InjectorProfiler} of the injector if it has one
+	 */
+	public static Map<Key<?>, Long> warmUp(Injector injector, Class<? extends Annotation> scopeAnnotation, Executor executor) {
+		return new DependencyLevels(injector, scopeAnnotation, false).warmUp(executor);
+	}
+
 	/**
 	 * Returns an instance of the given type with the {@link com.google.inject.name.Named} annotation value.
 	 * 
@@ -89,21 +203,68 @@ public class Injectors {
 	 * 
 	 * @param baseClass the base type of objects required
 	 * @param <T> the base type
-	 * @return a set of objects returned from this injector
+	 * @return a set of objects returned from this injector in the order of their bindings
 	 */
 	public static <T> Set<T> getInstancesOf(Injector injector, Class<T> baseClass) {
-		Set<T> answer = Sets.newHashSet();
-		Set<Entry<Key<?>, Binding<?>>> entries = injector.getBindings().entrySet();
-		for (Entry<Key<?>, Binding<?>> entry : entries) {
-			Key<?> key = entry.getKey();
-			Class<?> keyType = getKeyType(key);
-			if ((keyType != null) && baseClass.isAssignableFrom(keyType)) {
-				Binding<?> binding = entry.getValue();
-				Object value = binding.getProvider().get();
-				if (value != null) {
-					T castValue = baseClass.cast(value);
-					answer.add(castValue);
-				}
+		Set<T> answer = Sets.newLinkedHashSet();
+		for (Binding<?> binding : BindingIndex.getInstance(injector).getBindingsOf(baseClass)) {
+			Object value = binding.getProvider().get();
+			if (value != null) {
+				T castValue = baseClass.cast(value);
+				answer.add(castValue);
+			}
+		}
+		return answer;
+	}
+
+	/**
+	 * Returns the instances of the given base type in the order of their bindings, only creating each instance as the iteration reaches it so that a caller looking for a
+	 * particular instance does not create all the others
+	 * 
+	 * @param baseClass the base type of objects required
+	 * @param <T> the base type
+	 * @return the objects returned from this injector which can be iterated through many times
+	 */
+	public static <T> Iterable<T> iterateInstancesOf(Injector injector, final Class<T> baseClass) {
+		final List<Binding<?>> bindings = BindingIndex.getInstance(injector).getBindingsOf(baseClass);
+		return new Iterable<T>() {
+			public Iterator<T> iterator() {
+				return new InstanceIterator<T>(baseClass, bindings);
+			}
+		};
+	}
+
+	/**
+	 * Returns the instances of the given base type in the order of their bindings like {@link #iterateInstancesOf(Injector, Class)}, creating up to <code>readAhead</code>
+	 * instances ahead of the iteration in parallel using the given executor
+	 * 
+	 * @param baseClass the base type of objects required
+	 * @param <T> the base type
+	 * @return the objects returned from this injector which can be iterated through many times
+	 */
+	public static <T> Iterable<T> iterateInstancesOf(Injector injector, final Class<T> baseClass, final Executor executor, final int readAhead) {
+		final List<Binding<?>> bindings = BindingIndex.getInstance(injector).getBindingsOf(baseClass);
+		return new Iterable<T>() {
+			public Iterator<T> iterator() {
+				return new InstanceIterator<T>(baseClass, bindings, executor, readAhead);
+			}
+		};
+	}
+
+	/**
+	 * Returns a collection of all instances of the given type, which may be a parameterized type such as <code>List&lt;String&gt;</code>
+	 * 
+	 * @param type the type of objects required
+	 * @param <T> the type
+	 * @return a set of objects returned from this injector in the order of their bindings
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> Set<T> getInstancesOf(Injector injector, TypeLiteral<T> type) {
+		Set<T> answer = Sets.newLinkedHashSet();
+		for (Binding<?> binding : BindingIndex.getInstance(injector).getBindingsOf(type)) {
+			Object value = binding.getProvider().get();
+			if (value != null) {
+				answer.add((T) value);
 			}
 		}
 		return answer;
@@ -161,15 +322,9 @@ public class Injectors {
 	 */
 	@SuppressWarnings("unchecked")
 	public static <T> Set<Provider<T>> getProvidersOf(Injector injector, Class<T> baseClass) {
-		Set<Provider<T>> answer = Sets.newHashSet();
-		Set<Entry<Key<?>, Binding<?>>> entries = injector.getBindings().entrySet();
-		for (Entry<Key<?>, Binding<?>> entry : entries) {
-			Key<?> key = entry.getKey();
-			Class<?> keyType = getKeyType(key);
-			if ((keyType != null) && baseClass.isAssignableFrom(keyType)) {
-				Binding<?> binding = entry.getValue();
-				answer.add((Provider<T>) binding.getProvider());
-			}
+		Set<Provider<T>> answer = Sets.newLinkedHashSet();
+		for (Binding<?> binding : BindingIndex.getInstance(injector).getBindingsOf(baseClass)) {
+			answer.add((Provider<T>) binding.getProvider());
 		}
 		return answer;
 	}
@@ -181,7 +336,7 @@ public class Injectors {
 
 	/** Returns true if a binding exists for the given base class */
 	public static boolean hasBinding(Injector injector, Class<?> baseClass) {
-		return !getBindingsOf(injector, baseClass).isEmpty();
+		return !BindingIndex.getInstance(injector).getBindingsOf(baseClass).isEmpty();
 	}
 
 	/** Returns true if a binding exists for the given key */
@@ -220,19 +375,20 @@ public class Injectors {
 	 * Returns a collection of all bindings of the given base type
 	 * 
 	 * @param baseClass the base type of objects required
-	 * @return a set of objects returned from this injector
+	 * @return a set of objects returned from this injector in the order of the bindings
 	 */
 	public static Set<Binding<?>> getBindingsOf(Injector injector, Class<?> baseClass) {
-		Set<Binding<?>> answer = Sets.newHashSet();
-		Set<Entry<Key<?>, Binding<?>>> entries = injector.getBindings().entrySet();
-		for (Entry<Key<?>, Binding<?>> entry : entries) {
-			Key<?> key = entry.getKey();
-			Class<?> keyType = getKeyType(key);
-			if ((keyType != null) && baseClass.isAssignableFrom(keyType)) {
-				answer.add(entry.getValue());
-			}
-		}
-		return answer;
+		return Sets.<Binding<?>> newLinkedHashSet(BindingIndex.getInstance(injector).getBindingsOf(baseClass));
+	}
+
+	/**
+	 * Returns a collection of all bindings of the given type, which may be a parameterized type such as <code>List&lt;String&gt;</code>
+	 * 
+	 * @param type the type of objects required
+	 * @return a set of objects returned from this injector in the order of the bindings
+	 */
+	public static Set<Binding<?>> getBindingsOf(Injector injector, TypeLiteral<?> type) {
+		return Sets.<Binding<?>> newLinkedHashSet(BindingIndex.getInstance(injector).getBindingsOf(type));
 	}
 
 	/** Returns the key type of the given key */
@@ -290,58 +446,137 @@ public class Injectors {
 	 * Closes objects within the given scope using the currently registered {@link Closer} implementations
 	 */
 	public static void close(Injector injector, Class<? extends Annotation> scopeAnnotationToClose, CloseErrors errors) throws CloseFailedException {
-		Set<Closer> closers = getInstancesOf(injector, Closer.class);
-		Closer closer = CompositeCloser.newInstance(closers);
-		if (closer == null) {
+		MetricsRecorder recorder = Metrics.getRecorder();
+		if (recorder == null) {
+			closeScope(injector, scopeAnnotationToClose, errors);
 			return;
 		}
-
-		Set<Entry<Key<?>, Binding<?>>> entries = injector.getBindings().entrySet();
-		for (Entry<Key<?>, Binding<?>> entry : entries) {
-			Key<?> key = entry.getKey();
-			Binding<?> binding = entry.getValue();
-			closeBinding(key, binding, scopeAnnotationToClose, closer, errors);
+		long start = System.nanoTime();
+		try {
+			closeScope(injector, scopeAnnotationToClose, errors);
+		} finally {
+			recorder.record(Metrics.CLOSE + scopeAnnotationToClose.getName(), System.nanoTime() - start);
 		}
+	}
 
-		tryCloseJitBindings(closer, injector, scopeAnnotationToClose, errors);
-		errors.throwIfNecessary();
+	/**
+	 * Closes any singleton objects in the injector in parallel, see {@link #close(Injector, Class, Executor, long, long, TimeUnit, CloseErrors)}
+	 */
+	public static void close(Injector injector, Executor executor, long objectTimeout, long timeout, TimeUnit unit) throws CloseFailedException {
+		close(injector, Singleton.class, executor, objectTimeout, timeout, unit, new CloseErrorsImpl(Injectors.class));
 	}
 
-	@SuppressWarnings("unchecked")
-	private static void tryCloseJitBindings(Closer closer, Injector injector, Class<? extends Annotation> scopeAnnotationToClose, CloseErrors errors) {
-		Class<? extends Injector> type = injector.getClass();
-		Field field;
+	/**
+	 * Closes objects within the given scope using the currently registered {@link Closer} implementations in the reverse order of their dependencies, so that an object is closed
+	 * before the objects it depends on, closing the objects which do not depend on each other in parallel using the given executor.
+	 * <p>
+	 * Objects which take longer than <code>objectTimeout</code> to close, or which are not closed within <code>timeout</code> of this method being called, are reported to the errors
+	 * with a {@link TimeoutException} and their close is interrupted so that this method returns in time.
+	 */
+	public static void close(Injector injector, Class<? extends Annotation> scopeAnnotationToClose, Executor executor, long objectTimeout, long timeout, TimeUnit unit,
+			CloseErrors errors) throws CloseFailedException {
+		MetricsRecorder recorder = Metrics.getRecorder();
+		long start = recorder != null ? System.nanoTime() : 0;
 		try {
-			field = type.getDeclaredField("jitBindings");
-			field.setAccessible(true);
-			Object bindings = field.get(injector);
-			if (bindings != null) {
-				if (bindings instanceof Map<?, ?>) {
-					Map<Key<?>, BindingImpl<?>> map = (Map<Key<?>, BindingImpl<?>>) bindings;
-					Set<Entry<Key<?>, BindingImpl<?>>> entries = map.entrySet();
-					for (Entry<Key<?>, BindingImpl<?>> entry : entries) {
-						closeBinding(entry.getKey(), entry.getValue(), scopeAnnotationToClose, closer, errors);
+			Closer closer = Closers.getCloser(injector);
+			if (closer == null) {
+				return;
+			}
+			CloseRegistry registry = CloseRegistry.getInstance(injector);
+			Set<Key<?>> created = registry != null ? registry.getCreatedKeys(scopeAnnotationToClose) : null;
+			Set<Key<?>> unlevelled = created != null ? Sets.newHashSet(created) : null;
+			Set<Object> closed = Sets.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+			List<Map<Object, Key<?>>> levels = Lists.newArrayList();
+
+			// the objects of created bindings which are not in the levels are closed after all the others
+			Map<Object, Key<?>> remaining = new IdentityHashMap<Object, Key<?>>();
+			levels.add(remaining);
+			for (List<Binding<?>> bindings : new DependencyLevels(injector, scopeAnnotationToClose).getLevels()) {
+				Map<Object, Key<?>> level = new IdentityHashMap<Object, Key<?>>();
+				for (Binding<?> binding : bindings) {
+					Key<?> key = binding.getKey();
+					if (created == null || unlevelled.remove(key) || CloseRegistry.getImplementationType(injector, binding) == null) {
+						addObjectToClose(level, key, getObjectToClose(injector, binding, closer), closer, closed);
 					}
 				}
+				levels.add(level);
+			}
+			if (registry != null) {
+				for (Key<?> key : unlevelled) {
+					addObjectToClose(remaining, key, getObjectToClose(injector, injector.getBinding(key), closer), closer, closed);
+				}
+				forgetClosed(registry, scopeAnnotationToClose, created, closed);
+			}
+			new ParallelCloser(closer, executor, objectTimeout, timeout, unit).close(levels, errors);
+		} finally {
+			if (recorder != null) {
+				recorder.record(Metrics.CLOSE + scopeAnnotationToClose.getName(), System.nanoTime() - start);
 			}
-		} catch (NoSuchFieldException e) {
-			// ignore - Guice has refactored so we can't access the jit bindings
-			// System.out.println("No such field! " + e);
-		} catch (IllegalAccessException e) {
-			// ignore - Guice has refactored so we can't access the jit bindings
-			// System.out.println("Failed to access field: " + field + ". Reason: " + e);
 		}
+		errors.throwIfNecessary();
 	}
 
-	private static void closeBinding(Key<?> key, Binding<?> binding, Class<? extends Annotation> scopeAnnotationToClose, Closer closer, CloseErrors errors) {
-		Provider<?> provider = binding.getProvider();
+	private static void closeScope(Injector injector, Class<? extends Annotation> scopeAnnotationToClose, CloseErrors errors) throws CloseFailedException {
+		Closer closer = Closers.getCloser(injector);
+		if (closer == null) {
+			return;
+		}
 
-		Class<? extends Annotation> scopeAnnotation = getScopeAnnotation(binding);
-		if ((scopeAnnotation != null) && scopeAnnotation.equals(scopeAnnotationToClose)) {
-			Object value = provider.get();
-			if (value != null) {
-				Closers.close(key, value, closer, errors);
+		CloseRegistry registry = CloseRegistry.getInstance(injector);
+		if (registry == null) {
+			// without a registry we have to get every scoped object to close it
+			for (Binding<?> binding : injector.getAllBindings().values()) {
+				if (scopeAnnotationToClose.equals(getScopeAnnotation(binding))) {
+					Closers.close(binding.getKey(), getObjectToClose(injector, binding, closer), closer, errors);
+				}
+			}
+		} else {
+			// only the objects of the bindings the registry has seen create objects are closed, along with the objects of providers which it cannot see
+			Set<Object> closed = Sets.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+			Set<Key<?>> created = registry.getCreatedKeys(scopeAnnotationToClose);
+			for (Key<?> key : created) {
+				Object value = getObjectToClose(injector, injector.getBinding(key), closer);
+				if (value != null && closed.add(value)) {
+					Closers.close(key, value, closer, errors);
+				}
+			}
+			for (Binding<?> binding : registry.getProviderBindings(scopeAnnotationToClose)) {
+				Object value = binding.getProvider().get();
+				if (value != null && closed.add(value)) {
+					Closers.close(binding.getKey(), value, closer, errors);
+				}
 			}
+			forgetClosed(registry, scopeAnnotationToClose, created, closed);
+		}
+		errors.throwIfNecessary();
+	}
+
+	/**
+	 * Returns the object of the binding to close or null if its objects have nothing to close
+	 */
+	private static Object getObjectToClose(Injector injector, Binding<?> binding, Closer closer) {
+		Class<?> type = CloseRegistry.getImplementationType(injector, binding);
+		if ((type != null) && !Closers.canClose(closer, type)) {
+			return null;
+		}
+		return binding.getProvider().get();
+	}
+
+	/**
+	 * Forgets the closed objects and the bindings whose objects were closed so that they are not closed again
+	 */
+	private static void forgetClosed(CloseRegistry registry, Class<? extends Annotation> scopeAnnotation, Set<Key<?>> created, Set<Object> closed) {
+		for (Key<?> key : created) {
+			registry.clear(scopeAnnotation, key);
+		}
+		for (Object value : closed) {
+			registry.remove(value);
+		}
+	}
+
+	private static void addObjectToClose(Map<Object, Key<?>> level, Key<?> key, Object value, Closer closer, Set<Object> closed) {
+		if (value != null && Closers.canClose(closer, value.getClass()) && closed.add(value)) {
+			level.put(value, key);
 		}
 	}
 
@@ -0,0 +1,41 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes;
+
+import java.lang.annotation.*;
+
+import static java.lang.annotation.ElementType.*;
+import static java.lang.annotation.RetentionPolicy.*;
+
+/**
+ * Marks a member injected by an annotation such as @Resource, @EJB or @Autowired, or one of its method parameters, to be resolved the first time it is used rather than when it is
+ * injected.
+ * <p>
+ * A member of type {@link com.google.inject.Provider Provider&lt;T&gt;} or {@link com.google.common.base.Supplier Supplier&lt;T&gt;} is injected with a holder which resolves the
+ * value of type T on the first call to get() and then keeps returning it. A member whose type is an interface is injected with a proxy which resolves the value on the first method
+ * call, unless its value may be null, such as with @Autowired(required = false), as a proxy cannot be null. Any other member is injected as usual.
+ * 
+ * @see org.guicerecipes.support.GuiceyFruitModule#setLazyInjection(boolean)
+ * @version $Revision: 1.1 $
+ */
+@Documented
+@Target( { FIELD, METHOD, PARAMETER })
+@Retention(RUNTIME)
+public @interface Lazy {
+}
@@ -24,6 +24,8 @@ import javax.naming.*;
 import javax.naming.Binding;
 import javax.naming.spi.*;
 
+import org.guicerecipes.metrics.*;
+
 import com.google.inject.*;
 
 /**
@@ -156,8 +158,24 @@ public class JndiContext implements Context, Serializable {
 		return environment.remove(propName);
 	}
 
-	@SuppressWarnings("unchecked")
 	public Object lookup(String name) throws NamingException {
+		MetricsRecorder recorder = Metrics.getRecorder();
+		if (recorder == null) {
+			return doLookup(name);
+		}
+		long start = System.nanoTime();
+		try {
+			return doLookup(name);
+		} catch (NameNotFoundException e) {
+			recorder.increment(Metrics.JNDI_NOT_FOUND);
+			throw e;
+		} finally {
+			recorder.record(Metrics.JNDI_LOOKUP, System.nanoTime() - start);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Object doLookup(String name) throws NamingException {
 		if (name.length() == 0) {
 			return this;
 		}
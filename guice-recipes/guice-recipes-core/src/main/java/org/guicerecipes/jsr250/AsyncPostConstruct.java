@@ -0,0 +1,37 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.jsr250;
+
+import java.lang.annotation.*;
+
+import static java.lang.annotation.ElementType.*;
+import static java.lang.annotation.RetentionPolicy.*;
+
+/**
+ * Marks a {@link javax.annotation.PostConstruct} method to be invoked asynchronously on the executor of the {@link Jsr250Module} so that slow initialisation does not block the
+ * creation of the injector. All the post construct methods of an object with such a method are then invoked asynchronously, in order; use the {@link ReadinessFuture} of the injector
+ * to wait for them to complete.
+ * 
+ * @version $Revision: 1.1 $
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface AsyncPostConstruct {
+}
@@ -20,36 +20,134 @@ package org.guicerecipes.jsr250;
 
 import java.lang.annotation.*;
 import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 import javax.annotation.*;
 
 import org.guicerecipes.support.*;
+import org.guicerecipes.support.internal.*;
 
-import com.google.common.base.*;
+import com.google.inject.*;
+import com.google.inject.spi.*;
+
+import static com.google.inject.matcher.Matchers.*;
 
 /**
  * A module which installs JSR 250 lifecycle and injection using the {@link Resource} annotation.
+ * <p>
+ * The {@link PostConstruct} methods of objects with an {@link AsyncPostConstruct} method are invoked on the {@link #setPostConstructExecutor(Executor) post construct executor}; the
+ * {@link ReadinessFuture} bound by this module in each injector completes once they have all been invoked. All other objects are initialised before they are injected.
  * 
  * @version $Revision: 1.1 $
  */
 public class Jsr250Module extends GuiceyFruitModule {
+	private static Executor defaultPostConstructExecutor;
+
+	private Executor postConstructExecutor;
 
 	@SuppressWarnings("unchecked")
 	@Override
 	protected void configure() {
 		super.configure();
 
+		// each injector created with this module waits for its own objects only
+		final ReadinessFuture readinessFuture = new ReadinessFuture();
+
 		bindAnnotationInjector(Resource.class, ResourceMemberProvider.class);
 
-		bindMethodHandler(PostConstruct.class, new MethodHandler() {
-			public void afterInjection(Object injectee, Annotation annotation, Method method) throws InvocationTargetException, IllegalAccessException {
-				Preconditions.checkState(method.getParameterTypes().length == 0, "Method should have no arguments for @PostConstruct: %s", method);
-				method.setAccessible(true);
-				method.invoke(injectee);
+		// all the @PostConstruct methods in the hierarchy are invoked in one call, super class methods first
+		final LifecycleMethodRegistry postConstructMethods = LifecycleMethodRegistry.getInstance(PostConstruct.class);
+		bindListener(any(), new ScanningTypeListener() {
+			public Collection<Class<? extends Annotation>> getAnnotationTypes() {
+				return Collections.<Class<? extends Annotation>> singleton(PostConstruct.class);
 			}
-		}, true);
 
+			public <I> void hear(TypeLiteral<I> injectableType, TypeEncounter<I> encounter) {
+				final LifecycleMethodChain methods = postConstructMethods.getMethods(injectableType.getRawType());
+				if (methods.isEmpty()) {
+					return;
+				}
+				Method method = methods.getMethodWithParameters();
+				if (method != null) {
+					encounter.addError("Method should have no arguments for @PostConstruct: %s", method);
+					return;
+				}
+				if (isAsync(methods)) {
+					final Executor executor = getPostConstructExecutor();
+					encounter.register(new InjectionListener<I>() {
+						public void afterInjection(final I injectee) {
+							readinessFuture.execute(executor, new Callable<Object>() {
+								public Object call() throws Exception {
+									try {
+										methods.invoke(injectee);
+									} catch (Exception e) {
+										throw e;
+									} catch (Error e) {
+										throw e;
+									} catch (Throwable e) {
+										throw new ExecutionException(e);
+									}
+									return null;
+								}
+							});
+						}
+					});
+					return;
+				}
+				encounter.register(new InjectionListener<I>() {
+					public void afterInjection(I injectee) {
+						try {
+							methods.invoke(injectee);
+						} catch (Throwable e) {
+							throw new ProvisionException(e.getMessage(), e);
+						}
+					}
+				});
+			}
+		});
+
+		bind(ReadinessFuture.class).toInstance(readinessFuture);
 		bind(PreDestroyCloser.class);
 	}
 
+	/**
+	 * Returns the executor used to invoke asynchronous {@link PostConstruct} methods, which defaults to a shared pool of one daemon thread per processor
+	 */
+	public Executor getPostConstructExecutor() {
+		if (postConstructExecutor == null) {
+			postConstructExecutor = getDefaultPostConstructExecutor();
+		}
+		return postConstructExecutor;
+	}
+
+	public void setPostConstructExecutor(Executor postConstructExecutor) {
+		this.postConstructExecutor = postConstructExecutor;
+	}
+
+	protected boolean isAsync(LifecycleMethodChain methods) {
+		for (Method method : methods.getMethods()) {
+			if (method.isAnnotationPresent(AsyncPostConstruct.class)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static synchronized Executor getDefaultPostConstructExecutor() {
+		if (defaultPostConstructExecutor == null) {
+			int threads = Runtime.getRuntime().availableProcessors();
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "guice-recipes post construct");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			executor.allowCoreThreadTimeOut(true);
+			defaultPostConstructExecutor = executor;
+		}
+		return defaultPostConstructExecutor;
+	}
+
 }
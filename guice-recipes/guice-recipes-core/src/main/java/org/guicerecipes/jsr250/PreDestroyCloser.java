@@ -21,6 +21,7 @@ import java.lang.reflect.*;
 import javax.annotation.*;
 
 import org.guicerecipes.support.*;
+import org.guicerecipes.support.internal.*;
 
 /**
  * Supports the {@link javax.annotation.PreDestroy} annotation lifecycle from JSR250.
@@ -30,22 +31,25 @@ import org.guicerecipes.support.*;
  * @author james.strachan@gmail.com (James Strachan)
  * @version $Revision: 1.1 $
  */
-public class PreDestroyCloser implements Closer {
+public class PreDestroyCloser implements TypedCloser {
 
-	private AnnotatedMethodCache methodCache = new AnnotatedMethodCache(PreDestroy.class);
+	private final LifecycleMethodRegistry registry = LifecycleMethodRegistry.getInstance(PreDestroy.class);
 
+	public boolean canClose(Class<?> type) {
+		return !registry.getMethods(type).isEmpty();
+	}
+
+	/**
+	 * Invokes the {@link PreDestroy} methods of the object in the reverse order of the {@link PostConstruct} methods, so that sub class methods are invoked first
+	 */
 	public void close(Object object) throws Throwable {
-		Class<? extends Object> type = object.getClass();
-		Method method = methodCache.getMethod(type);
-		if (method != null) {
+		LifecycleMethodChain methods = registry.getMethods(object.getClass());
+		if (!methods.isEmpty()) {
+			Method method = methods.getMethodWithParameters();
 			if (method != null) {
-				try {
-					method.setAccessible(true);
-					method.invoke(object);
-				} catch (InvocationTargetException e) {
-					throw e.getTargetException();
-				}
+				throw new IllegalArgumentException("Method should have no arguments for @PreDestroy: " + method);
 			}
+			methods.reverse().invoke(object);
 		}
 	}
 }
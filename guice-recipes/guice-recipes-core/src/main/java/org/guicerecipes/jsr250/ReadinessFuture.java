@@ -0,0 +1,116 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.jsr250;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A future of the asynchronous {@link javax.annotation.PostConstruct} methods invoked by an injector which completes once none of them are still running. If any of them failed then
+ * {@link #get()} throws an {@link ExecutionException} with the first failure as its cause.
+ * <p>
+ * Each injector using the {@link Jsr250Module} has one which can be injected.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public class ReadinessFuture implements Future<Void> {
+	private int pending;
+	private final List<Throwable> failures = new ArrayList<Throwable>();
+
+	/**
+	 * Runs the given task using the executor, or in the calling thread if the executor rejects it, so that this future is not done until it has completed
+	 */
+	public void execute(Executor executor, final Callable<?> task) {
+		synchronized (this) {
+			pending++;
+		}
+		Runnable runnable = new Runnable() {
+			public void run() {
+				Throwable failure = null;
+				try {
+					task.call();
+				} catch (Throwable e) {
+					failure = e;
+				} finally {
+					completed(failure);
+				}
+			}
+		};
+		try {
+			executor.execute(runnable);
+		} catch (RejectedExecutionException e) {
+			runnable.run();
+		}
+	}
+
+	protected synchronized void completed(Throwable failure) {
+		if (failure != null) {
+			failures.add(failure);
+		}
+		if (--pending == 0) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Returns the failures of the asynchronous methods invoked so far
+	 */
+	public synchronized List<Throwable> getFailures() {
+		return new ArrayList<Throwable>(failures);
+	}
+
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	public boolean isCancelled() {
+		return false;
+	}
+
+	public synchronized boolean isDone() {
+		return pending == 0;
+	}
+
+	public synchronized Void get() throws InterruptedException, ExecutionException {
+		while (pending > 0) {
+			wait();
+		}
+		return result();
+	}
+
+	public synchronized Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (pending > 0) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				throw new TimeoutException(pending + " asynchronous @PostConstruct method(s) still running");
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return result();
+	}
+
+	private Void result() throws ExecutionException {
+		if (!failures.isEmpty()) {
+			Throwable failure = failures.get(0);
+			throw new ExecutionException("Failed to invoke asynchronous @PostConstruct method: " + failure, failure);
+		}
+		return null;
+	}
+}
@@ -0,0 +1,237 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.metrics;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.management.*;
+
+import com.google.common.collect.*;
+
+/**
+ * A {@link MetricsRecorder} which keeps a counter for each event and a counter, total, maximum and latency histogram for each operation, and exposes them as the attributes of an
+ * MBean named after the metric, such as <code>jndi.lookup.count</code> or <code>jndi.lookup.p99Nanos</code>.
+ * <p>
+ * Recording never takes a lock: each metric is a set of atomic counters and the histogram has a bucket per power of two nanoseconds, so percentiles are reported as the upper bound
+ * of their bucket.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public class JmxMetricsRecorder implements MetricsRecorder, DynamicMBean {
+	public static final String DEFAULT_OBJECT_NAME = "org.guicerecipes:type=Metrics";
+
+	private static final String[] TIMED_ATTRIBUTES = { "count", "totalNanos", "meanNanos", "maxNanos", "p50Nanos", "p90Nanos", "p99Nanos" };
+	private static final String RESET = "reset";
+
+	private final ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<String, Metric>();
+	private ObjectName objectName;
+	private MBeanServer mbeanServer;
+
+	public void increment(String name) {
+		getMetric(name).count.incrementAndGet();
+	}
+
+	public void record(String name, long nanos) {
+		getMetric(name).record(nanos);
+	}
+
+	/**
+	 * Returns the number of events or operations recorded with the given name
+	 */
+	public long getCount(String name) {
+		Metric metric = metrics.get(name);
+		return metric != null ? metric.count.get() : 0;
+	}
+
+	/**
+	 * Returns the names of the metrics recorded so far, sorted by name
+	 */
+	public SortedSet<String> getNames() {
+		return Sets.newTreeSet(metrics.keySet());
+	}
+
+	/**
+	 * Discards all of the metrics recorded so far
+	 */
+	public void reset() {
+		metrics.clear();
+	}
+
+	/**
+	 * Registers this recorder with the given MBean server using the {@link #DEFAULT_OBJECT_NAME}
+	 */
+	public void register(MBeanServer mbeanServer) throws JMException {
+		register(mbeanServer, new ObjectName(DEFAULT_OBJECT_NAME));
+	}
+
+	public synchronized void register(MBeanServer mbeanServer, ObjectName objectName) throws JMException {
+		mbeanServer.registerMBean(this, objectName);
+		this.mbeanServer = mbeanServer;
+		this.objectName = objectName;
+	}
+
+	public synchronized void unregister() throws JMException {
+		if (mbeanServer != null) {
+			mbeanServer.unregisterMBean(objectName);
+			mbeanServer = null;
+			objectName = null;
+		}
+	}
+
+	private Metric getMetric(String name) {
+		Metric metric = metrics.get(name);
+		if (metric == null) {
+			metric = new Metric();
+			Metric previous = metrics.putIfAbsent(name, metric);
+			if (previous != null) {
+				metric = previous;
+			}
+		}
+		return metric;
+	}
+
+	// DynamicMBean
+	// -------------------------------------------------------------------------
+
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		int idx = attribute.lastIndexOf('.');
+		Metric metric = idx > 0 ? metrics.get(attribute.substring(0, idx)) : null;
+		if (metric == null) {
+			throw new AttributeNotFoundException(attribute);
+		}
+		String property = attribute.substring(idx + 1);
+		if (property.equals("count")) {
+			return metric.count.get();
+		} else if (property.equals("totalNanos")) {
+			return metric.totalNanos.get();
+		} else if (property.equals("meanNanos")) {
+			long count = metric.count.get();
+			return count > 0 ? metric.totalNanos.get() / count : 0L;
+		} else if (property.equals("maxNanos")) {
+			return metric.maxNanos.get();
+		} else if (property.equals("p50Nanos")) {
+			return metric.percentile(0.5);
+		} else if (property.equals("p90Nanos")) {
+			return metric.percentile(0.9);
+		} else if (property.equals("p99Nanos")) {
+			return metric.percentile(0.99);
+		}
+		throw new AttributeNotFoundException(attribute);
+	}
+
+	public AttributeList getAttributes(String[] attributes) {
+		AttributeList answer = new AttributeList();
+		for (String attribute : attributes) {
+			try {
+				answer.add(new Attribute(attribute, getAttribute(attribute)));
+			} catch (AttributeNotFoundException e) {
+				// lets just omit it as a metric may have been reset
+			}
+		}
+		return answer;
+	}
+
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("The metrics are read only: " + attribute.getName());
+	}
+
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+		if (RESET.equals(actionName)) {
+			reset();
+			return null;
+		}
+		throw new ReflectionException(new NoSuchMethodException(actionName));
+	}
+
+	public MBeanInfo getMBeanInfo() {
+		List<MBeanAttributeInfo> attributes = Lists.newArrayList();
+		for (String name : getNames()) {
+			Metric metric = metrics.get(name);
+			if (metric == null) {
+				continue;
+			}
+			String[] properties = metric.timed ? TIMED_ATTRIBUTES : new String[] { "count" };
+			for (String property : properties) {
+				attributes.add(new MBeanAttributeInfo(name + "." + property, "long", property + " of " + name, true, false, false));
+			}
+		}
+		MBeanOperationInfo reset = new MBeanOperationInfo(RESET, "Discards all of the metrics recorded so far", new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION);
+		return new MBeanInfo(getClass().getName(), "guice-recipes metrics", attributes.toArray(new MBeanAttributeInfo[attributes.size()]), new MBeanConstructorInfo[0],
+				new MBeanOperationInfo[] { reset }, new MBeanNotificationInfo[0]);
+	}
+
+	/**
+	 * The counters of a single metric
+	 */
+	private static final class Metric {
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+		private final AtomicLongArray histogram = new AtomicLongArray(64);
+		private volatile boolean timed;
+
+		void record(long nanos) {
+			if (!timed) {
+				timed = true;
+			}
+			if (nanos < 0) {
+				nanos = 0;
+			}
+			count.incrementAndGet();
+			totalNanos.addAndGet(nanos);
+			histogram.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos) - (nanos == 0 ? 0 : 1));
+			while (true) {
+				long max = maxNanos.get();
+				if (nanos <= max || maxNanos.compareAndSet(max, nanos)) {
+					break;
+				}
+			}
+		}
+
+		/**
+		 * Returns the upper bound of the histogram bucket containing the given percentile
+		 */
+		long percentile(double fraction) {
+			long total = 0;
+			long[] counts = new long[histogram.length()];
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = histogram.get(i);
+				total += counts[i];
+			}
+			if (total == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(total * fraction);
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return i >= 62 ? Long.MAX_VALUE : (2L << i) - 1;
+				}
+			}
+			return maxNanos.get();
+		}
+	}
+}
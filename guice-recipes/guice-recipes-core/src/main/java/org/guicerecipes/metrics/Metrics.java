@@ -0,0 +1,98 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.metrics;
+
+import java.lang.management.*;
+
+import javax.management.*;
+
+/**
+ * Holds the {@link MetricsRecorder} which the hot paths of guice-recipes report to, if any. When no recorder is installed the only cost to those paths is reading a field.
+ * <p>
+ * A recorder can be installed when the class is loaded with the {@link #METRICS} system property, which is either <code>true</code> to register a {@link JmxMetricsRecorder} with the
+ * platform MBean server or the name of a {@link MetricsRecorder} class to instantiate.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public final class Metrics {
+	/**
+	 * The system property used to install a recorder by default
+	 */
+	public static final String METRICS = "org.guicerecipes.metrics";
+
+	/** The prefix of the time taken to provide a value for an injection annotation, followed by the annotation class name */
+	public static final String PROVISION = "provision.";
+	/** The prefix of the time taken to invoke the lifecycle methods of an object, followed by the annotation class name */
+	public static final String LIFECYCLE = "lifecycle.";
+	/**
+	 * The prefix of the scope metrics, followed by the scope annotation class name and {@link #HIT}, {@link #MISS}, {@link #CREATE}, {@link #CREATE_ERROR}, {@link #EVICT} or
+	 * {@link #CLOSE_ERROR}
+	 */
+	public static final String SCOPE = "scope.";
+	public static final String HIT = ".hit";
+	public static final String MISS = ".miss";
+	public static final String CREATE = ".create";
+	/** Counts the objects which a scope failed to create */
+	public static final String CREATE_ERROR = ".createError";
+	public static final String EVICT = ".evict";
+	/** Counts the objects which failed to close when they were evicted or replaced by a scope */
+	public static final String CLOSE_ERROR = ".closeError";
+	/** The prefix of the time taken to close the objects of a scope, followed by the scope annotation class name */
+	public static final String CLOSE = "close.";
+	public static final String JNDI_LOOKUP = "jndi.lookup";
+	public static final String JNDI_NOT_FOUND = "jndi.lookup.notFound";
+
+	private static volatile MetricsRecorder recorder = createDefaultRecorder();
+
+	private Metrics() {
+	}
+
+	/**
+	 * Returns the recorder to report to or null if metrics are not being recorded
+	 */
+	public static MetricsRecorder getRecorder() {
+		return recorder;
+	}
+
+	/**
+	 * Installs the recorder to report to, or disables recording if it is null
+	 */
+	public static void setRecorder(MetricsRecorder recorder) {
+		Metrics.recorder = recorder;
+	}
+
+	private static MetricsRecorder createDefaultRecorder() {
+		String value = System.getProperty(METRICS);
+		if (value == null || value.length() == 0 || value.equals("false")) {
+			return null;
+		}
+		try {
+			if (value.equals("true")) {
+				JmxMetricsRecorder answer = new JmxMetricsRecorder();
+				answer.register(ManagementFactory.getPlatformMBeanServer());
+				return answer;
+			}
+			return (MetricsRecorder) Class.forName(value, true, Metrics.class.getClassLoader()).newInstance();
+		} catch (JMException e) {
+			throw new IllegalStateException("Failed to register the metrics MBean. Reason: " + e, e);
+		} catch (Exception e) {
+			throw new IllegalStateException("Failed to create the MetricsRecorder " + value + ". Reason: " + e, e);
+		}
+	}
+}
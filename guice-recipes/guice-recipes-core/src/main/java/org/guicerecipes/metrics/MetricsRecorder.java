@@ -0,0 +1,39 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.metrics;
+
+/**
+ * The SPI used to record the metrics of guice-recipes, installed with {@link Metrics#setRecorder(MetricsRecorder)}.
+ * <p>
+ * Implementations are invoked on the hot paths of injection, scoping and JNDI lookups from many threads at once so they should be thread safe and should not block.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public interface MetricsRecorder {
+
+	/**
+	 * Counts an occurrence of the given event, such as a scope hit
+	 */
+	void increment(String name);
+
+	/**
+	 * Records the duration of an occurrence of the given operation, such as a JNDI lookup
+	 */
+	void record(String name, long nanos);
+}
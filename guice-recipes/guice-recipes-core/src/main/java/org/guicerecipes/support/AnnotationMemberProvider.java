@@ -36,6 +36,6 @@ public interface AnnotationMemberProvider<A extends Annotation> {
 	/** Returns the value to be injected for the given annotated method parameter value */
 	Object provide(A annotation, TypeLiteral<?> type, Method method, Class<?> parameterType, int parameterIndex);
 
-	/** Returns true if the given parameter on the annotated method can be null */
+	/** Returns true if the given parameter on the annotated method, or the annotated field if the method is null, can be null */
 	boolean isNullParameterAllowed(A annotation, Method method, Class<?> parameterType, int parameterIndex);
 }
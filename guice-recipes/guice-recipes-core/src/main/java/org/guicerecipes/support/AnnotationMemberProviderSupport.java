@@ -42,6 +42,13 @@ public abstract class AnnotationMemberProviderSupport<A extends Annotation> impl
 		return provide(annotation, method, requiredType, method.getParameterTypes()[parameterIndex], annotations);
 	}
 
+	/**
+	 * Returns the value to be injected for the given field or method parameter using the types and annotations already resolved in the injection plan
+	 */
+	public Object provide(A annotation, InjectionPlan plan, int parameterIndex) {
+		return provide(annotation, plan.getMember(), plan.getRequiredType(parameterIndex), plan.getMemberType(parameterIndex), plan.getAnnotations(parameterIndex));
+	}
+
 	/** The default method to create a value for the named member of the requested type */
 	protected abstract Object provide(A annotation, Member member, TypeLiteral<?> requiredType, Class<?> memberType, Annotation[] annotations);
 }
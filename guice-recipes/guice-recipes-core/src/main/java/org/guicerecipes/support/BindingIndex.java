@@ -0,0 +1,140 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.support;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+import com.google.common.base.*;
+import com.google.common.collect.*;
+import com.google.inject.*;
+
+/**
+ * An index of the explicit bindings of an injector by every super class and interface of their key types, so that finding the bindings of a type is a hash lookup rather than a
+ * scan of all the bindings of the injector.
+ * <p>
+ * Bindings whose key is a plain class are indexed by each class they are assignable to, matching {@link org.guicerecipes.Injectors#getBindingsOf(Injector, Class)}. All bindings,
+ * including those whose key is a parameterized type such as <code>List&lt;String&gt;</code>, are also indexed by the {@link TypeLiteral} of each of their generic super types, such as
+ * <code>Collection&lt;String&gt;</code>. The bindings of a type are returned in the order of the bindings of the injector.
+ * <p>
+ * The index is built once per injector. Injectors are weakly referenced and their indexes softly referenced, as the bindings refer back to their injector.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public final class BindingIndex {
+	private static final Map<Injector, BindingIndex> indexes = new MapMaker().weakKeys().softValues().makeComputingMap(new Function<Injector, BindingIndex>() {
+		public BindingIndex apply(Injector injector) {
+			return new BindingIndex(injector);
+		}
+	});
+
+	private final Map<Class<?>, List<Binding<?>>> bindingsByClass;
+	private final Map<TypeLiteral<?>, List<Binding<?>>> bindingsByType;
+
+	private BindingIndex(Injector injector) {
+		Map<Class<?>, List<Binding<?>>> byClass = Maps.newHashMap();
+		Map<TypeLiteral<?>, List<Binding<?>>> byType = Maps.newHashMap();
+		Map<Class<?>, Set<Class<?>>> supertypesCache = Maps.newHashMap();
+
+		for (Binding<?> binding : injector.getBindings().values()) {
+			TypeLiteral<?> keyType = binding.getKey().getTypeLiteral();
+			Class<?> rawType = keyType.getRawType();
+			boolean classKey = keyType.getType() instanceof Class<?>;
+			for (Class<?> supertype : getSupertypes(rawType, supertypesCache)) {
+				if (classKey) {
+					add(byClass, supertype, binding);
+				}
+				add(byType, supertype == rawType ? keyType : keyType.getSupertype(supertype), binding);
+			}
+		}
+		this.bindingsByClass = byClass;
+		this.bindingsByType = byType;
+	}
+
+	/**
+	 * Returns the index of the given injector, creating it the first time the injector is used
+	 */
+	public static BindingIndex getInstance(Injector injector) {
+		Preconditions.checkNotNull(injector, "injector");
+		return indexes.get(injector);
+	}
+
+	/**
+	 * Returns the bindings whose key type is a class which is assignable to the given type
+	 */
+	public List<Binding<?>> getBindingsOf(Class<?> type) {
+		return get(bindingsByClass, type);
+	}
+
+	/**
+	 * Returns the bindings whose key type, or one of its generic super types, is the given type
+	 */
+	public List<Binding<?>> getBindingsOf(TypeLiteral<?> type) {
+		return get(bindingsByType, type);
+	}
+
+	private static <K> List<Binding<?>> get(Map<K, List<Binding<?>>> map, K key) {
+		List<Binding<?>> answer = map.get(key);
+		if (answer == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(answer);
+	}
+
+	private static <K> void add(Map<K, List<Binding<?>>> map, K key, Binding<?> binding) {
+		List<Binding<?>> list = map.get(key);
+		if (list == null) {
+			list = Lists.newArrayList();
+			map.put(key, list);
+		}
+		list.add(binding);
+	}
+
+	/**
+	 * Returns the class itself along with all of the types it is assignable to, which are its super classes and interfaces, Object for interfaces and the arrays of the super types of the
+	 * component type for arrays
+	 */
+	private static Set<Class<?>> getSupertypes(Class<?> type, Map<Class<?>, Set<Class<?>>> cache) {
+		Set<Class<?>> answer = cache.get(type);
+		if (answer == null) {
+			answer = Sets.newLinkedHashSet();
+			answer.add(type);
+			Class<?> superclass = type.getSuperclass();
+			if (superclass != null) {
+				answer.addAll(getSupertypes(superclass, cache));
+			}
+			for (Class<?> interfaceType : type.getInterfaces()) {
+				answer.addAll(getSupertypes(interfaceType, cache));
+			}
+			if (type.isInterface()) {
+				// interfaces have no super class but are still assignable to Object
+				answer.add(Object.class);
+			}
+			Class<?> componentType = type.getComponentType();
+			if (componentType != null && !componentType.isPrimitive()) {
+				// arrays are covariant
+				for (Class<?> supertype : getSupertypes(componentType, cache)) {
+					answer.add(Array.newInstance(supertype, 0).getClass());
+				}
+			}
+			cache.put(type, answer);
+		}
+		return answer;
+	}
+}
@@ -0,0 +1,295 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.guicerecipes.support;
+
+import java.lang.annotation.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.guicerecipes.*;
+
+import com.google.common.collect.*;
+import com.google.inject.*;
+import com.google.inject.matcher.*;
+import com.google.inject.spi.*;
+
+/**
+ * Records which scoped bindings of an injector have created objects, so that closing a scope only looks up the objects of the bindings which have created any, without looking
+ * through all the bindings of the injector or creating objects just to close them. A registry is installed by each {@link GuiceyFruitModule}, only once per injector.
+ * <p>
+ * Guice 3 does not tell anyone when a scope creates an object so objects are recorded by an {@link InjectionListener}, which cannot tell which binding an object was created for,
+ * or whether it was created by Guice at all rather than passed to {@link Injector#injectMembers(Object)}. The first time an object of a type is injected the registry looks up the
+ * scoped bindings which create objects of that type and records the object against each of them; objects of types which are not created by a scoped binding are then ignored for
+ * the cost of reading a field. The recorded objects are therefore only used to tell whether a binding may have created an object: closing a scope looks up the object of each such
+ * binding from the binding itself, so only the objects the scope actually holds are closed. If the recorded objects of a binding all came from elsewhere, such as an unscoped
+ * binding of the same class, looking up its object creates it. Objects injected while the injector is being created, before the registry can look up any bindings, are recorded once
+ * it can.
+ * <p>
+ * The objects returned by providers are not injected by Guice so cannot be recorded; the bindings to providers are listed by {@link #getProviderBindings(Class)} instead. The objects
+ * and injectors are weakly referenced.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public final class CloseRegistry {
+	private static final ConcurrentMap<Injector, CloseRegistry> registries = new MapMaker().weakKeys().makeMap();
+
+	private final ConcurrentMap<Class<? extends Annotation>, ConcurrentMap<Key<?>, ConcurrentMap<Object, Boolean>>> scopes = new ConcurrentHashMap<Class<? extends Annotation>, ConcurrentMap<Key<?>, ConcurrentMap<Object, Boolean>>>();
+	private volatile Injector injector;
+	/** the objects injected before the injector was set, along with their recorders */
+	private List<Object[]> pending = Lists.newArrayList();
+	private Map<Class<?>, List<Binding<?>>> scopedBindings;
+	private Map<Class<? extends Annotation>, List<Binding<?>>> providerBindings;
+
+	/**
+	 * Returns the registry of the given injector or null if the injector does not record its objects
+	 */
+	public static CloseRegistry getInstance(Injector injector) {
+		return registries.get(injector);
+	}
+
+	@Inject
+	void setInjector(Injector injector) {
+		List<Object[]> injected;
+		synchronized (this) {
+			this.injector = injector;
+			injected = pending;
+			pending = null;
+		}
+		registries.putIfAbsent(injector, this);
+		for (Object[] objects : injected) {
+			((Recorder<?>) objects[0]).record(objects[1]);
+		}
+	}
+
+	/**
+	 * Records an object which may have been created within the given scope by the binding of the given key
+	 */
+	public void add(Class<? extends Annotation> scopeAnnotation, Key<?> key, Object instance) {
+		ConcurrentMap<Key<?>, ConcurrentMap<Object, Boolean>> keys = scopes.get(scopeAnnotation);
+		if (keys == null) {
+			keys = new ConcurrentHashMap<Key<?>, ConcurrentMap<Object, Boolean>>();
+			ConcurrentMap<Key<?>, ConcurrentMap<Object, Boolean>> previous = scopes.putIfAbsent(scopeAnnotation, keys);
+			if (previous != null) {
+				keys = previous;
+			}
+		}
+		ConcurrentMap<Object, Boolean> instances = keys.get(key);
+		if (instances == null) {
+			instances = new MapMaker().weakKeys().makeMap();
+			ConcurrentMap<Object, Boolean> previous = keys.putIfAbsent(key, instances);
+			if (previous != null) {
+				instances = previous;
+			}
+		}
+		instances.put(instance, Boolean.TRUE);
+	}
+
+	/**
+	 * Forgets the given object, such as when it has been closed
+	 */
+	public void remove(Object instance) {
+		for (ConcurrentMap<Key<?>, ConcurrentMap<Object, Boolean>> keys : scopes.values()) {
+			for (ConcurrentMap<Object, Boolean> instances : keys.values()) {
+				instances.remove(instance);
+			}
+		}
+	}
+
+	/**
+	 * Forgets the objects recorded against the binding of the given key within the given scope, such as when its object has been closed
+	 */
+	public void clear(Class<? extends Annotation> scopeAnnotation, Key<?> key) {
+		ConcurrentMap<Key<?>, ConcurrentMap<Object, Boolean>> keys = scopes.get(scopeAnnotation);
+		if (keys != null) {
+			keys.remove(key);
+		}
+	}
+
+	public boolean contains(Object instance) {
+		for (ConcurrentMap<Key<?>, ConcurrentMap<Object, Boolean>> keys : scopes.values()) {
+			for (ConcurrentMap<Object, Boolean> instances : keys.values()) {
+				if (instances.containsKey(instance)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if the binding of the given key within the given scope may have created an object, as an object it could have created has been recorded against it
+	 */
+	public boolean isCreated(Class<? extends Annotation> scopeAnnotation, Key<?> key) {
+		ConcurrentMap<Key<?>, ConcurrentMap<Object, Boolean>> keys = scopes.get(scopeAnnotation);
+		ConcurrentMap<Object, Boolean> instances = keys != null ? keys.get(key) : null;
+		return instances != null && !instances.isEmpty();
+	}
+
+	/**
+	 * Returns the keys of the bindings within the given scope which may have created an object
+	 */
+	public Set<Key<?>> getCreatedKeys(Class<? extends Annotation> scopeAnnotation) {
+		Set<Key<?>> answer = Sets.newLinkedHashSet();
+		ConcurrentMap<Key<?>, ConcurrentMap<Object, Boolean>> keys = scopes.get(scopeAnnotation);
+		if (keys != null) {
+			for (Map.Entry<Key<?>, ConcurrentMap<Object, Boolean>> entry : keys.entrySet()) {
+				if (!entry.getValue().isEmpty()) {
+					answer.add(entry.getKey());
+				}
+			}
+		}
+		return answer;
+	}
+
+	/**
+	 * Returns the bindings within the given scope whose objects are returned by a provider or bound as an instance rather than created by Guice, so cannot be recorded
+	 */
+	public synchronized List<Binding<?>> getProviderBindings(Class<? extends Annotation> scopeAnnotation) {
+		indexBindings();
+		List<Binding<?>> answer = providerBindings.get(scopeAnnotation);
+		return answer != null ? answer : Collections.<Binding<?>> emptyList();
+	}
+
+	/**
+	 * Returns the class of the objects Guice creates for the given binding, following linked bindings to their target, or null if the objects are created by a provider or bound as
+	 * an instance
+	 */
+	public static Class<?> getImplementationType(Injector injector, Binding<?> binding) {
+		while (binding instanceof LinkedKeyBinding<?>) {
+			binding = injector.getBinding(((LinkedKeyBinding<?>) binding).getLinkedKey());
+		}
+		if (binding instanceof ConstructorBinding<?>) {
+			return ((ConstructorBinding<?>) binding).getConstructor().getDeclaringType().getRawType();
+		}
+		if (binding instanceof UntargettedBinding<?>) {
+			return binding.getKey().getTypeLiteral().getRawType();
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the scoped bindings which create objects of the given type, or an empty list if objects of the type are not scoped
+	 */
+	protected synchronized List<Binding<?>> getScopedBindings(Class<?> type) {
+		indexBindings();
+		List<Binding<?>> answer = scopedBindings.get(type);
+		if (answer == null) {
+			// a just in time binding created since the bindings were indexed
+			Binding<?> binding = injector.getExistingBinding(Key.get(type));
+			if (binding != null && Injectors.getScopeAnnotation(binding) != null && type.equals(getImplementationType(injector, binding))) {
+				answer = Collections.<Binding<?>> singletonList(binding);
+			} else {
+				answer = Collections.emptyList();
+			}
+		}
+		return answer;
+	}
+
+	/** Indexes the scoped bindings of the injector once, by the type of object they create or by scope if they are provider bindings */
+	private void indexBindings() {
+		if (scopedBindings != null) {
+			return;
+		}
+		scopedBindings = Maps.newHashMap();
+		providerBindings = Maps.newHashMap();
+		for (Binding<?> binding : injector.getAllBindings().values()) {
+			Class<? extends Annotation> scopeAnnotation = Injectors.getScopeAnnotation(binding);
+			if (scopeAnnotation == null) {
+				continue;
+			}
+			Class<?> type = getImplementationType(injector, binding);
+			if (type != null) {
+				put(scopedBindings, type, binding);
+			} else {
+				put(providerBindings, scopeAnnotation, binding);
+			}
+		}
+	}
+
+	private static <K> void put(Map<K, List<Binding<?>>> map, K key, Binding<?> binding) {
+		List<Binding<?>> list = map.get(key);
+		if (list == null) {
+			list = Lists.newArrayList();
+			map.put(key, list);
+		}
+		list.add(binding);
+	}
+
+	/**
+	 * Records the objects of a type against the scoped bindings which could have created them, looking up the bindings when the first object is injected once the registry has its
+	 * injector
+	 */
+	private class Recorder<I> implements InjectionListener<I> {
+		private final Class<?> type;
+		private volatile List<Binding<?>> bindings;
+
+		Recorder(Class<?> type) {
+			this.type = type;
+		}
+
+		public void afterInjection(I injectee) {
+			if (bindings == null && injector == null) {
+				synchronized (CloseRegistry.this) {
+					if (pending != null) {
+						// injected while the injector is being created so record it once we can look up the bindings
+						pending.add(new Object[] { this, injectee });
+						return;
+					}
+				}
+			}
+			record(injectee);
+		}
+
+		void record(Object injectee) {
+			List<Binding<?>> scopedBindings = bindings;
+			if (scopedBindings == null) {
+				scopedBindings = getScopedBindings(type);
+				bindings = scopedBindings;
+			}
+			for (Binding<?> binding : scopedBindings) {
+				add(Injectors.getScopeAnnotation(binding), binding.getKey(), injectee);
+			}
+		}
+	}
+
+	/**
+	 * Installs the listener recording the objects of an injector in a registry; modules are only installed once per injector as they are all equal
+	 */
+	static class RecordingModule extends AbstractModule {
+		@Override
+		protected void configure() {
+			final CloseRegistry registry = new CloseRegistry();
+			requestInjection(registry);
+			bindListener(Matchers.any(), new TypeListener() {
+				public <I> void hear(TypeLiteral<I> type, TypeEncounter<I> encounter) {
+					encounter.register(registry.new Recorder<I>(type.getRawType()));
+				}
+			});
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof RecordingModule;
+		}
+
+		@Override
+		public int hashCode() {
+			return RecordingModule.class.hashCode();
+		}
+	}
+}
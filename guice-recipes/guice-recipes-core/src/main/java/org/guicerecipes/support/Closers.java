@@ -18,12 +18,44 @@
 
 package org.guicerecipes.support;
 
+import java.util.*;
+
+import org.guicerecipes.*;
+
+import com.google.common.base.*;
+import com.google.common.collect.*;
+import com.google.inject.*;
+
 /**
  * Some helper methods for working with the {@link Closer} interface
  * 
  * @version $Revision: 1.1 $
  */
 public final class Closers {
+	private static final Closer NO_CLOSER = new CompositeCloser(Collections.<Closer> emptyList());
+
+	// closers may refer back to their injector so they are softly referenced
+	private static final Map<Injector, Closer> closers = new MapMaker().weakKeys().softValues().makeComputingMap(new Function<Injector, Closer>() {
+		public Closer apply(Injector injector) {
+			Closer closer = CompositeCloser.newInstance(Injectors.getInstancesOf(injector, Closer.class));
+			return closer != null ? closer : NO_CLOSER;
+		}
+	});
+
+	/**
+	 * Returns the {@link Closer} combining all the closers bound in the given injector or null if there are none, only looking up the closers the first time the injector is used
+	 */
+	public static Closer getCloser(Injector injector) {
+		Closer closer = closers.get(injector);
+		return closer != NO_CLOSER ? closer : null;
+	}
+
+	/**
+	 * Returns true if the closer may need to close objects of the given type
+	 */
+	public static boolean canClose(Closer closer, Class<?> type) {
+		return !(closer instanceof TypedCloser) || ((TypedCloser) closer).canClose(type);
+	}
 
 	/**
 	 * Closes the given object with the Closer if the object is not null
@@ -34,7 +66,7 @@ public final class Closers {
 	 * @param errors the handler of exceptions if they occur
 	 */
 	public static void close(Object key, Object objectToBeClosed, Closer closer, CloseErrors errors) {
-		if (objectToBeClosed != null) {
+		if (objectToBeClosed != null && canClose(closer, objectToBeClosed.getClass())) {
 			try {
 				closer.close(objectToBeClosed);
 			} catch (Exception e) {
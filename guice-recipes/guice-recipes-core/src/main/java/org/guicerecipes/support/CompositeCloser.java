@@ -20,16 +20,29 @@ package org.guicerecipes.support;
 
 import java.util.*;
 
+import com.google.common.base.*;
 import com.google.common.collect.*;
 
 /**
- * A Composite implementation of {@link Closer}
+ * A Composite implementation of {@link Closer}. The closers which can close each class of object are worked out once per class from the {@link TypedCloser#canClose(Class)} of
+ * each closer, so closing an object only invokes the closers which apply to it.
  * 
  * @version $Revision: 1.1 $
  * @author james.strachan@gmail.com (James Strachan)
  */
-public class CompositeCloser implements Closer {
-	private final Iterable<Closer> closers;
+public class CompositeCloser implements TypedCloser {
+	private final List<Closer> closers;
+	private final Map<Class<?>, Closer[]> chains = new MapMaker().weakKeys().makeComputingMap(new Function<Class<?>, Closer[]>() {
+		public Closer[] apply(Class<?> type) {
+			List<Closer> answer = Lists.newArrayList();
+			for (Closer closer : closers) {
+				if (Closers.canClose(closer, type)) {
+					answer.add(closer);
+				}
+			}
+			return answer.toArray(new Closer[answer.size()]);
+		}
+	});
 
 	/**
 	 * Returns a {@link Closer} for the given lists of closer strategies or returning null if the collection is empty
@@ -45,11 +58,15 @@ public class CompositeCloser implements Closer {
 	}
 
 	public CompositeCloser(Iterable<Closer> closers) {
-		this.closers = closers;
+		this.closers = ImmutableList.copyOf(closers);
+	}
+
+	public boolean canClose(Class<?> type) {
+		return chains.get(type).length > 0;
 	}
 
 	public void close(Object object) throws Throwable {
-		for (Closer closer : closers) {
+		for (Closer closer : chains.get(object.getClass())) {
 			closer.close(object);
 		}
 	}
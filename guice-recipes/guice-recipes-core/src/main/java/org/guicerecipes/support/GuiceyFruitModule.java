@@ -23,8 +23,8 @@ import java.lang.reflect.*;
 import java.util.*;
 
 import org.guicerecipes.*;
+import org.guicerecipes.metrics.*;
 import org.guicerecipes.support.internal.*;
-import org.guicerecipes.util.*;
 
 import com.google.common.collect.*;
 import com.google.inject.*;
@@ -43,60 +43,112 @@ import static org.guicerecipes.support.EncounterProvider.*;
  */
 @SuppressWarnings("unchecked")
 public abstract class GuiceyFruitModule extends AbstractModule {
+	/**
+	 * The system property used to enable {@link #setGenerateMembersInjectors(boolean)} by default
+	 */
+	public static final String GENERATE_MEMBERS_INJECTORS = "org.guicerecipes.generateMembersInjectors";
+
+	/**
+	 * The system property used to enable {@link #setLazyInjection(boolean)} by default
+	 */
+	public static final String LAZY_INJECTION = "org.guicerecipes.lazyInjection";
+
+	private AnnotationInjectorListener annotationInjectorListener;
+	private Binder annotationInjectorBinder;
+	private boolean generateMembersInjectors = Boolean.getBoolean(GENERATE_MEMBERS_INJECTORS);
+	private boolean lazyInjection = Boolean.getBoolean(LAZY_INJECTION);
+	private InjectorProfiler profiler;
 
 	@Override
 	protected void configure() {
+		install(new CloseRegistry.RecordingModule());
+
 		// lets find all of the configures methods
 		List<Method> configureMethods = getConfiguresMethods();
 		if (!configureMethods.isEmpty()) {
-			final GuiceyFruitModule moduleInstance = this;
-			final Class<? extends GuiceyFruitModule> moduleType = getClass();
-			TypeLiteral<? extends GuiceyFruitModule> type = TypeLiteral.get(moduleType);
+			TypeLiteral<? extends GuiceyFruitModule> type = TypeLiteral.get(getClass());
 
-			for (final Method method : configureMethods) {
+			// index the methods by the type they configure so that each encountered type is a single lookup
+			Map<Class<?>, List<Method>> configuresMethods = Maps.newHashMap();
+			for (Method method : configureMethods) {
 				int size = method.getParameterTypes().length;
 				if (size == 0) {
 					throw new ProvisionException("No arguments on @Configures method " + method);
 				} else if (size > 1) {
 					throw new ProvisionException("Too many arguments " + size + " on @Configures method " + method);
 				}
-				final Class<?> paramType = getParameterType(type, method, 0);
+				Class<?> paramType = getParameterType(type, method, 0);
+				method.setAccessible(true);
 
-				bindListener(new AbstractMatcher<TypeLiteral<?>>() {
-					public boolean matches(TypeLiteral<?> typeLiteral) {
-						return typeLiteral.getRawType().equals(paramType);
-					}
-				}, new TypeListener() {
-					public <I> void hear(TypeLiteral<I> injectableType, TypeEncounter<I> encounter) {
-						encounter.register(new MembersInjector<I>() {
-							public void injectMembers(I injectee) {
-								// lets invoke the configures method
-								try {
-									method.setAccessible(true);
-									method.invoke(moduleInstance, injectee);
-								} catch (IllegalAccessException e) {
-									throw new ProvisionException("Failed to invoke @Configures method " + method + ". Reason: " + e, e);
-								} catch (InvocationTargetException ie) {
-									Throwable e = ie.getTargetException();
-									throw new ProvisionException("Failed to invoke @Configures method " + method + ". Reason: " + e, e);
-								}
-							}
-						});
-					}
-				});
+				List<Method> methods = configuresMethods.get(paramType);
+				if (methods == null) {
+					methods = Lists.newArrayList();
+					configuresMethods.put(paramType, methods);
+				}
+				methods.add(method);
 			}
+			bindListener(any(), new ConfiguresListener(configuresMethods, currentProfiler()));
 		}
 	}
 
 	private List<Method> getConfiguresMethods() {
-		List<Method> answer = Lists.newArrayList();
-		List<Method> list = Reflectors.getAllMethods(getClass());
-		for (Method method : list) {
-			if (method.getAnnotation(Configures.class) != null) {
-				answer.add(method);
-			}
+		return Reflectors.getAllMethodsWithAnnotation(getClass(), Configures.class);
+	}
+
+	public boolean isGenerateMembersInjectors() {
+		return generateMembersInjectors;
+	}
+
+	/**
+	 * Enables generating a {@link MembersInjector} class in bytecode for each type with members annotated by any of the injection annotations bound with {@link #bindAnnotationInjector}, so
+	 * that the fields are set and methods are invoked directly rather than by reflection. Types for which a class cannot be generated, such as those loaded by the bootstrap class loader, are
+	 * still injected by reflection.
+	 */
+	public void setGenerateMembersInjectors(boolean generateMembersInjectors) {
+		this.generateMembersInjectors = generateMembersInjectors;
+	}
+
+	public boolean isLazyInjection() {
+		return lazyInjection;
+	}
+
+	/**
+	 * Injects every member bound with {@link #bindAnnotationInjector} lazily, as if it were annotated with {@link Lazy}, so that its value is only resolved when it is first used. Members
+	 * whose type is neither {@link Provider}, {@link com.google.common.base.Supplier Supplier} nor an interface, or which are an interface and may be null, are still injected eagerly.
+	 */
+	public void setLazyInjection(boolean lazyInjection) {
+		this.lazyInjection = lazyInjection;
+	}
+
+	public InjectorProfiler getProfiler() {
+		return profiler;
+	}
+
+	/**
+	 * Records the time spent by the listeners of this module in the given profiler. If no profiler is set the profiler of the injector being created by
+	 * {@link org.guicerecipes.Injectors#createInjector(InjectorProfiler, Module...)}, if any, is used.
+	 */
+	public void setProfiler(InjectorProfiler profiler) {
+		this.profiler = profiler;
+	}
+
+	/**
+	 * Returns the profiler used while this module is configured, or null if the injector is not being profiled
+	 */
+	protected InjectorProfiler currentProfiler() {
+		return profiler != null ? profiler : InjectorProfiler.getCurrent();
+	}
+
+	/**
+	 * Binds the type listener, timing each of its type encounters if the injector is being profiled
+	 */
+	@Override
+	protected void bindListener(Matcher<? super TypeLiteral<?>> typeMatcher, TypeListener listener) {
+		InjectorProfiler currentProfiler = currentProfiler();
+		if (currentProfiler != null) {
+			listener = new ProfilingTypeListener(listener, currentProfiler);
 		}
-		return answer;
+		super.bindListener(typeMatcher, listener);
 	}
 
 	/**
@@ -106,6 +158,10 @@ public abstract class GuiceyFruitModule extends AbstractModule {
 		bindMethodHandler(annotationType, encounterProvider(methodHandler), false);
 	}
 
+	/**
+	 * Binds a post injection hook method annotated with the given annotation to the given method handler. If lookInSuperClass is true the handler is invoked for each annotated method
+	 * in the hierarchy of the type, super class methods first.
+	 */
 	protected <A extends Annotation> void bindMethodHandler(final Class<A> annotationType, final MethodHandler methodHandler, boolean lookInSuperClass) {
 		bindMethodHandler(annotationType, encounterProvider(methodHandler), lookInSuperClass);
 	}
@@ -125,26 +181,50 @@ public abstract class GuiceyFruitModule extends AbstractModule {
 	}
 
 	private <A extends Annotation> void bindMethodHandler(final Class<A> annotationType, final EncounterProvider<MethodHandler> encounterProvider, final boolean lookInSuperClass) {
+		final LifecycleMethodRegistry registry = LifecycleMethodRegistry.getInstance(annotationType);
+
+		final String metricName = Metrics.LIFECYCLE + annotationType.getName();
+
+		bindListener(any(), new ScanningTypeListener() {
+			public Collection<Class<? extends Annotation>> getAnnotationTypes() {
+				return Collections.<Class<? extends Annotation>> singleton(annotationType);
+			}
 
-		bindListener(any(), new TypeListener() {
 			public <I> void hear(TypeLiteral<I> injectableType, TypeEncounter<I> encounter) {
 				Class<? super I> type = injectableType.getRawType();
-				final Method method = Reflection.findMethodWithAnnotation(type, annotationType, lookInSuperClass);
-				if (method != null) {
-					final A annotation = method.getAnnotation(annotationType);
+				final Method[] methods;
+				if (lookInSuperClass) {
+					List<Method> list = registry.getMethods(type).getMethods();
+					methods = list.toArray(new Method[list.size()]);
+				} else {
+					Method method = registry.getDeclaredMethod(type);
+					methods = method != null ? new Method[] { method } : new Method[0];
+				}
+				if (methods.length > 0) {
+					final Annotation[] annotations = new Annotation[methods.length];
+					for (int i = 0; i < methods.length; i++) {
+						annotations[i] = methods[i].getAnnotation(annotationType);
+					}
 					final Provider<? extends MethodHandler> provider = encounterProvider.get(encounter);
 
 					encounter.register(new InjectionListener<I>() {
 						public void afterInjection(I injectee) {
 
 							MethodHandler methodHandler = provider.get();
-							try {
-								methodHandler.afterInjection(injectee, annotation, method);
-							} catch (InvocationTargetException ie) {
-								Throwable e = ie.getTargetException();
-								throw new ProvisionException(e.getMessage(), e);
-							} catch (IllegalAccessException e) {
-								throw new ProvisionException(e.getMessage(), e);
+							MetricsRecorder recorder = Metrics.getRecorder();
+							long start = recorder != null ? System.nanoTime() : 0;
+							for (int i = 0; i < methods.length; i++) {
+								try {
+									methodHandler.afterInjection(injectee, annotations[i], methods[i]);
+								} catch (InvocationTargetException ie) {
+									Throwable e = ie.getTargetException();
+									throw new ProvisionException(e.getMessage(), e);
+								} catch (IllegalAccessException e) {
+									throw new ProvisionException(e.getMessage(), e);
+								}
+							}
+							if (recorder != null) {
+								recorder.record(metricName, System.nanoTime() - start);
 							}
 						}
 					});
@@ -193,124 +273,470 @@ public abstract class GuiceyFruitModule extends AbstractModule {
 	}
 
 	private <A extends Annotation> void bindAnnotationInjector(final Class<A> annotationType, final EncounterProvider<AnnotationMemberProvider> memberProviderProvider) {
+		// lets share a single listener per binder so that each type hierarchy is only walked once
+		// no matter how many injection annotations are registered
+		if ((annotationInjectorListener == null) || (annotationInjectorBinder != binder())) {
+			annotationInjectorListener = new AnnotationInjectorListener();
+			annotationInjectorBinder = binder();
+			bindListener(any(), annotationInjectorListener);
+		}
+		annotationInjectorListener.add(new AnnotationInjector<A>(annotationType, memberProviderProvider, currentProfiler()));
+	}
 
-		bindListener(any(), new TypeListener() {
-			Provider<? extends AnnotationMemberProvider> providerProvider;
+	/**
+	 * Records the time taken by each type encounter of a listener
+	 */
+	private static class ProfilingTypeListener implements ScanningTypeListener {
+		private final TypeListener listener;
+		private final InjectorProfiler profiler;
 
-			public <I> void hear(TypeLiteral<I> injectableType, TypeEncounter<I> encounter) {
+		public ProfilingTypeListener(TypeListener listener, InjectorProfiler profiler) {
+			this.listener = listener;
+			this.profiler = profiler;
+		}
 
-				Set<Field> boundFields = Sets.newHashSet();
-				Map<MethodKey, Method> boundMethods = Maps.newHashMap();
+		public Collection<Class<? extends Annotation>> getAnnotationTypes() {
+			if (listener instanceof ScanningTypeListener) {
+				return ((ScanningTypeListener) listener).getAnnotationTypes();
+			}
+			return Collections.emptyList();
+		}
 
-				TypeLiteral<?> startType = injectableType;
-				while (true) {
-					Class<?> type = startType.getRawType();
-					if (type == Object.class) {
-						break;
-					}
+		public <I> void hear(TypeLiteral<I> type, TypeEncounter<I> encounter) {
+			InjectorProfiler.Timer timer = profiler.start(InjectorProfiler.ENCOUNTER, type.toString());
+			try {
+				listener.hear(type, encounter);
+			} finally {
+				timer.stop();
+			}
+		}
+	}
+
+	/**
+	 * Walks the fields and methods of each encountered type once, handing each member to all of the registered annotation injectors
+	 */
+	private class AnnotationInjectorListener implements ScanningTypeListener {
+		private final List<AnnotationInjector<?>> injectors = Lists.newArrayList();
+		private final List<Class<? extends Annotation>> annotationTypes = Lists.newArrayList();
+
+		public void add(AnnotationInjector<?> injector) {
+			injectors.add(injector);
+			annotationTypes.add(injector.annotationType);
+		}
+
+		public Collection<Class<? extends Annotation>> getAnnotationTypes() {
+			return annotationTypes;
+		}
 
-					Field[] fields = type.getDeclaredFields();
-					for (Field field : fields) {
-						if (boundFields.add(field)) {
-							bindAnnotationInjectorToField(encounter, startType, field);
+		public <I> void hear(TypeLiteral<I> injectableType, TypeEncounter<I> encounter) {
+
+			List<MemberInjection> injections = Lists.newArrayList();
+			Set<Field> boundFields = Sets.newHashSet();
+			Map<MethodKey, Method> boundMethods = Maps.newHashMap();
+
+			TypeLiteral<?> startType = injectableType;
+			while (true) {
+				Class<?> type = startType.getRawType();
+				if (type == Object.class) {
+					break;
+				}
+
+				InjectionIndex.Entry entry = InjectionIndex.getEntry(type, annotationTypes);
+				Field[] fields = entry != null ? entry.getDeclaredFields(type) : type.getDeclaredFields();
+				for (Field field : fields) {
+					if (boundFields.add(field)) {
+						for (AnnotationInjector<?> injector : injectors) {
+							addInjection(injections, injector.bindAnnotationInjectorToField(encounter, startType, field));
 						}
 					}
+				}
 
-					Method[] methods = type.getDeclaredMethods();
-					for (final Method method : methods) {
-						MethodKey key = new MethodKey(method);
-						if (boundMethods.get(key) == null) {
-							boundMethods.put(key, method);
-							bindAnnotationInjectionToMember(encounter, startType, method);
+				Method[] methods = entry != null ? entry.getDeclaredMethods(type) : type.getDeclaredMethods();
+				for (final Method method : methods) {
+					MethodKey key = new MethodKey(method);
+					if (boundMethods.get(key) == null) {
+						boundMethods.put(key, method);
+						for (AnnotationInjector<?> injector : injectors) {
+							addInjection(injections, injector.bindAnnotationInjectionToMember(encounter, startType, method));
 						}
 					}
+				}
+				Class<?> supertype = type.getSuperclass();
+				if (supertype == Object.class) {
+					break;
+				}
+				startType = startType.getSupertype(supertype);
+			}
 
-					Class<?> supertype = type.getSuperclass();
-					if (supertype == Object.class) {
-						break;
-					}
-					startType = startType.getSupertype(supertype);
+			if (injections.isEmpty()) {
+				return;
+			}
+			if (generateMembersInjectors) {
+				GeneratedMembersInjector generatedInjector = MembersInjectorGenerator.newInstance(injectableType.getRawType(), injections);
+				if (generatedInjector != null) {
+					encounter.register((MembersInjector<Object>) generatedInjector);
+					encounter.register((InjectionListener<Object>) generatedInjector);
+					return;
 				}
 			}
+			for (MemberInjection injection : injections) {
+				if (injection instanceof MethodInjection) {
+					encounter.register((MethodInjection) injection);
+				} else {
+					encounter.register((FieldInjection) injection);
+				}
+			}
+		}
 
-			protected <I> void bindAnnotationInjectionToMember(final TypeEncounter<I> encounter, final TypeLiteral<?> type, final Method method) {
-				// TODO lets exclude methods with @Inject?
-				final A annotation = method.getAnnotation(annotationType);
-				if (annotation != null) {
-					if (providerProvider == null) {
-						providerProvider = memberProviderProvider.get(encounter);
-					}
+		private void addInjection(List<MemberInjection> injections, MemberInjection injection) {
+			if (injection != null) {
+				injections.add(injection);
+			}
+		}
+	}
 
-					encounter.register(new MembersInjector<I>() {
-						public void injectMembers(I injectee) {
-							AnnotationMemberProvider provider = providerProvider.get();
-
-							int size = method.getParameterTypes().length;
-							Object[] values = new Object[size];
-							for (int i = 0; i < size; i++) {
-								Class<?> paramType = getParameterType(type, method, i);
-								Object value = provider.provide(annotation, type, method, paramType, i);
-								checkInjectedValueType(value, paramType, encounter);
-
-								// if we have a null value then assume the injection point cannot be satisfied
-								// which is the spring @Autowired way of doing things
-								if ((value == null) && !provider.isNullParameterAllowed(annotation, method, paramType, i)) {
-									return;
-								}
-								values[i] = value;
-							}
-							try {
-								method.setAccessible(true);
-								method.invoke(injectee, values);
-							} catch (IllegalAccessException e) {
-								throw new ProvisionException("Failed to inject method " + method + ". Reason: " + e, e);
-							} catch (InvocationTargetException ie) {
-								Throwable e = ie.getTargetException();
-								throw new ProvisionException("Failed to inject method " + method + ". Reason: " + e, e);
+	/**
+	 * Invokes the {@link Configures} methods of this module on the instances of the type they take as a parameter
+	 */
+	private class ConfiguresListener implements TypeListener {
+		private final Map<Class<?>, List<Method>> configuresMethods;
+		private final InjectorProfiler profiler;
+
+		public ConfiguresListener(Map<Class<?>, List<Method>> configuresMethods, InjectorProfiler profiler) {
+			this.configuresMethods = configuresMethods;
+			this.profiler = profiler;
+		}
+
+		public <I> void hear(TypeLiteral<I> injectableType, TypeEncounter<I> encounter) {
+			List<Method> methods = configuresMethods.get(injectableType.getRawType());
+			if (methods == null) {
+				return;
+			}
+			final Method[] methodArray = methods.toArray(new Method[methods.size()]);
+			encounter.register(new MembersInjector<I>() {
+				public void injectMembers(I injectee) {
+					for (Method method : methodArray) {
+						// lets invoke the configures method
+						InjectorProfiler.Timer timer = profiler != null ? profiler.start(InjectorProfiler.CONFIGURES, method.toString()) : null;
+						try {
+							method.invoke(GuiceyFruitModule.this, injectee);
+						} catch (IllegalAccessException e) {
+							throw new ProvisionException("Failed to invoke @Configures method " + method + ". Reason: " + e, e);
+						} catch (InvocationTargetException ie) {
+							Throwable e = ie.getTargetException();
+							throw new ProvisionException("Failed to invoke @Configures method " + method + ". Reason: " + e, e);
+						} finally {
+							if (timer != null) {
+								timer.stop();
 							}
 						}
-					});
+					}
 				}
+			});
+		}
+	}
+
+	/**
+	 * Injects the members annotated with a given injection annotation using its {@link AnnotationMemberProvider}
+	 */
+	private class AnnotationInjector<A extends Annotation> {
+		private final Class<A> annotationType;
+		private final EncounterProvider<AnnotationMemberProvider> memberProviderProvider;
+		private final InjectorProfiler profiler;
+		private final String profileName;
+		private Provider<? extends AnnotationMemberProvider> providerProvider;
+
+		public AnnotationInjector(Class<A> annotationType, EncounterProvider<AnnotationMemberProvider> memberProviderProvider, InjectorProfiler profiler) {
+			this.annotationType = annotationType;
+			this.memberProviderProvider = memberProviderProvider;
+			this.profiler = profiler;
+			this.profileName = "@" + annotationType.getName();
+		}
+
+		protected MemberInjection bindAnnotationInjectionToMember(TypeEncounter<?> encounter, TypeLiteral<?> type, Method method) {
+			if (profiler == null) {
+				return doBindAnnotationInjectionToMember(encounter, type, method);
+			}
+			InjectorProfiler.Timer timer = profiler.start(InjectorProfiler.ANNOTATION, profileName);
+			try {
+				return doBindAnnotationInjectionToMember(encounter, type, method);
+			} finally {
+				timer.stop();
+			}
+		}
+
+		protected MemberInjection bindAnnotationInjectorToField(TypeEncounter<?> encounter, TypeLiteral<?> type, Field field) {
+			if (profiler == null) {
+				return doBindAnnotationInjectorToField(encounter, type, field);
 			}
+			InjectorProfiler.Timer timer = profiler.start(InjectorProfiler.ANNOTATION, profileName);
+			try {
+				return doBindAnnotationInjectorToField(encounter, type, field);
+			} finally {
+				timer.stop();
+			}
+		}
+
+		private MemberInjection doBindAnnotationInjectionToMember(TypeEncounter<?> encounter, TypeLiteral<?> type, Method method) {
+			// TODO lets exclude methods with @Inject?
+			A annotation = method.getAnnotation(annotationType);
+			if (annotation == null) {
+				return null;
+			}
+			if (providerProvider == null) {
+				providerProvider = memberProviderProvider.get(encounter);
+			}
+			// resolve the injection point once so that each provision is a plain invoke
+			if (!makeAccessible(method, encounter)) {
+				return null;
+			}
+			return new MethodInjection(encounter, InjectionPlan.newInstance(type, method, lazyInjection), annotation, providerProvider, profiler);
+		}
+
+		private MemberInjection doBindAnnotationInjectorToField(TypeEncounter<?> encounter, TypeLiteral<?> type, Field field) {
+			// TODO lets exclude fields with @Inject?
+			A annotation = field.getAnnotation(annotationType);
+			if (annotation == null) {
+				return null;
+			}
+			if (providerProvider == null) {
+				providerProvider = memberProviderProvider.get(encounter);
+			}
+			// resolve the injection point once so that each provision is a plain field write
+			if (!makeAccessible(field, encounter)) {
+				return null;
+			}
+			return new FieldInjection(encounter, InjectionPlan.newInstance(type, field, lazyInjection), annotation, providerProvider, profiler);
+		}
+	}
 
-			protected <I> void bindAnnotationInjectorToField(final TypeEncounter<I> encounter, final TypeLiteral<?> type, final Field field) {
-				// TODO lets exclude fields with @Inject?
-				final A annotation = field.getAnnotation(annotationType);
-				if (annotation != null) {
-					if (providerProvider == null) {
-						providerProvider = memberProviderProvider.get(encounter);
+	/**
+	 * Invokes an annotated method with the values from the {@link AnnotationMemberProvider}
+	 */
+	private class MethodInjection implements MemberInjection, MembersInjector<Object> {
+		private final TypeEncounter<?> encounter;
+		private final InjectionPlan plan;
+		private final Method method;
+		private final Annotation annotation;
+		private final Provider<? extends AnnotationMemberProvider> providerProvider;
+		private final InjectorProfiler profiler;
+		private final String metricName;
+
+		public MethodInjection(TypeEncounter<?> encounter, InjectionPlan plan, Annotation annotation, Provider<? extends AnnotationMemberProvider> providerProvider, InjectorProfiler profiler) {
+			this.encounter = encounter;
+			this.plan = plan;
+			this.method = (Method) plan.getMember();
+			this.annotation = annotation;
+			this.providerProvider = providerProvider;
+			this.profiler = profiler;
+			this.metricName = Metrics.PROVISION + annotation.annotationType().getName();
+		}
+
+		public Member getMember() {
+			return method;
+		}
+
+		public Object getValue() {
+			AnnotationMemberProvider provider = providerProvider.get();
+			Object value = provideValue(provider, 0);
+			if ((value == null) && !plan.isNullParameterAllowed(provider, annotation, 0)) {
+				return SKIP;
+			}
+			return value;
+		}
+
+		public Object[] getValues() {
+			AnnotationMemberProvider provider = providerProvider.get();
+
+			int size = plan.getSize();
+			Object[] values = new Object[size];
+			for (int i = 0; i < size; i++) {
+				Object value = provideValue(provider, i);
+
+				// if we have a null value then assume the injection point cannot be satisfied
+				// which is the spring @Autowired way of doing things
+				if ((value == null) && !plan.isNullParameterAllowed(provider, annotation, i)) {
+					return null;
+				}
+				values[i] = value;
+			}
+			return values;
+		}
+
+		private Object provideValue(AnnotationMemberProvider provider, final int i) {
+			Class<?> lazyType = getLazyType(plan, provider, annotation, i);
+			if (lazyType != null) {
+				return LazyValues.newInstance(lazyType, new Provider<Object>() {
+					public Object get() {
+						return resolveValue(providerProvider.get(), i);
 					}
+				});
+			}
+			return resolveValue(provider, i);
+		}
 
-					encounter.register(new InjectionListener<I>() {
-						public void afterInjection(I injectee) {
-							AnnotationMemberProvider provider = providerProvider.get();
-							Object value = provider.provide(annotation, type, field);
-							checkInjectedValueType(value, field.getType(), encounter);
-
-							try {
-								field.setAccessible(true);
-								field.set(injectee, value);
-							} catch (IllegalAccessException e) {
-								throw new ProvisionException("Failed to inject field " + field + ". Reason: " + e, e);
-							}
-						}
-					});
+		private Object resolveValue(AnnotationMemberProvider provider, int i) {
+			Class<?> paramType = plan.getParameterType(i);
+			Object value;
+			InjectorProfiler.Timer timer = profiler != null ? profiler.start(InjectorProfiler.PROVIDE, method.toString()) : null;
+			MetricsRecorder recorder = Metrics.getRecorder();
+			long start = recorder != null ? System.nanoTime() : 0;
+			try {
+				if (provider instanceof AnnotationMemberProviderSupport) {
+					value = ((AnnotationMemberProviderSupport) provider).provide(annotation, plan, i);
+				} else {
+					value = provider.provide(annotation, plan.getType(), method, paramType, i);
+				}
+			} finally {
+				if (recorder != null) {
+					recorder.record(metricName, System.nanoTime() - start);
+				}
+				if (timer != null) {
+					timer.stop();
 				}
 			}
-		});
+			checkInjectedValueType(value, paramType, encounter);
+			return value;
+		}
+
+		public void injectMembers(Object injectee) {
+			inject(injectee);
+		}
+
+		public void inject(Object injectee) {
+			Object[] values = getValues();
+			if (values == null) {
+				return;
+			}
+			try {
+				method.invoke(injectee, values);
+			} catch (IllegalAccessException e) {
+				throw new ProvisionException("Failed to inject method " + method + ". Reason: " + e, e);
+			} catch (InvocationTargetException ie) {
+				throw injectionFailed(ie.getTargetException());
+			}
+		}
+
+		public RuntimeException injectionFailed(Throwable e) {
+			return new ProvisionException("Failed to inject method " + method + ". Reason: " + e, e);
+		}
 	}
 
-	protected Class<?> getParameterType(TypeLiteral<?> type, Method method, int i) {
-		Class<?>[] parameterTypes = method.getParameterTypes();
-		List<TypeLiteral<?>> list = type.getParameterTypes(method);
-		TypeLiteral<?> typeLiteral = list.get(i);
+	/**
+	 * Sets an annotated field to the value from the {@link AnnotationMemberProvider}
+	 */
+	private class FieldInjection implements MemberInjection, InjectionListener<Object> {
+		private final TypeEncounter<?> encounter;
+		private final InjectionPlan plan;
+		private final Field field;
+		private final Annotation annotation;
+		private final Provider<? extends AnnotationMemberProvider> providerProvider;
+		private final InjectorProfiler profiler;
+		private final String metricName;
+
+		public FieldInjection(TypeEncounter<?> encounter, InjectionPlan plan, Annotation annotation, Provider<? extends AnnotationMemberProvider> providerProvider, InjectorProfiler profiler) {
+			this.encounter = encounter;
+			this.plan = plan;
+			this.field = (Field) plan.getMember();
+			this.annotation = annotation;
+			this.providerProvider = providerProvider;
+			this.profiler = profiler;
+			this.metricName = Metrics.PROVISION + annotation.annotationType().getName();
+		}
+
+		public Member getMember() {
+			return field;
+		}
 
-		Class<?> paramType = typeLiteral.getRawType();
-		if ((paramType == Object.class) || (paramType.isArray() && (paramType.getComponentType() == Object.class))) {
-			// if the TypeLiteral ninja doesn't work, lets fall back to the actual type
-			paramType = parameterTypes[i];
+		public Object getValue() {
+			Class<?> lazyType = getLazyType(plan, providerProvider.get(), annotation, 0);
+			if (lazyType != null) {
+				return LazyValues.newInstance(lazyType, new Provider<Object>() {
+					public Object get() {
+						return resolveValue();
+					}
+				});
+			}
+			return resolveValue();
+		}
+
+		private Object resolveValue() {
+			AnnotationMemberProvider provider = providerProvider.get();
+			Object value;
+			InjectorProfiler.Timer timer = profiler != null ? profiler.start(InjectorProfiler.PROVIDE, field.toString()) : null;
+			MetricsRecorder recorder = Metrics.getRecorder();
+			long start = recorder != null ? System.nanoTime() : 0;
+			try {
+				if (provider instanceof AnnotationMemberProviderSupport) {
+					value = ((AnnotationMemberProviderSupport) provider).provide(annotation, plan, 0);
+				} else {
+					value = provider.provide(annotation, plan.getType(), field);
+				}
+			} finally {
+				if (recorder != null) {
+					recorder.record(metricName, System.nanoTime() - start);
+				}
+				if (timer != null) {
+					timer.stop();
+				}
+			}
+			checkInjectedValueType(value, plan.getMemberType(0), encounter);
+			return value;
 		}
-		return paramType;
+
+		public Object[] getValues() {
+			return new Object[] { getValue() };
+		}
+
+		public void afterInjection(Object injectee) {
+			inject(injectee);
+		}
+
+		public void inject(Object injectee) {
+			Object value = getValue();
+			try {
+				field.set(injectee, value);
+			} catch (IllegalAccessException e) {
+				throw new ProvisionException("Failed to inject field " + field + ". Reason: " + e, e);
+			}
+		}
+
+		public RuntimeException injectionFailed(Throwable e) {
+			return new ProvisionException("Failed to inject field " + field + ". Reason: " + e, e);
+		}
+	}
+
+	/**
+	 * Returns the type of the holder or proxy to inject for the given value or null if it is injected eagerly, which is also the case for a value which can be null but would be injected
+	 * as a proxy, as a proxy cannot be null
+	 */
+	@SuppressWarnings("unchecked")
+	protected static Class<?> getLazyType(InjectionPlan plan, AnnotationMemberProvider provider, Annotation annotation, int index) {
+		Class<?> answer = plan.getLazyType(index);
+		if (answer != null && !LazyValues.canBeNull(answer) && plan.isNullParameterAllowed(provider, annotation, index)) {
+			return null;
+		}
+		return answer;
+	}
+
+	/**
+	 * Suppresses the access checks on the given injection point up front so they are not repeated for every injectee, reporting an error on the encounter if the member cannot be made accessible
+	 * 
+	 * @return true if the member is now accessible
+	 */
+	protected <I> boolean makeAccessible(AccessibleObject member, TypeEncounter<I> encounter) {
+		try {
+			member.setAccessible(true);
+			return true;
+		} catch (SecurityException e) {
+			encounter.addError("Failed to make %s accessible for injection. Reason: %s", member, e);
+			return false;
+		}
+	}
+
+	protected Class<?> getParameterType(TypeLiteral<?> type, Method method, int i) {
+		List<TypeLiteral<?>> list = type.getParameterTypes(method);
+		return InjectionPlan.getRawType(list.get(i), method.getParameterTypes()[i]);
 	}
 
 	/*
@@ -0,0 +1,192 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.support;
+
+import java.lang.annotation.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+import org.guicerecipes.*;
+
+import com.google.common.base.*;
+import com.google.inject.*;
+
+/**
+ * The resolved types, annotations and nullability of the values injected into an annotated field or method of a given type, and which of them are injected {@link Lazy lazily}.
+ * 
+ * A plan is created once when the type is encountered so that injecting each instance only needs to read these values rather than resolving the generic types and copying the parameter
+ * annotations of the member again.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public final class InjectionPlan {
+	private final TypeLiteral<?> type;
+	private final Member member;
+	private final TypeLiteral<?>[] requiredTypes;
+	private final Class<?>[] memberTypes;
+	private final Class<?>[] parameterTypes;
+	private final Annotation[][] annotations;
+	private final Class<?>[] lazyTypes;
+	private volatile boolean[] nullParameterAllowed;
+
+	private InjectionPlan(TypeLiteral<?> type, Member member, TypeLiteral<?>[] requiredTypes, Class<?>[] memberTypes, Annotation[][] annotations, boolean lazy) {
+		this.type = type;
+		this.member = member;
+		this.requiredTypes = requiredTypes;
+		this.memberTypes = memberTypes;
+		this.annotations = annotations;
+		this.parameterTypes = new Class<?>[memberTypes.length];
+		this.lazyTypes = new Class<?>[memberTypes.length];
+		lazy = lazy || ((AnnotatedElement) member).isAnnotationPresent(Lazy.class);
+		for (int i = 0; i < memberTypes.length; i++) {
+			if (lazy || isLazy(annotations[i])) {
+				Class<?> memberType = memberTypes[i];
+				Type requiredType = requiredTypes[i].getType();
+				if ((memberType == Provider.class || memberType == Supplier.class) && requiredType instanceof ParameterizedType) {
+					// lets inject a holder of the value so the value is what is required
+					requiredTypes[i] = TypeLiteral.get(((ParameterizedType) requiredType).getActualTypeArguments()[0]);
+					memberTypes[i] = requiredTypes[i].getRawType();
+					lazyTypes[i] = memberType;
+				} else if (memberType.isInterface()) {
+					lazyTypes[i] = memberType;
+				}
+			}
+			parameterTypes[i] = getRawType(requiredTypes[i], memberTypes[i]);
+		}
+	}
+
+	/**
+	 * Creates the plan for injecting the given field of the given type
+	 */
+	public static InjectionPlan newInstance(TypeLiteral<?> type, Field field) {
+		return newInstance(type, field, false);
+	}
+
+	/**
+	 * Creates the plan for injecting the given field of the given type, lazily if lazy is true or the field is annotated with {@link Lazy}
+	 */
+	public static InjectionPlan newInstance(TypeLiteral<?> type, Field field, boolean lazy) {
+		return new InjectionPlan(type, field, new TypeLiteral<?>[] { type.getFieldType(field) }, new Class<?>[] { field.getType() }, new Annotation[1][], lazy);
+	}
+
+	/**
+	 * Creates the plan for injecting the parameters of the given method of the given type
+	 */
+	public static InjectionPlan newInstance(TypeLiteral<?> type, Method method) {
+		return newInstance(type, method, false);
+	}
+
+	/**
+	 * Creates the plan for injecting the parameters of the given method of the given type, lazily if lazy is true or the method or parameter is annotated with {@link Lazy}
+	 */
+	public static InjectionPlan newInstance(TypeLiteral<?> type, Method method, boolean lazy) {
+		List<TypeLiteral<?>> list = type.getParameterTypes(method);
+		TypeLiteral<?>[] requiredTypes = list.toArray(new TypeLiteral<?>[list.size()]);
+		return new InjectionPlan(type, method, requiredTypes, method.getParameterTypes().clone(), method.getParameterAnnotations(), lazy);
+	}
+
+	private static boolean isLazy(Annotation[] annotations) {
+		if (annotations != null) {
+			for (Annotation annotation : annotations) {
+				if (annotation instanceof Lazy) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the raw type of the resolved type literal, falling back to the declared type of the member if the generic type could not be resolved to anything more useful than Object
+	 */
+	public static Class<?> getRawType(TypeLiteral<?> requiredType, Class<?> memberType) {
+		Class<?> answer = requiredType.getRawType();
+		if ((answer == Object.class) || (answer.isArray() && (answer.getComponentType() == Object.class))) {
+			// if the TypeLiteral ninja doesn't work, lets fall back to the actual type
+			answer = memberType;
+		}
+		return answer;
+	}
+
+	/** Returns the type on which the member is injected */
+	public TypeLiteral<?> getType() {
+		return type;
+	}
+
+	/** Returns the annotated field or method */
+	public Member getMember() {
+		return member;
+	}
+
+	/** Returns the number of values injected which is 1 for a field or the number of method parameters */
+	public int getSize() {
+		return memberTypes.length;
+	}
+
+	/** Returns the fully resolved generic type of the given value */
+	public TypeLiteral<?> getRequiredType(int index) {
+		return requiredTypes[index];
+	}
+
+	/** Returns the declared type of the field or the method parameter, or the raw type of the value held if it is a lazily injected {@link Provider} or {@link Supplier} */
+	public Class<?> getMemberType(int index) {
+		return memberTypes[index];
+	}
+
+	/** Returns the raw type of the given value, see {@link #getRawType(TypeLiteral, Class)} */
+	public Class<?> getParameterType(int index) {
+		return parameterTypes[index];
+	}
+
+	/**
+	 * Returns the type of the lazy holder or proxy injected for the given value, which is {@link Provider}, {@link Supplier} or an interface, or null if the value is injected eagerly
+	 */
+	public Class<?> getLazyType(int index) {
+		return lazyTypes[index];
+	}
+
+	/** Returns the annotations on the given method parameter or null if the member is a field */
+	public Annotation[] getAnnotations(int index) {
+		return annotations[index];
+	}
+
+	/**
+	 * Returns true if the given method parameter, or the field, can be null.
+	 * 
+	 * The answer is asked of the provider on the first injection and is then reused, as the provider is not available until the injector has been created.
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean isNullParameterAllowed(AnnotationMemberProvider provider, Annotation annotation, int index) {
+		boolean[] answer = nullParameterAllowed;
+		if (answer == null) {
+			// if we are invoked concurrently it doesn't matter if we work out the flags twice
+			answer = new boolean[parameterTypes.length];
+			for (int i = 0; i < answer.length; i++) {
+				answer[i] = provider.isNullParameterAllowed(annotation, member instanceof Method ? (Method) member : null, parameterTypes[i], i);
+			}
+			nullParameterAllowed = answer;
+		}
+		return answer[index];
+	}
+
+	@Override
+	public String toString() {
+		return "InjectionPlan[" + member + " on " + type + "]";
+	}
+}
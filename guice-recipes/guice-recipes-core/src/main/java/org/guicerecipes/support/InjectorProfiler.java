@@ -0,0 +1,307 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.support;
+
+import java.io.*;
+import java.lang.management.*;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import com.google.common.collect.*;
+
+/**
+ * Records the wall time and, where the JVM supports it, the bytes allocated by the work guice-recipes does while an injector is created, such as each type encounter, each injection
+ * annotation handler, each {@link AnnotationMemberProvider} call and each {@link org.guicerecipes.Configures} method, so that it can be told apart from the time spent in Guice
+ * itself.
+ * <p>
+ * The samples are aggregated by category and name and reported sorted by their total time, as text or JSON. Times are inclusive so an encounter includes the time of the handlers
+ * it invokes.
+ * 
+ * @see org.guicerecipes.Injectors#createInjector(InjectorProfiler, com.google.inject.Module...)
+ * @see GuiceyFruitModule#setProfiler(InjectorProfiler)
+ * @version $Revision: 1.1 $
+ */
+public class InjectorProfiler {
+	public static final String INJECTOR = "injector";
+	public static final String ENCOUNTER = "encounter";
+	public static final String ANNOTATION = "annotation";
+	public static final String PROVIDE = "provide";
+	public static final String CONFIGURES = "configures";
+	public static final String WARM_UP = "warmUp";
+
+	private static final ThreadLocal<InjectorProfiler> current = new ThreadLocal<InjectorProfiler>();
+	private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+	private static final Method allocatedBytesMethod = findAllocatedBytesMethod();
+
+	private final ConcurrentMap<String, Sample> samples = new ConcurrentHashMap<String, Sample>();
+
+	/**
+	 * Returns the profiler of the injector being created by the current thread or null if it is not being profiled
+	 */
+	public static InjectorProfiler getCurrent() {
+		return current.get();
+	}
+
+	/**
+	 * Sets the profiler of the injector being created by the current thread, or clears it if the profiler is null
+	 */
+	public static void setCurrent(InjectorProfiler profiler) {
+		if (profiler == null) {
+			current.remove();
+		} else {
+			current.set(profiler);
+		}
+	}
+
+	/**
+	 * Starts timing some work which is recorded when the returned timer is stopped
+	 */
+	public Timer start(String category, String name) {
+		return new Timer(category, name);
+	}
+
+	/**
+	 * Records some work which took the given time and allocated the given number of bytes, or a negative number if the allocation is not known
+	 */
+	public void record(String category, String name, long nanos, long allocatedBytes) {
+		String key = category + ':' + name;
+		Sample sample = samples.get(key);
+		if (sample == null) {
+			sample = new Sample(category, name);
+			Sample previous = samples.putIfAbsent(key, sample);
+			if (previous != null) {
+				sample = previous;
+			}
+		}
+		sample.add(nanos, allocatedBytes);
+	}
+
+	/**
+	 * Returns the samples recorded so far sorted by their total time, longest first
+	 */
+	public List<Sample> getSamples() {
+		List<Sample> answer = Lists.newArrayList(samples.values());
+		Collections.sort(answer, new Comparator<Sample>() {
+			public int compare(Sample sample1, Sample sample2) {
+				long total1 = sample1.getTotalNanos();
+				long total2 = sample2.getTotalNanos();
+				return total1 > total2 ? -1 : (total1 < total2 ? 1 : 0);
+			}
+		});
+		return answer;
+	}
+
+	/**
+	 * Discards all of the samples recorded so far
+	 */
+	public void reset() {
+		samples.clear();
+	}
+
+	/**
+	 * Returns the report of the samples as a table of text
+	 */
+	public String toText() {
+		StringBuilder buffer = new StringBuilder();
+		buffer.append(String.format("%-12s %8s %12s %12s %14s  %s%n", "category", "count", "total ms", "max ms", "allocated KB", "name"));
+		for (Sample sample : getSamples()) {
+			long allocated = sample.getAllocatedBytes();
+			buffer.append(String.format("%-12s %8d %12.3f %12.3f %14s  %s%n", sample.getCategory(), sample.getCount(), sample.getTotalNanos() / 1000000.0,
+					sample.getMaxNanos() / 1000000.0, allocated < 0 ? "-" : String.valueOf(allocated / 1024), sample.getName()));
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * Returns the report of the samples as a JSON array of objects, with an allocatedBytes value of -1 if the allocation is not known
+	 */
+	public String toJson() {
+		StringBuilder buffer = new StringBuilder("[");
+		boolean first = true;
+		for (Sample sample : getSamples()) {
+			if (first) {
+				first = false;
+			} else {
+				buffer.append(',');
+			}
+			buffer.append("\n  {\"category\": ");
+			appendJsonString(buffer, sample.getCategory());
+			buffer.append(", \"name\": ");
+			appendJsonString(buffer, sample.getName());
+			buffer.append(", \"count\": ").append(sample.getCount());
+			buffer.append(", \"totalNanos\": ").append(sample.getTotalNanos());
+			buffer.append(", \"maxNanos\": ").append(sample.getMaxNanos());
+			buffer.append(", \"allocatedBytes\": ").append(sample.getAllocatedBytes());
+			buffer.append('}');
+		}
+		return buffer.append("\n]\n").toString();
+	}
+
+	/**
+	 * Writes the report to the given file, as JSON if the file name ends with .json otherwise as text
+	 */
+	public void writeReport(File file) throws IOException {
+		String report = file.getName().endsWith(".json") ? toJson() : toText();
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write(report);
+		} finally {
+			writer.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return toText();
+	}
+
+	private static void appendJsonString(StringBuilder buffer, String value) {
+		buffer.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char ch = value.charAt(i);
+			if (ch == '"' || ch == '\\') {
+				buffer.append('\\').append(ch);
+			} else if (ch < 0x20) {
+				buffer.append(String.format("\\u%04x", (int) ch));
+			} else {
+				buffer.append(ch);
+			}
+		}
+		buffer.append('"');
+	}
+
+	/**
+	 * Returns the com.sun.management.ThreadMXBean method to find the bytes allocated by a thread if the JVM supports it
+	 */
+	private static Method findAllocatedBytesMethod() {
+		try {
+			Class<?> type = Class.forName("com.sun.management.ThreadMXBean");
+			if (type.isInstance(threadMXBean) && (Boolean) type.getMethod("isThreadAllocatedMemorySupported").invoke(threadMXBean)) {
+				type.getMethod("setThreadAllocatedMemoryEnabled", boolean.class).invoke(threadMXBean, true);
+				return type.getMethod("getThreadAllocatedBytes", long.class);
+			}
+		} catch (Exception e) {
+			// not a HotSpot JVM so lets just not report allocations
+		}
+		return null;
+	}
+
+	private static long allocatedBytes() {
+		if (allocatedBytesMethod != null) {
+			try {
+				return (Long) allocatedBytesMethod.invoke(threadMXBean, Thread.currentThread().getId());
+			} catch (Exception e) {
+				// ignore
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Times some work on the current thread
+	 */
+	public class Timer {
+		private final String category;
+		private final String name;
+		private final long startBytes;
+		private final long startNanos;
+
+		Timer(String category, String name) {
+			this.category = category;
+			this.name = name;
+			this.startBytes = allocatedBytes();
+			this.startNanos = System.nanoTime();
+		}
+
+		/**
+		 * Records the time and allocation since this timer was started
+		 */
+		public void stop() {
+			long nanos = System.nanoTime() - startNanos;
+			long bytes = startBytes < 0 ? -1 : allocatedBytes() - startBytes;
+			record(category, name, nanos, bytes);
+		}
+	}
+
+	/**
+	 * The aggregated time and allocation of all the work recorded with a given category and name
+	 */
+	public static final class Sample {
+		private final String category;
+		private final String name;
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+		private final AtomicLong allocatedBytes = new AtomicLong();
+
+		Sample(String category, String name) {
+			this.category = category;
+			this.name = name;
+		}
+
+		void add(long nanos, long bytes) {
+			count.incrementAndGet();
+			totalNanos.addAndGet(nanos);
+			while (true) {
+				long max = maxNanos.get();
+				if (nanos <= max || maxNanos.compareAndSet(max, nanos)) {
+					break;
+				}
+			}
+			if (bytes < 0) {
+				allocatedBytes.set(Long.MIN_VALUE);
+			} else {
+				allocatedBytes.addAndGet(bytes);
+			}
+		}
+
+		public String getCategory() {
+			return category;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getCount() {
+			return count.get();
+		}
+
+		public long getTotalNanos() {
+			return totalNanos.get();
+		}
+
+		public long getMaxNanos() {
+			return maxNanos.get();
+		}
+
+		/** Returns the bytes allocated by the work or -1 if it is not known */
+		public long getAllocatedBytes() {
+			long answer = allocatedBytes.get();
+			return answer < 0 ? -1 : answer;
+		}
+
+		@Override
+		public String toString() {
+			return "Sample[" + category + " " + name + " count: " + getCount() + " totalNanos: " + getTotalNanos() + "]";
+		}
+	}
+}
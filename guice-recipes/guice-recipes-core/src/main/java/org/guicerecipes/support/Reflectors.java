@@ -18,6 +18,7 @@
 
 package org.guicerecipes.support;
 
+import java.lang.annotation.*;
 import java.lang.reflect.*;
 import java.util.*;
 
@@ -65,4 +66,59 @@ public class Reflectors {
 		}
 		return answer;
 	}
+
+	/**
+	 * Returns all the methods on the given type annotated with the given annotation ignoring overridden methods, using the injection index for the indexed classes in the hierarchy.
+	 * Private methods and package private methods of another package are never overridden so they are returned even if a sub class declares a method with the same signature.
+	 */
+	public static List<Method> getAllMethodsWithAnnotation(Class<?> type, Class<? extends Annotation> annotationType) {
+		List<Method> answer = Lists.newArrayList();
+		Multimap<MethodKey, Method> boundMethods = ArrayListMultimap.create();
+		for (; type != null && type != Object.class; type = type.getSuperclass()) {
+			InjectionIndex.Entry entry = InjectionIndex.getEntry(type, annotationType);
+			Method[] methods = entry != null ? entry.getDeclaredMethods(type) : type.getDeclaredMethods();
+			for (Method method : methods) {
+				MethodKey key = new MethodKey(method);
+				if (!isOverridden(boundMethods.get(key), method) && method.getAnnotation(annotationType) != null) {
+					answer.add(method);
+				}
+				boundMethods.put(key, method);
+			}
+		}
+		return answer;
+	}
+
+	/** Returns true if any of the given sub class methods with the same signature as the given method overrides it */
+	static boolean isOverridden(Collection<Method> subclassMethods, Method method) {
+		for (Method subclassMethod : subclassMethods) {
+			if (overrides(subclassMethod, method)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if the given method overrides the given method with the same signature of one of its super classes, which is only the case if neither is private and the super
+	 * class method is visible to the sub class
+	 */
+	public static boolean overrides(Method method, Method superclassMethod) {
+		int modifiers = superclassMethod.getModifiers();
+		if (Modifier.isPrivate(modifiers) || Modifier.isPrivate(method.getModifiers())) {
+			return false;
+		}
+		if (Modifier.isPublic(modifiers) || Modifier.isProtected(modifiers)) {
+			return true;
+		}
+		// package private methods can only be overridden from the same runtime package
+		Class<?> type = method.getDeclaringClass();
+		Class<?> superclass = superclassMethod.getDeclaringClass();
+		return type.getClassLoader() == superclass.getClassLoader() && getPackageName(type).equals(getPackageName(superclass));
+	}
+
+	private static String getPackageName(Class<?> type) {
+		String name = type.getName();
+		int index = name.lastIndexOf('.');
+		return index < 0 ? "" : name.substring(0, index);
+	}
 }
@@ -0,0 +1,31 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.guicerecipes.support;
+
+/**
+ * A {@link Closer} which can tell which types of object it closes, so that it is only invoked for the objects it can close. Closers which do not implement this interface are
+ * invoked for every object.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public interface TypedCloser extends Closer {
+	/**
+	 * Returns true if objects of the given type may need to be closed by this closer
+	 */
+	boolean canClose(Class<?> type);
+}
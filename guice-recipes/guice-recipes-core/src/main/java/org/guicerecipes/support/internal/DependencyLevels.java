@@ -0,0 +1,231 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.guicerecipes.support.internal;
+
+import java.lang.annotation.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.guicerecipes.*;
+import org.guicerecipes.support.*;
+
+import com.google.common.collect.*;
+import com.google.inject.*;
+import com.google.inject.spi.*;
+
+/**
+ * Orders the bindings of an injector within a scope into levels from the dependency graph described by the {@link Binding} and {@link Dependency} SPI, so that each binding only
+ * depends on bindings in earlier levels. The objects of each level can then be created in parallel, level by level, or closed in parallel in the reverse order. Dependencies on unscoped or differently scoped bindings are followed through to the
+ * scoped bindings they need, while dependencies on providers are ignored as they are not created eagerly. Any bindings in a dependency cycle are created one at a time in a final
+ * level.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public class DependencyLevels {
+	private final Injector injector;
+	private final Class<? extends Annotation> scopeAnnotation;
+	private final Map<Key<?>, Binding<?>> bindings = Maps.newLinkedHashMap();
+	private final Map<Key<?>, Set<Key<?>>> dependencies = Maps.newHashMap();
+	private final List<List<Binding<?>>> levels = Lists.newArrayList();
+
+	private final BindingTargetVisitor<Object, Key<?>> linkVisitor = new DefaultBindingTargetVisitor<Object, Key<?>>() {
+		@Override
+		public Key<?> visit(LinkedKeyBinding<?> binding) {
+			return binding.getLinkedKey();
+		}
+
+		@Override
+		public Key<?> visit(ProviderKeyBinding<?> binding) {
+			return binding.getProviderKey();
+		}
+	};
+
+	public DependencyLevels(Injector injector, Class<? extends Annotation> scopeAnnotation) {
+		this(injector, scopeAnnotation, true);
+	}
+
+	/**
+	 * @param includeInstances whether bindings to instances are included, which there is no need to do when creating the objects as the module created them
+	 */
+	public DependencyLevels(Injector injector, Class<? extends Annotation> scopeAnnotation, boolean includeInstances) {
+		this.injector = injector;
+		this.scopeAnnotation = scopeAnnotation;
+		for (Binding<?> binding : injector.getAllBindings().values()) {
+			if ((includeInstances || !(binding instanceof InstanceBinding<?>)) && scopeAnnotation.equals(Injectors.getScopeAnnotation(binding))) {
+				bindings.put(binding.getKey(), binding);
+			}
+		}
+		Map<Key<?>, Set<Key<?>>> edges = Maps.newHashMap();
+		for (Key<?> key : bindings.keySet()) {
+			Set<Key<?>> set = Sets.newLinkedHashSet();
+			for (Key<?> dependency : getDirectDependencies(bindings.get(key))) {
+				set.addAll(getScopedDependencies(dependency, Sets.<Key<?>> newHashSet()));
+			}
+			set.remove(key);
+			edges.put(key, set);
+		}
+		createLevels(edges);
+	}
+
+	public Class<? extends Annotation> getScopeAnnotation() {
+		return scopeAnnotation;
+	}
+
+	/**
+	 * Returns the bindings to create in order, the bindings within each level being independent of each other
+	 */
+	public List<List<Binding<?>>> getLevels() {
+		return levels;
+	}
+
+	/**
+	 * Creates the objects of each level in turn using the given executor and waits for them to be created, returning the time in nanoseconds taken to create each binding. If a
+	 * binding fails to be created the remaining bindings of its level are created before the failure is thrown.
+	 * <p>
+	 * Singletons are created in the calling thread instead, as Guice creates them while holding a lock shared by all injectors so creating them in parallel would only add the cost of
+	 * handing them to the executor.
+	 */
+	public Map<Key<?>, Long> warmUp(Executor executor) {
+		InjectorProfiler profiler = null;
+		Binding<InjectorProfiler> profilerBinding = injector.getExistingBinding(Key.get(InjectorProfiler.class));
+		if (profilerBinding != null) {
+			profiler = profilerBinding.getProvider().get();
+		}
+		final ConcurrentMap<Key<?>, Long> times = new ConcurrentHashMap<Key<?>, Long>();
+		final List<RuntimeException> failures = new CopyOnWriteArrayList<RuntimeException>();
+		boolean singletons = scopeAnnotation == Singleton.class || scopeAnnotation == javax.inject.Singleton.class;
+		for (List<Binding<?>> level : levels) {
+			final CountDownLatch latch = new CountDownLatch(level.size());
+			for (final Binding<?> binding : level) {
+				final InjectorProfiler levelProfiler = profiler;
+				Runnable task = new Runnable() {
+					public void run() {
+						try {
+							InjectorProfiler.Timer timer = levelProfiler == null ? null : levelProfiler.start(InjectorProfiler.WARM_UP, binding.getKey().toString());
+							long start = System.nanoTime();
+							try {
+								binding.getProvider().get();
+							} finally {
+								times.put(binding.getKey(), System.nanoTime() - start);
+								if (timer != null) {
+									timer.stop();
+								}
+							}
+						} catch (RuntimeException e) {
+							failures.add(e);
+						} finally {
+							latch.countDown();
+						}
+					}
+				};
+				if (singletons) {
+					task.run();
+					continue;
+				}
+				try {
+					executor.execute(task);
+				} catch (RejectedExecutionException e) {
+					task.run();
+				}
+			}
+			try {
+				latch.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ProvisionException("Interrupted while warming up " + scopeAnnotation.getName() + " bindings");
+			}
+			if (!failures.isEmpty()) {
+				throw failures.get(0);
+			}
+		}
+		Map<Key<?>, Long> answer = Maps.newLinkedHashMap();
+		for (List<Binding<?>> level : levels) {
+			for (Binding<?> binding : level) {
+				answer.put(binding.getKey(), times.get(binding.getKey()));
+			}
+		}
+		return answer;
+	}
+
+	protected Set<Key<?>> getDirectDependencies(Binding<?> binding) {
+		Set<Key<?>> answer = Sets.newLinkedHashSet();
+		if (binding instanceof HasDependencies) {
+			for (Dependency<?> dependency : ((HasDependencies) binding).getDependencies()) {
+				Key<?> key = dependency.getKey();
+				Class<?> type = key.getTypeLiteral().getRawType();
+				if (type != Provider.class && type != javax.inject.Provider.class) {
+					answer.add(key);
+				}
+			}
+		}
+		Key<?> link = binding.acceptTargetVisitor(linkVisitor);
+		if (link != null) {
+			answer.add(link);
+		}
+		return answer;
+	}
+
+	/**
+	 * Returns the keys of the scoped bindings the given key needs to be created, which is the key itself if it is scoped
+	 */
+	protected Set<Key<?>> getScopedDependencies(Key<?> key, Set<Key<?>> visited) {
+		if (bindings.containsKey(key)) {
+			return Collections.<Key<?>> singleton(key);
+		}
+		Set<Key<?>> answer = dependencies.get(key);
+		if (answer != null) {
+			return answer;
+		}
+		answer = Sets.newLinkedHashSet();
+		if (visited.add(key)) {
+			Binding<?> binding = injector.getExistingBinding(key);
+			if (binding != null) {
+				for (Key<?> dependency : getDirectDependencies(binding)) {
+					answer.addAll(getScopedDependencies(dependency, visited));
+				}
+			}
+			dependencies.put(key, answer);
+		}
+		return answer;
+	}
+
+	private void createLevels(Map<Key<?>, Set<Key<?>>> edges) {
+		Set<Key<?>> created = Sets.newHashSet();
+		Set<Key<?>> remaining = Sets.newLinkedHashSet(bindings.keySet());
+		while (!remaining.isEmpty()) {
+			List<Binding<?>> level = Lists.newArrayList();
+			for (Key<?> key : remaining) {
+				if (created.containsAll(edges.get(key))) {
+					level.add(bindings.get(key));
+				}
+			}
+			if (level.isEmpty()) {
+				// a dependency cycle so lets create the rest one at a time and let Guice sort them out
+				for (Key<?> key : remaining) {
+					levels.add(Collections.<Binding<?>> singletonList(bindings.get(key)));
+				}
+				return;
+			}
+			for (Binding<?> binding : level) {
+				remaining.remove(binding.getKey());
+				created.add(binding.getKey());
+			}
+			levels.add(level);
+		}
+	}
+}
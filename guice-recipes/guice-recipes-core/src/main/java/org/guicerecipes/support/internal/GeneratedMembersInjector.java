@@ -0,0 +1,61 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.support.internal;
+
+import com.google.inject.*;
+import com.google.inject.spi.*;
+
+/**
+ * The base class of the {@link MembersInjector} classes created by {@link MembersInjectorGenerator} which inject all of the annotated methods of a type in
+ * {@link #injectMembers(Object)} and all of the annotated fields in {@link #afterInjection(Object)}, in the same order as the reflective injection.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public abstract class GeneratedMembersInjector implements MembersInjector<Object>, InjectionListener<Object> {
+	private final MemberInjection[] injections;
+
+	protected GeneratedMembersInjector(MemberInjection[] injections) {
+		this.injections = injections;
+	}
+
+	/** Returns the value for the field or single parameter method at the given index */
+	protected final Object value(int index) {
+		return injections[index].getValue();
+	}
+
+	/** Returns the parameter values for the method at the given index */
+	protected final Object[] values(int index) {
+		return injections[index].getValues();
+	}
+
+	/** Injects the member at the given index using reflection as it cannot be accessed directly */
+	protected final void inject(int index, Object injectee) {
+		injections[index].inject(injectee);
+	}
+
+	/** Returns the exception to throw when invoking the method at the given index failed */
+	protected final RuntimeException injectionFailed(int index, Throwable cause) {
+		return injections[index].injectionFailed(cause);
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getName();
+	}
+}
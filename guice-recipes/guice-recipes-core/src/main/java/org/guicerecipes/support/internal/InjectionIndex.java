@@ -0,0 +1,409 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.support.internal;
+
+import java.io.*;
+import java.lang.annotation.*;
+import java.lang.reflect.*;
+import java.net.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.guicerecipes.support.*;
+
+import com.google.common.base.*;
+import com.google.common.collect.*;
+
+/**
+ * Reads the injection indexes written at compile time by the guice-recipes annotation processor so that the members of an indexed class annotated with one of the covered annotations
+ * can be found without walking all of its declared fields and methods.
+ * <p>
+ * Each entry lists the annotated fields by name and the annotated methods by their signature, so that each member is looked up directly, along with the methods which are not
+ * annotated but override an annotated method of a super class so that callers can tell the super class method has been overridden.
+ * <p>
+ * A class is only treated as indexed if it was loaded from the same classpath entry as the index which lists it. Classes which are not indexed, or which are indexed by an index
+ * that does not cover all the annotations being looked for, are looked up in the default {@link ScanCache} if one is configured and should otherwise be introspected by reflection as
+ * usual.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public final class InjectionIndex {
+	public static final String INDEX_RESOURCE = "META-INF/guice-recipes/injection.index";
+
+	private static final Map<ClassLoader, InjectionIndex> indexes = new MapMaker().weakKeys().makeComputingMap(new Function<ClassLoader, InjectionIndex>() {
+		public InjectionIndex apply(ClassLoader classLoader) {
+			return new InjectionIndex(classLoader);
+		}
+	});
+
+	/** the classes scanned ahead of time by {@link #scan(Class, Collection)} */
+	private static final ConcurrentMap<Class<?>, Entry> scanned = new MapMaker().weakKeys().makeMap();
+
+	private final Map<String, Entry> entries = Maps.newHashMap();
+
+	private InjectionIndex(ClassLoader classLoader) {
+		try {
+			Enumeration<URL> resources = classLoader.getResources(INDEX_RESOURCE);
+			while (resources.hasMoreElements()) {
+				URL resource = resources.nextElement();
+				try {
+					load(resource);
+				} catch (IOException e) {
+					// an unreadable index just means its classes are introspected by reflection
+				}
+			}
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	/**
+	 * Returns the index entry of the given type if it was indexed and the index covers all of the given annotation types, otherwise its entry in the default scan cache if there is one
+	 */
+	public static Entry getEntry(Class<?> type, Iterable<? extends Class<? extends Annotation>> annotationTypes) {
+		Entry entry = getEntry(type);
+		if (entry != null && entry.coversAll(annotationTypes)) {
+			return entry;
+		}
+		entry = scanned.get(type);
+		if (entry != null && entry.coversAll(annotationTypes)) {
+			return entry;
+		}
+		ScanCache scanCache = ScanCache.getDefault();
+		return scanCache != null ? scanCache.getEntry(type, annotationTypes) : null;
+	}
+
+	/**
+	 * Scans the declared members of the given type for the given annotation types unless it is already indexed or cached, so that later calls to
+	 * {@link #getEntry(Class, Iterable)} for any of these annotation types return the scanned entry. This method is thread safe so that classes can be scanned in parallel.
+	 */
+	public static Entry scan(Class<?> type, Collection<? extends Class<? extends Annotation>> annotationTypes) {
+		Entry entry = getEntry(type, annotationTypes);
+		if (entry == null) {
+			Set<String> annotationNames = Sets.newHashSet();
+			Entry previous = scanned.get(type);
+			if (previous != null) {
+				annotationNames.addAll(previous.annotationNames);
+			}
+			for (Class<? extends Annotation> annotationType : annotationTypes) {
+				annotationNames.add(annotationType.getName());
+			}
+			entry = scanMembers(type, annotationNames);
+		}
+		if (entry.location == null) {
+			scanned.put(type, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Returns an entry of the members of the given type annotated with any of the given annotations found by reflection, along with the methods overriding an annotated super class
+	 * method
+	 */
+	static Entry scanMembers(Class<?> type, Set<String> annotationNames) {
+		List<String> fieldNames = Lists.newArrayList();
+		for (Field field : type.getDeclaredFields()) {
+			if (isAnnotated(field, annotationNames)) {
+				fieldNames.add(field.getName());
+			}
+		}
+		Set<String> methodSignatures = Sets.newHashSet();
+		Multimap<MethodKey, Method> superclassMethods = null;
+		for (Method method : type.getDeclaredMethods()) {
+			if (!isAnnotated(method, annotationNames)) {
+				if (superclassMethods == null) {
+					superclassMethods = getAnnotatedSuperclassMethods(type, annotationNames);
+				}
+				if (!overridesAny(method, superclassMethods.get(new MethodKey(method)))) {
+					continue;
+				}
+			}
+			methodSignatures.add(getSignature(method));
+		}
+		return new Entry(null, annotationNames, fieldNames, methodSignatures);
+	}
+
+	private static boolean overridesAny(Method method, Collection<Method> superclassMethods) {
+		for (Method superclassMethod : superclassMethods) {
+			if (Reflectors.overrides(method, superclassMethod)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Returns the methods of the super classes of the given type annotated with any of the given annotations */
+	private static Multimap<MethodKey, Method> getAnnotatedSuperclassMethods(Class<?> type, Set<String> annotationNames) {
+		Multimap<MethodKey, Method> answer = ArrayListMultimap.create();
+		for (type = type.getSuperclass(); type != null && type != Object.class; type = type.getSuperclass()) {
+			for (Method method : type.getDeclaredMethods()) {
+				if (isAnnotated(method, annotationNames)) {
+					answer.put(new MethodKey(method), method);
+				}
+			}
+		}
+		return answer;
+	}
+
+	/**
+	 * Returns the name of the given method followed by the names of its parameter types in brackets, using the same form as the annotation processor
+	 */
+	static String getSignature(Method method) {
+		StringBuilder buffer = new StringBuilder(method.getName());
+		buffer.append('(');
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		for (int i = 0; i < parameterTypes.length; i++) {
+			if (i > 0) {
+				buffer.append(',');
+			}
+			Class<?> parameterType = parameterTypes[i];
+			int dimensions = 0;
+			for (; parameterType.isArray(); parameterType = parameterType.getComponentType()) {
+				dimensions++;
+			}
+			buffer.append(parameterType.getName());
+			for (; dimensions > 0; dimensions--) {
+				buffer.append("[]");
+			}
+		}
+		return buffer.append(')').toString();
+	}
+
+	private static boolean isAnnotated(AnnotatedElement member, Set<String> annotationNames) {
+		for (Annotation annotation : member.getDeclaredAnnotations()) {
+			if (annotationNames.contains(annotation.annotationType().getName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the index entry of the given type if it was indexed and the index covers the given annotation type, otherwise its entry in the default scan cache if there is one
+	 */
+	public static Entry getEntry(Class<?> type, Class<? extends Annotation> annotationType) {
+		return getEntry(type, Collections.singleton(annotationType));
+	}
+
+	private static Entry getEntry(Class<?> type) {
+		ClassLoader classLoader = type.getClassLoader();
+		if (classLoader == null) {
+			return null;
+		}
+		Entry entry = indexes.get(classLoader).entries.get(type.getName());
+		if (entry == null || !entry.location.equals(getLocation(type))) {
+			return null;
+		}
+		return entry;
+	}
+
+	/**
+	 * Returns the declared fields of the given type which could be annotated with one of the given annotation types
+	 */
+	public static Field[] getDeclaredFields(Class<?> type, Iterable<? extends Class<? extends Annotation>> annotationTypes) {
+		Entry entry = getEntry(type, annotationTypes);
+		return entry != null ? entry.getDeclaredFields(type) : type.getDeclaredFields();
+	}
+
+	/**
+	 * Returns the declared methods of the given type which could be annotated with one of the given annotation types
+	 */
+	public static Method[] getDeclaredMethods(Class<?> type, Iterable<? extends Class<? extends Annotation>> annotationTypes) {
+		Entry entry = getEntry(type, annotationTypes);
+		return entry != null ? entry.getDeclaredMethods(type) : type.getDeclaredMethods();
+	}
+
+	/**
+	 * Returns the declared methods of the given type which could be annotated with the given annotation type
+	 */
+	public static Method[] getDeclaredMethods(Class<?> type, Class<? extends Annotation> annotationType) {
+		Entry entry = getEntry(type, annotationType);
+		return entry != null ? entry.getDeclaredMethods(type) : type.getDeclaredMethods();
+	}
+
+	private static String getLocation(Class<?> type) {
+		try {
+			ProtectionDomain domain = type.getProtectionDomain();
+			CodeSource codeSource = domain != null ? domain.getCodeSource() : null;
+			URL location = codeSource != null ? codeSource.getLocation() : null;
+			return location != null ? location.toExternalForm() : null;
+		} catch (SecurityException e) {
+			return null;
+		}
+	}
+
+	/** Returns the classpath entry the index was loaded from in the same form as a {@link CodeSource} location */
+	private static String getLocation(URL resource) {
+		String location = resource.toExternalForm();
+		location = location.substring(0, location.length() - INDEX_RESOURCE.length());
+		if (location.startsWith("jar:") && location.endsWith("!/")) {
+			location = location.substring(4, location.length() - 2);
+		}
+		return location;
+	}
+
+	private void load(URL resource) throws IOException {
+		String location = getLocation(resource);
+		Set<String> annotationNames = Sets.newHashSet();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(resource.openStream(), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#")) {
+					continue;
+				}
+				if (line.startsWith("@")) {
+					annotationNames.add(line.substring(1));
+					continue;
+				}
+				String[] tokens = line.split("\\s+");
+				List<String> fieldNames = Lists.newArrayList();
+				Set<String> methodSignatures = Sets.newHashSet();
+				for (int i = 1; i < tokens.length; i++) {
+					String token = tokens[i];
+					if (token.endsWith(")")) {
+						methodSignatures.add(token);
+					} else {
+						fieldNames.add(token);
+					}
+				}
+				// the first index on the classpath wins just like the first class does
+				if (!entries.containsKey(tokens[0])) {
+					entries.put(tokens[0], new Entry(location, annotationNames, fieldNames, methodSignatures));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * The annotated members of an indexed class
+	 */
+	public static final class Entry {
+		private static final Field[] NO_FIELDS = {};
+		private static final Method[] NO_METHODS = {};
+		private static final Map<String, Class<?>> PRIMITIVE_TYPES = Maps.newHashMap();
+
+		static {
+			for (Class<?> type : new Class<?>[] { boolean.class, byte.class, char.class, short.class, int.class, long.class, float.class, double.class }) {
+				PRIMITIVE_TYPES.put(type.getName(), type);
+			}
+		}
+
+		final String location;
+		final Set<String> annotationNames;
+		final List<String> fieldNames;
+		final Set<String> methodSignatures;
+
+		Entry(String location, Set<String> annotationNames, List<String> fieldNames, Set<String> methodSignatures) {
+			this.location = location;
+			this.annotationNames = annotationNames;
+			this.fieldNames = fieldNames;
+			this.methodSignatures = methodSignatures;
+		}
+
+		public boolean covers(Class<? extends Annotation> annotationType) {
+			return annotationNames.contains(annotationType.getName());
+		}
+
+		public boolean coversAll(Iterable<? extends Class<? extends Annotation>> annotationTypes) {
+			for (Class<? extends Annotation> annotationType : annotationTypes) {
+				if (!covers(annotationType)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Returns the indexed fields of the given type, or all its declared fields if the index is out of date
+		 */
+		public Field[] getDeclaredFields(Class<?> type) {
+			if (fieldNames.isEmpty()) {
+				return NO_FIELDS;
+			}
+			Field[] answer = new Field[fieldNames.size()];
+			for (int i = 0; i < answer.length; i++) {
+				try {
+					answer[i] = type.getDeclaredField(fieldNames.get(i));
+				} catch (NoSuchFieldException e) {
+					return type.getDeclaredFields();
+				}
+			}
+			return answer;
+		}
+
+		/**
+		 * Returns the indexed methods of the given type, which are the annotated methods and those overriding an annotated super class method, or all its declared methods if the
+		 * index is out of date
+		 */
+		public Method[] getDeclaredMethods(Class<?> type) {
+			if (methodSignatures.isEmpty()) {
+				return NO_METHODS;
+			}
+			Method[] answer = new Method[methodSignatures.size()];
+			int i = 0;
+			for (String signature : methodSignatures) {
+				try {
+					answer[i++] = getDeclaredMethod(type, signature);
+				} catch (NoSuchMethodException e) {
+					return type.getDeclaredMethods();
+				} catch (ClassNotFoundException e) {
+					return type.getDeclaredMethods();
+				}
+			}
+			return answer;
+		}
+
+		private static Method getDeclaredMethod(Class<?> type, String signature) throws NoSuchMethodException, ClassNotFoundException {
+			int index = signature.indexOf('(');
+			if (index < 0) {
+				throw new NoSuchMethodException(signature);
+			}
+			String parameters = signature.substring(index + 1, signature.length() - 1);
+			if (parameters.length() == 0) {
+				return type.getDeclaredMethod(signature.substring(0, index));
+			}
+			String[] parameterNames = parameters.split(",");
+			Class<?>[] parameterTypes = new Class<?>[parameterNames.length];
+			for (int i = 0; i < parameterTypes.length; i++) {
+				parameterTypes[i] = loadType(type.getClassLoader(), parameterNames[i]);
+			}
+			return type.getDeclaredMethod(signature.substring(0, index), parameterTypes);
+		}
+
+		private static Class<?> loadType(ClassLoader classLoader, String name) throws ClassNotFoundException {
+			int dimensions = 0;
+			for (; name.endsWith("[]"); name = name.substring(0, name.length() - 2)) {
+				dimensions++;
+			}
+			Class<?> answer = PRIMITIVE_TYPES.get(name);
+			if (answer == null) {
+				answer = Class.forName(name, false, classLoader);
+			}
+			for (; dimensions > 0; dimensions--) {
+				answer = Array.newInstance(answer, 0).getClass();
+			}
+			return answer;
+		}
+	}
+}
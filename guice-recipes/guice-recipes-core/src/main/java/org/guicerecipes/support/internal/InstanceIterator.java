@@ -0,0 +1,109 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.guicerecipes.support.internal;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.google.common.collect.*;
+import com.google.inject.*;
+
+/**
+ * Iterates through the objects of a list of bindings in order, only getting each object from its provider as the iteration reaches it, and skipping null and duplicate objects.
+ * When created with an executor the objects of the next few bindings are got in parallel ahead of the iteration.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public class InstanceIterator<T> extends AbstractIterator<T> {
+	private final Class<T> type;
+	private final Iterator<Binding<?>> bindings;
+	private final Executor executor;
+	private final int readAhead;
+	private final LinkedList<FutureTask<Object>> futures = Lists.newLinkedList();
+	private final Set<Object> seen = Sets.newHashSet();
+
+	public InstanceIterator(Class<T> type, Iterable<Binding<?>> bindings) {
+		this(type, bindings, null, 0);
+	}
+
+	public InstanceIterator(Class<T> type, Iterable<Binding<?>> bindings, Executor executor, int readAhead) {
+		if (executor != null && readAhead < 1) {
+			throw new IllegalArgumentException("readAhead must be at least 1 but was " + readAhead);
+		}
+		this.type = type;
+		this.bindings = bindings.iterator();
+		this.executor = executor;
+		this.readAhead = readAhead;
+	}
+
+	@Override
+	protected T computeNext() {
+		while (true) {
+			Object value;
+			if (executor == null) {
+				if (!bindings.hasNext()) {
+					return endOfData();
+				}
+				value = bindings.next().getProvider().get();
+			} else {
+				while (futures.size() < readAhead && bindings.hasNext()) {
+					submit(bindings.next());
+				}
+				if (futures.isEmpty()) {
+					return endOfData();
+				}
+				value = getValue(futures.removeFirst());
+			}
+			if (value != null && seen.add(value)) {
+				return type.cast(value);
+			}
+		}
+	}
+
+	private void submit(final Binding<?> binding) {
+		FutureTask<Object> future = new FutureTask<Object>(new Callable<Object>() {
+			public Object call() throws Exception {
+				return binding.getProvider().get();
+			}
+		});
+		futures.add(future);
+		try {
+			executor.execute(future);
+		} catch (RejectedExecutionException e) {
+			future.run();
+		}
+	}
+
+	private Object getValue(FutureTask<Object> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ProvisionException("Interrupted while getting an instance of " + type.getName());
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new ProvisionException("Failed to get an instance of " + type.getName() + ". Reason: " + cause, cause);
+		}
+	}
+}
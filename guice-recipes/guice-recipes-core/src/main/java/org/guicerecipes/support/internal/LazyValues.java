@@ -0,0 +1,150 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.support.internal;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+import com.google.common.base.*;
+import com.google.common.collect.*;
+import com.google.inject.*;
+
+/**
+ * Creates the holders and proxies injected for {@link org.guicerecipes.Lazy lazy} members, which resolve their value from a provider the first time it is needed and then keep
+ * returning it.
+ * <p>
+ * The proxy class for each interface is only created once and is weakly referenced so that the interface can still be unloaded. A proxy cannot stand for a null value so only values
+ * which are required should be injected as a proxy; {@link #canBeNull(Class)} tells whether the given type can. Proxies are only equal to themselves, without resolving their value.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public final class LazyValues {
+	private static final Map<Class<?>, Constructor<?>> proxyConstructors = new MapMaker().weakKeys().softValues().makeComputingMap(new Function<Class<?>, Constructor<?>>() {
+		public Constructor<?> apply(Class<?> type) {
+			ClassLoader classLoader = type.getClassLoader();
+			if (classLoader == null) {
+				classLoader = LazyValues.class.getClassLoader();
+			}
+			try {
+				return Proxy.getProxyClass(classLoader, type).getConstructor(InvocationHandler.class);
+			} catch (NoSuchMethodException e) {
+				throw new IllegalStateException("No InvocationHandler constructor on the proxy class for " + type.getName(), e);
+			}
+		}
+	});
+
+	private LazyValues() {
+	}
+
+	/**
+	 * Returns the holder or proxy of the given type which resolves its value from the given provider when it is first used
+	 * 
+	 * @param type
+	 *            either {@link Provider}, {@link Supplier} or an interface implemented by the value
+	 */
+	public static Object newInstance(Class<?> type, Provider<?> provider) {
+		Holder holder = new Holder(provider);
+		if (type == Provider.class || type == Supplier.class) {
+			return holder;
+		}
+		if (!type.isInterface()) {
+			throw new IllegalArgumentException("Cannot lazily inject " + type.getName() + " as it is not an interface");
+		}
+		try {
+			return proxyConstructors.get(type).newInstance(new LazyInvocationHandler(type, holder));
+		} catch (InstantiationException e) {
+			throw new ProvisionException("Failed to create lazy proxy for " + type.getName() + ". Reason: " + e, e);
+		} catch (IllegalAccessException e) {
+			throw new ProvisionException("Failed to create lazy proxy for " + type.getName() + ". Reason: " + e, e);
+		} catch (InvocationTargetException e) {
+			throw new ProvisionException("Failed to create lazy proxy for " + type.getName() + ". Reason: " + e.getTargetException(), e.getTargetException());
+		}
+	}
+
+	/**
+	 * Returns true if the holder or proxy of the given type can hold a null value, which is only the case for {@link Provider} and {@link Supplier}
+	 */
+	public static boolean canBeNull(Class<?> type) {
+		return type == Provider.class || type == Supplier.class;
+	}
+
+	/**
+	 * Resolves the value once, so that concurrent callers all see the same value
+	 */
+	private static final class Holder implements Provider<Object>, Supplier<Object> {
+		private final Provider<?> provider;
+		private volatile boolean resolved;
+		private Object value;
+
+		Holder(Provider<?> provider) {
+			this.provider = provider;
+		}
+
+		public Object get() {
+			if (!resolved) {
+				synchronized (this) {
+					if (!resolved) {
+						value = provider.get();
+						resolved = true;
+					}
+				}
+			}
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			return "Lazy(" + (resolved ? String.valueOf(value) : "unresolved") + ")";
+		}
+	}
+
+	private static final class LazyInvocationHandler implements InvocationHandler {
+		private final Class<?> type;
+		private final Holder holder;
+
+		LazyInvocationHandler(Class<?> type, Holder holder) {
+			this.type = type;
+			this.holder = holder;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getDeclaringClass() == Object.class) {
+				String name = method.getName();
+				if (name.equals("equals")) {
+					return proxy == args[0];
+				} else if (name.equals("hashCode")) {
+					return System.identityHashCode(proxy);
+				}
+			}
+			Object value = holder.get();
+			if (value == null) {
+				throw new ProvisionException("Lazily injected " + type.getName() + " could not be resolved");
+			}
+			// the proxy class passes the same Method instances on every call so this is only done once
+			if (!method.isAccessible() && !Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+				method.setAccessible(true);
+			}
+			try {
+				return method.invoke(value, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.support.internal;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+import org.guicerecipes.metrics.*;
+
+/**
+ * The lifecycle methods of a class in the order they are invoked, compiled once per class so that invoking them is a single call per instance whatever the depth of its hierarchy
+ * 
+ * @version $Revision: 1.1 $
+ */
+public final class LifecycleMethodChain {
+	private static final Method[] NO_METHODS = {};
+
+	static final LifecycleMethodChain EMPTY = new LifecycleMethodChain(null, NO_METHODS);
+
+	private final String metricName;
+	private final Method[] methods;
+	private final LifecycleMethodChain reverse;
+
+	LifecycleMethodChain(String metricName, Method[] methods) {
+		this.metricName = metricName;
+		this.methods = methods;
+		Method[] reversed = new Method[methods.length];
+		for (int i = 0; i < methods.length; i++) {
+			reversed[i] = methods[methods.length - 1 - i];
+		}
+		this.reverse = methods.length > 1 ? new LifecycleMethodChain(metricName, reversed, this) : this;
+	}
+
+	private LifecycleMethodChain(String metricName, Method[] methods, LifecycleMethodChain reverse) {
+		this.metricName = metricName;
+		this.methods = methods;
+		this.reverse = reverse;
+	}
+
+	public boolean isEmpty() {
+		return methods.length == 0;
+	}
+
+	public List<Method> getMethods() {
+		return Collections.unmodifiableList(Arrays.asList(methods));
+	}
+
+	/**
+	 * Returns the chain invoking the same methods in the reverse order
+	 */
+	public LifecycleMethodChain reverse() {
+		return reverse;
+	}
+
+	/**
+	 * Returns the first method which takes parameters, which cannot be used as a lifecycle method, or null if there is none
+	 */
+	public Method getMethodWithParameters() {
+		for (Method method : methods) {
+			if (method.getParameterTypes().length != 0) {
+				return method;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Invokes each of the methods on the given instance in turn, stopping at the first one which fails, and records the time taken if {@link Metrics} are enabled
+	 * 
+	 * @throws Throwable the exception thrown by the method which failed
+	 */
+	public void invoke(Object instance) throws Throwable {
+		if (methods.length == 0) {
+			return;
+		}
+		MetricsRecorder recorder = Metrics.getRecorder();
+		long start = recorder != null ? System.nanoTime() : 0;
+		try {
+			for (Method method : methods) {
+				try {
+					method.invoke(instance);
+				} catch (InvocationTargetException e) {
+					throw e.getTargetException();
+				}
+			}
+		} finally {
+			if (recorder != null) {
+				recorder.record(metricName, System.nanoTime() - start);
+			}
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.support.internal;
+
+import java.lang.annotation.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+import org.guicerecipes.metrics.*;
+import org.guicerecipes.support.*;
+import org.guicerecipes.util.*;
+
+import com.google.common.base.*;
+import com.google.common.collect.*;
+
+/**
+ * A registry of the lifecycle methods annotated with a given annotation, such as {@link javax.annotation.PostConstruct}, for each class. Both the classes which have annotated
+ * methods and those which do not are cached so that each class is only introspected once, however many of its instances are created or closed.
+ * <p>
+ * Following JSR 250 all the annotated methods in the hierarchy of a class are found, super class methods first, ignoring methods overridden by a method which is not annotated.
+ * <p>
+ * Classes are weakly referenced so that they can still be unloaded.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public final class LifecycleMethodRegistry {
+	private static final Map<Class<? extends Annotation>, LifecycleMethodRegistry> registries = new MapMaker().weakKeys().makeComputingMap(
+			new Function<Class<? extends Annotation>, LifecycleMethodRegistry>() {
+				public LifecycleMethodRegistry apply(Class<? extends Annotation> annotationType) {
+					return new LifecycleMethodRegistry(annotationType);
+				}
+			});
+
+	private final Class<? extends Annotation> annotationType;
+	private final Map<Class<?>, LifecycleMethodChain> chains;
+	private final Map<Class<?>, MethodHolder> declaredMethods;
+
+	private LifecycleMethodRegistry(final Class<? extends Annotation> annotationType) {
+		this.annotationType = annotationType;
+
+		// the methods are softly referenced as they would otherwise keep their declaring class from being unloaded
+		this.chains = new MapMaker().weakKeys().softValues().makeComputingMap(new Function<Class<?>, LifecycleMethodChain>() {
+			public LifecycleMethodChain apply(Class<?> type) {
+				List<Method> methods = Reflectors.getAllMethodsWithAnnotation(type, annotationType);
+				if (methods.isEmpty()) {
+					return LifecycleMethodChain.EMPTY;
+				}
+				Method[] answer = new Method[methods.size()];
+				for (int i = 0; i < answer.length; i++) {
+					// the methods of the type come first so lets put the super class methods first
+					answer[i] = makeAccessible(methods.get(answer.length - 1 - i));
+				}
+				return new LifecycleMethodChain(Metrics.LIFECYCLE + annotationType.getName(), answer);
+			}
+		});
+		this.declaredMethods = new MapMaker().weakKeys().softValues().makeComputingMap(new Function<Class<?>, MethodHolder>() {
+			public MethodHolder apply(Class<?> type) {
+				Method method = Reflection.findMethodWithAnnotation(type, annotationType, false);
+				return method != null ? new MethodHolder(makeAccessible(method)) : MethodHolder.NONE;
+			}
+		});
+	}
+
+	/**
+	 * Returns the registry of the methods annotated with the given annotation
+	 */
+	public static LifecycleMethodRegistry getInstance(Class<? extends Annotation> annotationType) {
+		return registries.get(annotationType);
+	}
+
+	public Class<? extends Annotation> getAnnotationType() {
+		return annotationType;
+	}
+
+	/**
+	 * Returns the annotated methods of the given type and its super classes, super class methods first
+	 */
+	public LifecycleMethodChain getMethods(Class<?> type) {
+		return chains.get(type);
+	}
+
+	/**
+	 * Returns the first annotated method declared by the given type, ignoring its super classes, or null if there is none
+	 */
+	public Method getDeclaredMethod(Class<?> type) {
+		return declaredMethods.get(type).method;
+	}
+
+	private static Method makeAccessible(Method method) {
+		try {
+			method.setAccessible(true);
+		} catch (SecurityException e) {
+			// lets try invoke it anyway
+		}
+		return method;
+	}
+
+	private static class MethodHolder {
+		static final MethodHolder NONE = new MethodHolder(null);
+
+		final Method method;
+
+		MethodHolder(Method method) {
+			this.method = method;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.support.internal;
+
+import java.lang.reflect.*;
+
+/**
+ * The injection of a single annotated field or method on an injectee which can either be performed reflectively or by a {@link GeneratedMembersInjector} which fetches the values to inject and
+ * then sets the field or invokes the method directly.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public interface MemberInjection {
+	/**
+	 * The value returned from {@link #getValue()} when a method should not be invoked as one of its parameters could not be satisfied
+	 */
+	Object SKIP = new Object();
+
+	/** Returns the annotated field or method */
+	Member getMember();
+
+	/**
+	 * Returns the value to inject into the field or the single parameter of the method, or {@link #SKIP} if the method should not be invoked
+	 */
+	Object getValue();
+
+	/**
+	 * Returns the values to pass to the method or null if the method should not be invoked
+	 */
+	Object[] getValues();
+
+	/**
+	 * Returns the exception to throw when invoking the injected method failed
+	 */
+	RuntimeException injectionFailed(Throwable cause);
+
+	/** Performs the injection on the given injectee using reflection */
+	void inject(Object injectee);
+}
@@ -0,0 +1,344 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.support.internal;
+
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.objectweb.asm.*;
+
+import com.google.common.collect.*;
+import com.google.common.primitives.*;
+
+/**
+ * Generates a {@link GeneratedMembersInjector} class for each type with annotated members which sets the fields and invokes the methods in straight line code rather than using reflection.
+ * 
+ * The class is defined in the same package and class loader as the injected type so that public, protected and package private members can be accessed directly. Private, static and final
+ * members, or members whose types cannot be seen from the generated class, are delegated back to the reflective {@link MemberInjection}.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public final class MembersInjectorGenerator implements Opcodes {
+	private static final String SUPER_NAME = org.objectweb.asm.Type.getInternalName(GeneratedMembersInjector.class);
+	private static final String INJECTION_NAME = org.objectweb.asm.Type.getInternalName(MemberInjection.class);
+	private static final String CONSTRUCTOR_DESCRIPTOR = "([L" + INJECTION_NAME + ";)V";
+	private static final String OBJECT_DESCRIPTOR = "Ljava/lang/Object;";
+
+	private static final AtomicInteger counter = new AtomicInteger();
+	private static final Method defineClassMethod = findDefineClassMethod();
+	private static final ConcurrentMap<Class<?>, Map<List<Member>, Constructor<?>>> constructorCache = new MapMaker().weakKeys().softValues().makeMap();
+
+	private MembersInjectorGenerator() {
+	}
+
+	/**
+	 * Returns a new generated injector for the given member injections on the given type or null if no injector can be generated, such as if the type was loaded by the bootstrap class loader or
+	 * classes cannot be defined in its class loader
+	 */
+	public static GeneratedMembersInjector newInstance(Class<?> type, List<MemberInjection> injections) {
+		List<Member> members = Lists.newArrayList();
+		for (MemberInjection injection : injections) {
+			members.add(injection.getMember());
+		}
+		Constructor<?> constructor = getConstructor(type, members);
+		if (constructor == null) {
+			return null;
+		}
+		try {
+			return (GeneratedMembersInjector) constructor.newInstance(new Object[] { injections.toArray(new MemberInjection[injections.size()]) });
+		} catch (InstantiationException e) {
+			return null;
+		} catch (IllegalAccessException e) {
+			return null;
+		} catch (InvocationTargetException e) {
+			return null;
+		}
+	}
+
+	private static Constructor<?> getConstructor(Class<?> type, List<Member> members) {
+		Map<List<Member>, Constructor<?>> constructors = constructorCache.get(type);
+		if (constructors == null) {
+			constructors = Maps.newHashMap();
+			Map<List<Member>, Constructor<?>> existing = constructorCache.putIfAbsent(type, constructors);
+			if (existing != null) {
+				constructors = existing;
+			}
+		}
+		synchronized (constructors) {
+			// we cache failures too so we only try to generate a class once
+			if (constructors.containsKey(members)) {
+				return constructors.get(members);
+			}
+			Constructor<?> answer = generate(type, members);
+			constructors.put(members, answer);
+			return answer;
+		}
+	}
+
+	private static Constructor<?> generate(Class<?> type, List<Member> members) {
+		ClassLoader classLoader = type.getClassLoader();
+		if ((defineClassMethod == null) || (classLoader == null) || !isVisible(GeneratedMembersInjector.class, classLoader)) {
+			return null;
+		}
+		String className = type.getName() + "$$MembersInjectorByGuiceRecipes$$" + counter.incrementAndGet();
+		byte[] bytes = generateClass(type, className, members);
+		try {
+			Class<?> injectorType = (Class<?>) defineClassMethod.invoke(classLoader, className, bytes, 0, bytes.length);
+			return injectorType.getConstructor(MemberInjection[].class);
+		} catch (IllegalAccessException e) {
+			return null;
+		} catch (InvocationTargetException e) {
+			// such as a security exception for a sealed or signed package
+			return null;
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (LinkageError e) {
+			return null;
+		}
+	}
+
+	private static Method findDefineClassMethod() {
+		try {
+			Method method = ClassLoader.class.getDeclaredMethod("defineClass", String.class, byte[].class, int.class, int.class);
+			method.setAccessible(true);
+			return method;
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (RuntimeException e) {
+			// the security manager or the JVM won't let us open up the class loader
+			return null;
+		}
+	}
+
+	private static byte[] generateClass(Class<?> type, String className, List<Member> members) {
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		writer.visit(V1_5, ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, className.replace('.', '/'), null, SUPER_NAME, null);
+
+		MethodVisitor constructor = writer.visitMethod(ACC_PUBLIC, "<init>", CONSTRUCTOR_DESCRIPTOR, null, null);
+		constructor.visitCode();
+		constructor.visitVarInsn(ALOAD, 0);
+		constructor.visitVarInsn(ALOAD, 1);
+		constructor.visitMethodInsn(INVOKESPECIAL, SUPER_NAME, "<init>", CONSTRUCTOR_DESCRIPTOR);
+		constructor.visitInsn(RETURN);
+		constructor.visitMaxs(0, 0);
+		constructor.visitEnd();
+
+		// methods are injected by the MembersInjector and fields by the InjectionListener like the reflective injection
+		MethodVisitor methods = beginInjectMethod(writer, "injectMembers", type);
+		MethodVisitor fields = beginInjectMethod(writer, "afterInjection", type);
+		for (int i = 0, size = members.size(); i < size; i++) {
+			Member member = members.get(i);
+			if (member instanceof Field) {
+				generateField(fields, i, (Field) member, type);
+			} else {
+				generateMethod(methods, i, (Method) member, type);
+			}
+		}
+		endInjectMethod(methods);
+		endInjectMethod(fields);
+
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	private static MethodVisitor beginInjectMethod(ClassWriter writer, String name, Class<?> type) {
+		MethodVisitor visitor = writer.visitMethod(ACC_PUBLIC, name, "(" + OBJECT_DESCRIPTOR + ")V", null, null);
+		visitor.visitCode();
+		visitor.visitVarInsn(ALOAD, 1);
+		visitor.visitTypeInsn(CHECKCAST, org.objectweb.asm.Type.getInternalName(type));
+		visitor.visitVarInsn(ASTORE, 2);
+		return visitor;
+	}
+
+	private static void endInjectMethod(MethodVisitor visitor) {
+		visitor.visitInsn(RETURN);
+		visitor.visitMaxs(0, 0);
+		visitor.visitEnd();
+	}
+
+	private static void generateField(MethodVisitor visitor, int index, Field field, Class<?> type) {
+		if (!isAccessible(field, type, field.getType())) {
+			generateReflectiveInjection(visitor, index);
+			return;
+		}
+		visitor.visitVarInsn(ALOAD, 2);
+		visitor.visitVarInsn(ALOAD, 0);
+		pushInt(visitor, index);
+		visitor.visitMethodInsn(INVOKEVIRTUAL, SUPER_NAME, "value", "(I)" + OBJECT_DESCRIPTOR);
+		generateCast(visitor, field.getType());
+		visitor.visitFieldInsn(PUTFIELD, org.objectweb.asm.Type.getInternalName(field.getDeclaringClass()), field.getName(), org.objectweb.asm.Type.getDescriptor(field.getType()));
+	}
+
+	private static void generateMethod(MethodVisitor visitor, int index, Method method, Class<?> type) {
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		if (!isAccessible(method, type, parameterTypes)) {
+			generateReflectiveInjection(visitor, index);
+			return;
+		}
+		Label start = new Label();
+		Label end = new Label();
+		Label handler = new Label();
+		Label skip = new Label();
+
+		if (parameterTypes.length == 1) {
+			// lets avoid creating an array for the common single parameter case
+			visitor.visitVarInsn(ALOAD, 0);
+			pushInt(visitor, index);
+			visitor.visitMethodInsn(INVOKEVIRTUAL, SUPER_NAME, "value", "(I)" + OBJECT_DESCRIPTOR);
+			visitor.visitVarInsn(ASTORE, 3);
+			visitor.visitVarInsn(ALOAD, 3);
+			visitor.visitFieldInsn(GETSTATIC, INJECTION_NAME, "SKIP", OBJECT_DESCRIPTOR);
+			visitor.visitJumpInsn(IF_ACMPEQ, skip);
+			visitor.visitLabel(start);
+			visitor.visitVarInsn(ALOAD, 2);
+			visitor.visitVarInsn(ALOAD, 3);
+			generateCast(visitor, parameterTypes[0]);
+		} else {
+			visitor.visitVarInsn(ALOAD, 0);
+			pushInt(visitor, index);
+			visitor.visitMethodInsn(INVOKEVIRTUAL, SUPER_NAME, "values", "(I)[" + OBJECT_DESCRIPTOR);
+			visitor.visitVarInsn(ASTORE, 3);
+			visitor.visitVarInsn(ALOAD, 3);
+			visitor.visitJumpInsn(IFNULL, skip);
+			visitor.visitLabel(start);
+			visitor.visitVarInsn(ALOAD, 2);
+			for (int i = 0; i < parameterTypes.length; i++) {
+				visitor.visitVarInsn(ALOAD, 3);
+				pushInt(visitor, i);
+				visitor.visitInsn(AALOAD);
+				generateCast(visitor, parameterTypes[i]);
+			}
+		}
+		visitor.visitMethodInsn(INVOKEVIRTUAL, org.objectweb.asm.Type.getInternalName(method.getDeclaringClass()), method.getName(), org.objectweb.asm.Type.getMethodDescriptor(method));
+		Class<?> returnType = method.getReturnType();
+		if ((returnType == long.class) || (returnType == double.class)) {
+			visitor.visitInsn(POP2);
+		} else if (returnType != void.class) {
+			visitor.visitInsn(POP);
+		}
+		visitor.visitLabel(end);
+		visitor.visitJumpInsn(GOTO, skip);
+
+		// wrap any exception just like the reflective injection does
+		visitor.visitLabel(handler);
+		visitor.visitVarInsn(ASTORE, 4);
+		visitor.visitVarInsn(ALOAD, 0);
+		pushInt(visitor, index);
+		visitor.visitVarInsn(ALOAD, 4);
+		visitor.visitMethodInsn(INVOKEVIRTUAL, SUPER_NAME, "injectionFailed", "(ILjava/lang/Throwable;)Ljava/lang/RuntimeException;");
+		visitor.visitInsn(ATHROW);
+		visitor.visitTryCatchBlock(start, end, handler, "java/lang/Throwable");
+
+		visitor.visitLabel(skip);
+	}
+
+	private static void generateReflectiveInjection(MethodVisitor visitor, int index) {
+		visitor.visitVarInsn(ALOAD, 0);
+		pushInt(visitor, index);
+		visitor.visitVarInsn(ALOAD, 1);
+		visitor.visitMethodInsn(INVOKEVIRTUAL, SUPER_NAME, "inject", "(I" + OBJECT_DESCRIPTOR + ")V");
+	}
+
+	/**
+	 * Casts the object on the stack to the given type, unboxing it if the type is a primitive
+	 */
+	private static void generateCast(MethodVisitor visitor, Class<?> type) {
+		if (type.isPrimitive()) {
+			String wrapper = org.objectweb.asm.Type.getInternalName(Primitives.wrap(type));
+			visitor.visitTypeInsn(CHECKCAST, wrapper);
+			visitor.visitMethodInsn(INVOKEVIRTUAL, wrapper, type.getName() + "Value", "()" + org.objectweb.asm.Type.getDescriptor(type));
+		} else if (type != Object.class) {
+			visitor.visitTypeInsn(CHECKCAST, org.objectweb.asm.Type.getInternalName(type));
+		}
+	}
+
+	private static void pushInt(MethodVisitor visitor, int value) {
+		if (value <= 5) {
+			visitor.visitInsn(ICONST_0 + value);
+		} else if (value <= Byte.MAX_VALUE) {
+			visitor.visitIntInsn(BIPUSH, value);
+		} else if (value <= Short.MAX_VALUE) {
+			visitor.visitIntInsn(SIPUSH, value);
+		} else {
+			visitor.visitLdcInsn(value);
+		}
+	}
+
+	/**
+	 * Returns true if the member and the types of the values injected into it can be accessed directly from a class in the same package and class loader as the given type
+	 */
+	private static boolean isAccessible(Member member, Class<?> type, Class<?>... valueTypes) {
+		int modifiers = member.getModifiers();
+		if (Modifier.isPrivate(modifiers) || Modifier.isStatic(modifiers)) {
+			return false;
+		}
+		if ((member instanceof Field) && Modifier.isFinal(modifiers)) {
+			return false;
+		}
+		Class<?> declaringClass = member.getDeclaringClass();
+		if (!isAccessible(declaringClass, type)) {
+			return false;
+		}
+		if (!Modifier.isPublic(modifiers) && !isSamePackage(declaringClass, type)) {
+			return false;
+		}
+		for (Class<?> valueType : valueTypes) {
+			if (!isAccessible(valueType, type)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isAccessible(Class<?> aClass, Class<?> type) {
+		while (aClass.isArray()) {
+			aClass = aClass.getComponentType();
+		}
+		if (aClass.isPrimitive()) {
+			return true;
+		}
+		if (!isVisible(aClass, type.getClassLoader())) {
+			return false;
+		}
+		return Modifier.isPublic(aClass.getModifiers()) || isSamePackage(aClass, type);
+	}
+
+	private static boolean isSamePackage(Class<?> a, Class<?> b) {
+		return (a.getClassLoader() == b.getClassLoader()) && packageName(a).equals(packageName(b));
+	}
+
+	private static String packageName(Class<?> type) {
+		String name = type.getName();
+		int idx = name.lastIndexOf('.');
+		return (idx < 0) ? "" : name.substring(0, idx);
+	}
+
+	/** Returns true if the given class loader resolves the class name to the same class */
+	private static boolean isVisible(Class<?> type, ClassLoader classLoader) {
+		try {
+			return Class.forName(type.getName(), false, classLoader) == type;
+		} catch (ClassNotFoundException e) {
+			return false;
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+}
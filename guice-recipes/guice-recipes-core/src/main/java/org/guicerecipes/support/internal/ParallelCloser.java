@@ -0,0 +1,208 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.guicerecipes.support.internal;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.guicerecipes.support.*;
+
+import com.google.common.collect.*;
+import com.google.inject.*;
+
+/**
+ * Closes the objects of the levels of a {@link DependencyLevels} in the reverse order, so that objects are closed before the objects they depend on, closing the objects of each
+ * level in parallel. Each object has a deadline from when its close starts and all the objects share an overall deadline; objects which are not closed in time are reported to the
+ * {@link CloseErrors} with a {@link TimeoutException} and their close is interrupted, and once the overall deadline has passed the remaining objects are reported without being
+ * closed. Any error an object reports after it has timed out, such as one caused by the interrupt, is ignored so that the timeout is the one error reported for it.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public class ParallelCloser {
+	private final Closer closer;
+	private final Executor executor;
+	private final long objectTimeout;
+	private final long timeout;
+
+	/**
+	 * @param objectTimeout the time to wait for each object to close
+	 * @param timeout the time to wait for all the objects to close
+	 */
+	public ParallelCloser(Closer closer, Executor executor, long objectTimeout, long timeout, TimeUnit unit) {
+		this.closer = closer;
+		this.executor = executor;
+		this.objectTimeout = unit.toNanos(objectTimeout);
+		this.timeout = unit.toNanos(timeout);
+	}
+
+	/**
+	 * Closes the objects of each level in the reverse order of the levels, the objects in each level being closed in parallel
+	 * 
+	 * @param levels the objects to close along with the keys of their bindings, in the order they were created
+	 */
+	public void close(List<Map<Object, Key<?>>> levels, CloseErrors errors) {
+		CloseErrors taskErrors = new SynchronizedCloseErrors(errors);
+		long deadline = System.nanoTime() + timeout;
+		for (int i = levels.size() - 1; i >= 0; i--) {
+			Map<Object, Key<?>> level = levels.get(i);
+			if (System.nanoTime() - deadline >= 0) {
+				for (Map.Entry<Object, Key<?>> entry : level.entrySet()) {
+					taskErrors.closeError(entry.getValue(), entry.getKey(), new TimeoutException("Not closed before the overall timeout of " + toMillis(timeout) + " ms"));
+				}
+				continue;
+			}
+			closeLevel(level, taskErrors, deadline);
+		}
+	}
+
+	private void closeLevel(Map<Object, Key<?>> level, CloseErrors errors, long deadline) {
+		BlockingQueue<CloseObjectTask> completed = new LinkedBlockingQueue<CloseObjectTask>();
+		List<CloseObjectTask> pending = Lists.newLinkedList();
+		for (Map.Entry<Object, Key<?>> entry : level.entrySet()) {
+			CloseObjectTask task = new CloseObjectTask(entry.getValue(), entry.getKey(), errors, completed);
+			pending.add(task);
+			try {
+				executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				task.run();
+			}
+		}
+		while (!pending.isEmpty()) {
+			long now = System.nanoTime();
+			long wait = Math.min(deadline - now, objectTimeout);
+			for (Iterator<CloseObjectTask> iter = pending.iterator(); iter.hasNext();) {
+				CloseObjectTask task = iter.next();
+				if (task.isDone()) {
+					iter.remove();
+				} else if (now - deadline >= 0) {
+					task.timeout(errors, "Not closed before the overall timeout of " + toMillis(timeout) + " ms");
+					iter.remove();
+				} else if (task.started != 0) {
+					long remaining = task.started + objectTimeout - now;
+					if (remaining <= 0) {
+						task.timeout(errors, "Not closed within " + toMillis(objectTimeout) + " ms");
+						iter.remove();
+					} else {
+						wait = Math.min(wait, remaining);
+					}
+				}
+			}
+			if (!pending.isEmpty()) {
+				try {
+					completed.poll(wait, TimeUnit.NANOSECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					for (CloseObjectTask task : pending) {
+						task.timeout(errors, "Interrupted while waiting to close");
+					}
+					return;
+				}
+			}
+		}
+	}
+
+	private static long toMillis(long nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	private class CloseObjectTask extends FutureTask<Object> {
+		private final Key<?> key;
+		private final Object object;
+		private final TaskCloseErrors errors;
+		private final BlockingQueue<CloseObjectTask> completed;
+		volatile long started;
+
+		CloseObjectTask(Key<?> key, Object object, CloseErrors errors, BlockingQueue<CloseObjectTask> completed) {
+			this(key, object, new TaskCloseErrors(errors), completed);
+		}
+
+		private CloseObjectTask(final Key<?> key, final Object object, final TaskCloseErrors errors, BlockingQueue<CloseObjectTask> completed) {
+			super(new Runnable() {
+				public void run() {
+					Closers.close(key, object, closer, errors);
+				}
+			}, null);
+			this.key = key;
+			this.object = object;
+			this.errors = errors;
+			this.completed = completed;
+		}
+
+		@Override
+		public void run() {
+			started = System.nanoTime();
+			super.run();
+		}
+
+		@Override
+		protected void done() {
+			completed.add(this);
+		}
+
+		void timeout(CloseErrors errors, String message) {
+			// the errors of the task are ignored from now on, so that the interrupt is not reported as well
+			synchronized (this.errors) {
+				if (cancel(true)) {
+					this.errors.timedOut = true;
+					errors.closeError(key, object, new TimeoutException(message));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reports the errors of a close task until it times out
+	 */
+	private static class TaskCloseErrors implements CloseErrors {
+		private final CloseErrors errors;
+		private boolean timedOut;
+
+		TaskCloseErrors(CloseErrors errors) {
+			this.errors = errors;
+		}
+
+		public synchronized void closeError(Object key, Object object, Exception cause) {
+			if (!timedOut) {
+				errors.closeError(key, object, cause);
+			}
+		}
+
+		public void throwIfNecessary() throws CloseFailedException {
+			errors.throwIfNecessary();
+		}
+	}
+
+	/**
+	 * Reports the errors of the close tasks one at a time
+	 */
+	private static class SynchronizedCloseErrors implements CloseErrors {
+		private final CloseErrors errors;
+
+		SynchronizedCloseErrors(CloseErrors errors) {
+			this.errors = errors;
+		}
+
+		public synchronized void closeError(Object key, Object object, Exception cause) {
+			errors.closeError(key, object, cause);
+		}
+
+		public void throwIfNecessary() throws CloseFailedException {
+			errors.throwIfNecessary();
+		}
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.support.internal;
+
+import java.lang.annotation.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.google.common.collect.*;
+import com.google.inject.*;
+import com.google.inject.spi.*;
+
+/**
+ * Scans the classes bound by a set of module {@link Element}s for the annotations looked for by their {@link ScanningTypeListener}s in parallel, so that the listeners find the
+ * annotated members in the {@link InjectionIndex} rather than scanning each class in turn while the injector is created.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public class PreScanner {
+	private final Set<Class<? extends Annotation>> annotationTypes = Sets.newLinkedHashSet();
+	private final Set<Class<?>> types = Sets.newLinkedHashSet();
+
+	private final BindingTargetVisitor<Object, Void> targetVisitor = new DefaultBindingTargetVisitor<Object, Void>() {
+		@Override
+		public Void visit(InstanceBinding<?> binding) {
+			addType(binding.getInstance().getClass());
+			return null;
+		}
+
+		@Override
+		public Void visit(ProviderInstanceBinding<?> binding) {
+			addType(binding.getProviderInstance().getClass());
+			return null;
+		}
+
+		@Override
+		public Void visit(ProviderKeyBinding<?> binding) {
+			addType(binding.getProviderKey().getTypeLiteral().getRawType());
+			return null;
+		}
+
+		@Override
+		public Void visit(LinkedKeyBinding<?> binding) {
+			addType(binding.getLinkedKey().getTypeLiteral().getRawType());
+			return null;
+		}
+
+		@Override
+		public Void visit(UntargettedBinding<?> binding) {
+			addType(binding.getKey().getTypeLiteral().getRawType());
+			return null;
+		}
+
+		@Override
+		public Void visit(ConstructorBinding<?> binding) {
+			addType(binding.getConstructor().getDeclaringType().getRawType());
+			return null;
+		}
+	};
+
+	private final ElementVisitor<Void> elementVisitor = new DefaultElementVisitor<Void>() {
+		@Override
+		public <T> Void visit(Binding<T> binding) {
+			binding.acceptTargetVisitor(targetVisitor);
+			return null;
+		}
+
+		@Override
+		public Void visit(InjectionRequest<?> request) {
+			addType(request.getInstance().getClass());
+			return null;
+		}
+
+		@Override
+		public Void visit(TypeListenerBinding binding) {
+			TypeListener listener = binding.getListener();
+			if (listener instanceof ScanningTypeListener) {
+				annotationTypes.addAll(((ScanningTypeListener) listener).getAnnotationTypes());
+			}
+			return null;
+		}
+
+		@Override
+		public Void visit(PrivateElements privateElements) {
+			addElements(privateElements.getElements());
+			return null;
+		}
+	};
+
+	/**
+	 * Adds the classes bound by the given elements and the annotations looked for by their listeners
+	 */
+	public void addElements(Iterable<? extends Element> elements) {
+		for (Element element : elements) {
+			element.acceptVisitor(elementVisitor);
+		}
+	}
+
+	/**
+	 * Adds the given class and its super classes to the classes to be scanned
+	 */
+	public void addType(Class<?> type) {
+		// classes from the bootstrap class loader are not scanned
+		while (type != null && type != Object.class && !type.isInterface() && !type.isArray() && type.getClassLoader() != null) {
+			if (!types.add(type)) {
+				break;
+			}
+			type = type.getSuperclass();
+		}
+	}
+
+	public Set<Class<? extends Annotation>> getAnnotationTypes() {
+		return annotationTypes;
+	}
+
+	public Set<Class<?>> getTypes() {
+		return types;
+	}
+
+	/**
+	 * Scans all the added classes for the annotations using the given executor and waits for them all to be scanned. If the current thread is interrupted this method returns early
+	 * and any classes not scanned yet are scanned by the listeners as usual.
+	 */
+	public void scan(Executor executor) {
+		if (annotationTypes.isEmpty() || types.isEmpty()) {
+			return;
+		}
+		final List<Class<? extends Annotation>> annotationTypeList = Lists.newArrayList(annotationTypes);
+		final CountDownLatch latch = new CountDownLatch(types.size());
+		for (final Class<?> type : types) {
+			Runnable task = new Runnable() {
+				public void run() {
+					try {
+						InjectionIndex.scan(type, annotationTypeList);
+					} catch (RuntimeException e) {
+						// the listeners will report any problems with this class
+					} catch (LinkageError e) {
+						// the listeners will report any problems with this class
+					} finally {
+						latch.countDown();
+					}
+				}
+			};
+			try {
+				executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				latch.countDown();
+			}
+		}
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
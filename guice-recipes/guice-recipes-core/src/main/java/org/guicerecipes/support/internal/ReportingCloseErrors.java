@@ -0,0 +1,54 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.support.internal;
+
+import org.guicerecipes.metrics.*;
+import org.guicerecipes.support.*;
+
+/**
+ * Reports the errors of closing objects outside of a close of their scope, such as objects evicted or replaced by a scope, where there is no caller to throw them to. Each error is
+ * counted with the given metric and passed to the handler, or printed if there is no handler.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public class ReportingCloseErrors implements CloseErrors {
+	private final String metric;
+	private final CloseErrors handler;
+
+	public ReportingCloseErrors(String metric, CloseErrors handler) {
+		this.metric = metric;
+		this.handler = handler;
+	}
+
+	public void closeError(Object key, Object object, Exception cause) {
+		MetricsRecorder recorder = Metrics.getRecorder();
+		if (recorder != null) {
+			recorder.increment(metric);
+		}
+		if (handler != null) {
+			handler.closeError(key, object, cause);
+		} else {
+			cause.printStackTrace();
+		}
+	}
+
+	public void throwIfNecessary() {
+		// there is no one to throw the errors to
+	}
+}
@@ -0,0 +1,333 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.support.internal;
+
+import java.io.*;
+import java.lang.annotation.*;
+import java.net.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.jar.*;
+import java.util.zip.*;
+
+import com.google.common.collect.*;
+
+/**
+ * A persistent cache of the annotated members of classes which are not covered by an {@link InjectionIndex}, such as classes in third party jars, so that they do not need to be
+ * scanned by reflection again after a restart.
+ * <p>
+ * Each class is stored with the size and CRC-32 of its class file so that entries for classes which have changed since they were scanned are detected and rescanned, even if the
+ * changed class file kept its last modified time. The cache file is read in one go and closed when it is opened and each entry is only decoded when its class is first looked up.
+ * New entries are written back by {@link #save()}, which for the default cache configured with the {@value #SCAN_CACHE_FILE} system property happens when the JVM shuts down. The
+ * file is not memory mapped: a mapping cannot be released explicitly so it would stay open until it is garbage collected, and some platforms, such as Windows, do not allow a file
+ * which is still mapped to be replaced when the cache is saved.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public class ScanCache {
+	public static final String SCAN_CACHE_FILE = "org.guicerecipes.scanCache";
+
+	private static final int MAGIC = 0x47524332;
+	private static final ScanCache defaultCache = createDefaultCache();
+
+	private final File file;
+	private final ByteBuffer buffer;
+	private final Map<String, Integer> offsets = Maps.newHashMap();
+	private final ConcurrentMap<String, Record> records = new ConcurrentHashMap<String, Record>();
+	private final ConcurrentMap<Class<?>, InjectionIndex.Entry> entries = new MapMaker().weakKeys().makeMap();
+	private volatile boolean dirty;
+
+	public ScanCache(File file) {
+		this.file = file;
+		this.buffer = load();
+	}
+
+	/**
+	 * Returns the cache configured with the {@value #SCAN_CACHE_FILE} system property or null if there is none
+	 */
+	public static ScanCache getDefault() {
+		return defaultCache;
+	}
+
+	private static ScanCache createDefaultCache() {
+		String fileName = System.getProperty(SCAN_CACHE_FILE);
+		if (fileName == null || fileName.length() == 0) {
+			return null;
+		}
+		final ScanCache cache = new ScanCache(new File(fileName));
+		Runtime.getRuntime().addShutdownHook(new Thread("guice-recipes scan cache") {
+			@Override
+			public void run() {
+				try {
+					cache.save();
+				} catch (IOException e) {
+					// the classes will just be scanned again next time
+				}
+			}
+		});
+		return cache;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the cached members of the given type annotated with any of the given annotation types, scanning the type if it is not cached, has changed or was scanned for other
+	 * annotations. Returns null if the class file of the type cannot be found.
+	 */
+	public InjectionIndex.Entry getEntry(Class<?> type, Iterable<? extends Class<? extends Annotation>> annotationTypes) {
+		InjectionIndex.Entry entry = entries.get(type);
+		if (entry != null && entry.coversAll(annotationTypes)) {
+			return entry;
+		}
+		long hash = hash(type);
+		if (hash == -1) {
+			return null;
+		}
+		if (entry == null) {
+			Record record = getRecord(type.getName());
+			if (record != null && record.hash == hash) {
+				entry = record.entry;
+				entries.put(type, entry);
+				if (entry.coversAll(annotationTypes)) {
+					return entry;
+				}
+			}
+		}
+
+		// scan for the annotations looked up before as well so the entry keeps covering them
+		Set<String> annotationNames = Sets.newHashSet();
+		if (entry != null) {
+			annotationNames.addAll(entry.annotationNames);
+		}
+		for (Class<? extends Annotation> annotationType : annotationTypes) {
+			annotationNames.add(annotationType.getName());
+		}
+		entry = scan(type, annotationNames);
+		entries.put(type, entry);
+		records.put(type.getName(), new Record(hash, entry));
+		dirty = true;
+		return entry;
+	}
+
+	/**
+	 * Writes the cache file if any classes have been scanned since it was loaded
+	 */
+	public synchronized void save() throws IOException {
+		if (!dirty) {
+			return;
+		}
+		dirty = false;
+		Map<String, Record> answer = Maps.newTreeMap();
+		for (String className : offsets.keySet()) {
+			Record record = getRecord(className);
+			if (record != null) {
+				answer.put(className, record);
+			}
+		}
+		answer.putAll(records);
+
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		File tempFile = new File(parent, file.getName() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(answer.size());
+			for (Map.Entry<String, Record> entry : answer.entrySet()) {
+				Record record = entry.getValue();
+				writeString(out, entry.getKey());
+				out.writeLong(record.hash);
+				writeStrings(out, record.entry.annotationNames);
+				writeStrings(out, record.entry.fieldNames);
+				writeStrings(out, record.entry.methodSignatures);
+			}
+		} finally {
+			out.close();
+		}
+		if (!tempFile.renameTo(file)) {
+			file.delete();
+			if (!tempFile.renameTo(file)) {
+				throw new IOException("Could not rename " + tempFile + " to " + file);
+			}
+		}
+	}
+
+	protected InjectionIndex.Entry scan(Class<?> type, Set<String> annotationNames) {
+		return InjectionIndex.scanMembers(type, annotationNames);
+	}
+
+	/**
+	 * Returns a hash of the class file of the given type, made of its size in the high bits and its CRC-32 in the low bits, or -1 if it cannot be found. The size and CRC-32 stored
+	 * by jars are used so that their class files do not need to be read; other class files are read to calculate their CRC-32.
+	 */
+	protected long hash(Class<?> type) {
+		ClassLoader classLoader = type.getClassLoader();
+		if (classLoader == null) {
+			return -1;
+		}
+		URL url = classLoader.getResource(type.getName().replace('.', '/') + ".class");
+		if (url == null) {
+			return -1;
+		}
+		try {
+			URLConnection connection = url.openConnection();
+			if (connection instanceof JarURLConnection) {
+				// jars already store the checksum of each entry
+				JarEntry jarEntry = ((JarURLConnection) connection).getJarEntry();
+				if (jarEntry != null && jarEntry.getCrc() != -1 && jarEntry.getSize() != -1) {
+					return jarEntry.getSize() << 32 | jarEntry.getCrc();
+				}
+			}
+			InputStream in = connection.getInputStream();
+			try {
+				CRC32 crc = new CRC32();
+				byte[] bytes = new byte[4096];
+				long size = 0;
+				int count;
+				while ((count = in.read(bytes)) != -1) {
+					crc.update(bytes, 0, count);
+					size += count;
+				}
+				return size << 32 | crc.getValue();
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	private Record getRecord(String className) {
+		Record record = records.get(className);
+		if (record == null) {
+			Integer offset = offsets.get(className);
+			if (offset != null) {
+				try {
+					record = readRecord(offset);
+				} catch (BufferUnderflowException e) {
+					return null;
+				}
+				Record previous = records.putIfAbsent(className, record);
+				if (previous != null) {
+					record = previous;
+				}
+			}
+		}
+		return record;
+	}
+
+	/** Reads the cache file and the offset of the entry of each class */
+	private ByteBuffer load() {
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+			try {
+				byte[] bytes = new byte[(int) randomAccessFile.length()];
+				randomAccessFile.readFully(bytes);
+				ByteBuffer answer = ByteBuffer.wrap(bytes);
+				ByteBuffer in = answer.duplicate();
+				if (in.getInt() != MAGIC) {
+					return null;
+				}
+				for (int i = in.getInt(); i > 0; i--) {
+					String className = readString(in);
+					offsets.put(className, in.position());
+					in.getLong();
+					skipStrings(in);
+					skipStrings(in);
+					skipStrings(in);
+				}
+				return answer;
+			} finally {
+				randomAccessFile.close();
+			}
+		} catch (IOException e) {
+			offsets.clear();
+			return null;
+		} catch (RuntimeException e) {
+			// a truncated or corrupt file is ignored and rewritten
+			offsets.clear();
+			return null;
+		}
+	}
+
+	private Record readRecord(int offset) {
+		ByteBuffer in = buffer.duplicate();
+		in.position(offset);
+		long hash = in.getLong();
+		Set<String> annotationNames = readStrings(in, Sets.<String> newHashSet());
+		List<String> fieldNames = readStrings(in, Lists.<String> newArrayList());
+		Set<String> methodSignatures = readStrings(in, Sets.<String> newHashSet());
+		return new Record(hash, new InjectionIndex.Entry(null, annotationNames, fieldNames, methodSignatures));
+	}
+
+	private static <C extends Collection<String>> C readStrings(ByteBuffer in, C answer) {
+		for (int i = in.getShort() & 0xFFFF; i > 0; i--) {
+			answer.add(readString(in));
+		}
+		return answer;
+	}
+
+	private static String readString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getShort() & 0xFFFF];
+		in.get(bytes);
+		try {
+			return new String(bytes, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void skipStrings(ByteBuffer in) {
+		for (int i = in.getShort() & 0xFFFF; i > 0; i--) {
+			int length = in.getShort() & 0xFFFF;
+			in.position(in.position() + length);
+		}
+	}
+
+	private static void writeStrings(DataOutputStream out, Collection<String> values) throws IOException {
+		out.writeShort(values.size());
+		for (String value : values) {
+			writeString(out, value);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes("UTF-8");
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+	private static class Record {
+		private final long hash;
+		private final InjectionIndex.Entry entry;
+
+		Record(long hash, InjectionIndex.Entry entry) {
+			this.hash = hash;
+			this.entry = entry;
+		}
+	}
+}
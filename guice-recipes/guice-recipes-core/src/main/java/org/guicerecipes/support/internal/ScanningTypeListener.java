@@ -0,0 +1,37 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.support.internal;
+
+import java.lang.annotation.*;
+import java.util.*;
+
+import com.google.inject.spi.*;
+
+/**
+ * A {@link TypeListener} which looks for members annotated with any of a set of annotations so that the {@link PreScanner} can scan the bound classes for them ahead of time
+ * 
+ * @version $Revision: 1.1 $
+ */
+public interface ScanningTypeListener extends TypeListener {
+
+	/**
+	 * Returns the annotation types this listener looks for
+	 */
+	Collection<Class<? extends Annotation>> getAnnotationTypes();
+}
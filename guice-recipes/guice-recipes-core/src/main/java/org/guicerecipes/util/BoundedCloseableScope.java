@@ -0,0 +1,183 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.guicerecipes.util;
+
+import java.lang.annotation.*;
+import java.util.*;
+
+import org.guicerecipes.metrics.*;
+import org.guicerecipes.support.*;
+import org.guicerecipes.support.internal.*;
+
+import com.google.common.collect.*;
+import com.google.inject.*;
+
+/**
+ * A {@link CloseableScope} which holds a bounded number of objects, or a bounded total weight of objects, evicting the least recently used objects when the bound is exceeded. Evicted
+ * objects are closed using the {@link Closer} implementations of the injector, so their {@link javax.annotation.PreDestroy} methods are invoked, and are created again if they are
+ * asked for again. The scope has to be injected, for example with {@link com.google.inject.Binder#requestInjection(Object)}, to close the evicted objects. Failures to close an
+ * evicted object are counted by the {@link Metrics#CLOSE_ERROR} metric of the scope and passed to the {@link #setEvictionErrors(CloseErrors) eviction errors handler}, if there is one.
+ * 
+ * The order in which objects are used is tracked under a lock, so unlike {@link CloseableScope} looking up an object in this scope briefly locks the scope.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public class BoundedCloseableScope extends CloseableScope {
+
+	/**
+	 * Calculates the weight of an object in a scope
+	 */
+	public interface Weigher {
+		long weigh(Key<?> key, Object value);
+	}
+
+	private static final Weigher SINGLETON_WEIGHER = new Weigher() {
+		public long weigh(Key<?> key, Object value) {
+			return 1;
+		}
+	};
+
+	private final LinkedHashMap<Key<?>, Object> entries = new LinkedHashMap<Key<?>, Object>(16, 0.75f, true);
+	private final long maximumWeight;
+	private final Weigher weigher;
+	private final String evictMetric;
+	private final String closeErrorMetric;
+	private volatile CloseErrors evictionErrors;
+	private long weight;
+
+	/**
+	 * Creates a scope holding at most the given number of objects
+	 */
+	public BoundedCloseableScope(Class<? extends Annotation> scopeAnnotation, int maximumSize) {
+		this(scopeAnnotation, maximumSize, SINGLETON_WEIGHER);
+	}
+
+	/**
+	 * Creates a scope holding objects up to the given total weight, the most recently created object being kept even if it weighs more than the maximum on its own
+	 */
+	public BoundedCloseableScope(Class<? extends Annotation> scopeAnnotation, long maximumWeight, Weigher weigher) {
+		super(scopeAnnotation);
+		if (maximumWeight < 1) {
+			throw new IllegalArgumentException("maximumWeight must be at least 1 but was " + maximumWeight);
+		}
+		this.maximumWeight = maximumWeight;
+		this.weigher = weigher;
+		this.evictMetric = Metrics.SCOPE + scopeAnnotation.getName() + Metrics.EVICT;
+		this.closeErrorMetric = Metrics.SCOPE + scopeAnnotation.getName() + Metrics.CLOSE_ERROR;
+	}
+
+	public CloseErrors getEvictionErrors() {
+		return evictionErrors;
+	}
+
+	/**
+	 * Sets the handler of the failures to close evicted objects, which are printed if there is no handler as the thread evicting an object is only looking up another object
+	 */
+	public void setEvictionErrors(CloseErrors evictionErrors) {
+		this.evictionErrors = evictionErrors;
+	}
+
+	public long getMaximumWeight() {
+		return maximumWeight;
+	}
+
+	/**
+	 * Returns the number of objects in this scope
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Returns the total weight of the objects in this scope
+	 */
+	public long getWeight() {
+		synchronized (entries) {
+			return weight;
+		}
+	}
+
+	@Override
+	public void close(Injector injector) throws CloseFailedException {
+		try {
+			super.close(injector);
+		} finally {
+			synchronized (entries) {
+				entries.clear();
+				weight = 0;
+			}
+		}
+	}
+
+	@Override
+	protected void created(Key<?> key, Object value) {
+		List<Map.Entry<Key<?>, Object>> evicted = Lists.newArrayList();
+		synchronized (entries) {
+			Object old = entries.put(key, value);
+			if (old != null) {
+				weight -= weigher.weigh(key, old);
+			}
+			weight += weigher.weigh(key, value);
+
+			Iterator<Map.Entry<Key<?>, Object>> iter = entries.entrySet().iterator();
+			while (weight > maximumWeight && entries.size() > 1) {
+				Map.Entry<Key<?>, Object> entry = iter.next();
+				iter.remove();
+				weight -= weigher.weigh(entry.getKey(), entry.getValue());
+				evicted.add(entry);
+			}
+		}
+		for (Map.Entry<Key<?>, Object> entry : evicted) {
+			evict(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	protected void accessed(Key<?> key, Object value) {
+		synchronized (entries) {
+			entries.get(key);
+		}
+	}
+
+	/**
+	 * Removes the evicted object from the scope and closes it, reporting any failure to close it to the {@link #setEvictionErrors(CloseErrors) eviction errors handler}
+	 */
+	protected void evict(Key<?> key, Object value) {
+		if (!remove(key, value)) {
+			return;
+		}
+		MetricsRecorder recorder = Metrics.getRecorder();
+		if (recorder != null) {
+			recorder.increment(evictMetric);
+		}
+		Injector injector = getInjector();
+		if (injector == null) {
+			return;
+		}
+		Closer closer = Closers.getCloser(injector);
+		if (closer != null) {
+			Closers.close(key, value, closer, new ReportingCloseErrors(closeErrorMetric, evictionErrors));
+		}
+		CloseRegistry registry = CloseRegistry.getInstance(injector);
+		if (registry != null) {
+			registry.remove(value);
+		}
+	}
+}
@@ -20,8 +20,10 @@ package org.guicerecipes.util;
 
 import java.lang.annotation.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.guicerecipes.*;
+import org.guicerecipes.metrics.*;
 import org.guicerecipes.support.*;
 import org.guicerecipes.support.internal.*;
 
@@ -34,39 +36,81 @@ import com.google.inject.*;
  * 
  * The scope can be closed as many times as required - there is no need to recreate the scope instance each time a scope goes out of scope.
  * 
+ * Objects already in the scope are looked up without locking. Each object is created by the first thread to ask for it while any other threads asking for the same key wait for it
+ * to be created, so a slow object only holds up the threads which need it. If two threads each need an object the other one is creating, such as when one creates an object which
+ * depends on the object the other creates and the other way round, they would wait for each other forever, so the thread which would complete the cycle fails with a
+ * {@link ProvisionException} naming the keys involved instead.
+ * 
+ * The miss and create metrics are only recorded once an object has been created; failures to create an object are counted by the {@link Metrics#CREATE_ERROR} metric.
+ * 
  * @version $Revision: 1.1 $
  */
 public class CloseableScope implements Scope, HasScopeAnnotation {
 
 	private Class<? extends Annotation> scopeAnnotation;
-	private final Map<Key<?>, Object> map = Maps.newHashMap();
+	// the values are either the objects in the scope or the Creation of an object which is still being created
+	private final ConcurrentMap<Key<?>, Object> map = new ConcurrentHashMap<Key<?>, Object>();
+	private final String hitMetric;
+	private final String missMetric;
+	private final String createMetric;
+	private final String createErrorMetric;
 
 	@Inject
 	private Injector injector;
 
 	public CloseableScope(Class<? extends Annotation> scopeAnnotation) {
 		this.scopeAnnotation = scopeAnnotation;
+		String prefix = Metrics.SCOPE + scopeAnnotation.getName();
+		this.hitMetric = prefix + Metrics.HIT;
+		this.missMetric = prefix + Metrics.MISS;
+		this.createMetric = prefix + Metrics.CREATE;
+		this.createErrorMetric = prefix + Metrics.CREATE_ERROR;
 	}
 
 	@SuppressWarnings("unchecked")
 	public <T> Provider<T> scope(final Key<T> key, final Provider<T> creator) {
 		return new CachingProvider<T>() {
 			public T get() {
-				Object o;
-				synchronized (map) {
-					o = map.get(key);
+				MetricsRecorder recorder = Metrics.getRecorder();
+				Object o = map.get(key);
+				if (o == null) {
+					Creation creation = new Creation(key, creator);
+					o = map.putIfAbsent(key, creation);
 					if (o == null) {
-						o = creator.get();
-						map.put(key, o);
+						long start = recorder != null ? System.nanoTime() : 0;
+						try {
+							o = creation.create(map);
+						} catch (RuntimeException e) {
+							if (recorder != null) {
+								recorder.increment(createErrorMetric);
+							}
+							throw e;
+						}
+						if (recorder != null) {
+							recorder.increment(missMetric);
+							recorder.record(createMetric, System.nanoTime() - start);
+						}
+						if (o != null) {
+							created(key, o);
+						}
+						return (T) o;
 					}
 				}
+				if (o instanceof Creation) {
+					o = ((Creation) o).await();
+				}
+				if (recorder != null) {
+					recorder.increment(hitMetric);
+				}
+				if (o != null) {
+					accessed(key, o);
+				}
 				return (T) o;
 			}
 
 			public T getCachedValue() {
-				synchronized (map) {
-					return (T) map.get(key);
-				}
+				Object o = map.get(key);
+				return o instanceof Creation ? null : (T) o;
 			}
 		};
 	}
@@ -86,13 +130,37 @@ public class CloseableScope implements Scope, HasScopeAnnotation {
 		CloseErrorsImpl errors = new CloseErrorsImpl(this);
 		Injectors.close(injector, scopeAnnotation, errors);
 
-		synchronized (map) {
-			map.clear();
-		}
+		map.clear();
 		errors.throwIfNecessary();
 	}
 
 	public Class<? extends Annotation> getScopeAnnotation() {
 		return scopeAnnotation;
 	}
+
+	/**
+	 * Returns the injector this scope was injected into or null if it has not been injected
+	 */
+	protected Injector getInjector() {
+		return injector;
+	}
+
+	/**
+	 * Invoked after an object has been created and added to this scope
+	 */
+	protected void created(Key<?> key, Object value) {
+	}
+
+	/**
+	 * Invoked when an object already in this scope is looked up
+	 */
+	protected void accessed(Key<?> key, Object value) {
+	}
+
+	/**
+	 * Removes the object from this scope without closing it, returning false if it is no longer in the scope
+	 */
+	protected boolean remove(Key<?> key, Object value) {
+		return map.remove(key, value);
+	}
 }
@@ -0,0 +1,136 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.guicerecipes.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.google.common.base.*;
+import com.google.common.collect.*;
+import com.google.inject.*;
+
+/**
+ * The creation of an object of a scope by one thread which other threads asking for the same key wait for. A thread which would wait for an object being created by a thread which
+ * is itself waiting, directly or through other threads, for an object the first thread is creating fails with a {@link ProvisionException} instead of deadlocking.
+ * 
+ * @version $Revision: 1.1 $
+ */
+class Creation extends FutureTask<Object> {
+	/** the creation each thread is waiting for, used to detect threads waiting for each other */
+	private static final ConcurrentMap<Thread, Creation> waiting = new ConcurrentHashMap<Thread, Creation>();
+
+	private final Key<?> key;
+	private final Provider<?> creator;
+	private final Thread thread = Thread.currentThread();
+
+	Creation(Key<?> key, final Provider<?> creator) {
+		super(new Callable<Object>() {
+			public Object call() throws Exception {
+				return creator.get();
+			}
+		});
+		this.key = key;
+		this.creator = creator;
+	}
+
+	/**
+	 * Creates the object replacing this creation in the map with it, or removing this creation if the object is null or could not be created
+	 */
+	Object create(ConcurrentMap<Key<?>, Object> map) {
+		run();
+		try {
+			Object value = get(key);
+			if (value != null) {
+				map.replace(key, this, value);
+			} else {
+				map.remove(key, this);
+			}
+			return value;
+		} catch (RuntimeException e) {
+			map.remove(key, this);
+			throw e;
+		} catch (Error e) {
+			map.remove(key, this);
+			throw e;
+		}
+	}
+
+	/**
+	 * Waits for the object to be created by another thread; if the object is being created by this thread the scope is being reentered so the object is created again as Guice
+	 * handles circular dependencies itself
+	 */
+	Object await() {
+		Thread current = Thread.currentThread();
+		if (isDone()) {
+			return get(key);
+		}
+		if (thread == current) {
+			return creator.get();
+		}
+		startWaiting(current);
+		try {
+			return get(key);
+		} finally {
+			waiting.remove(current);
+		}
+	}
+
+	/**
+	 * Records that the given thread is waiting for this creation, failing if the thread creating it is waiting, directly or through other threads, for an object being created
+	 * by the given thread
+	 */
+	private void startWaiting(Thread current) {
+		synchronized (waiting) {
+			List<Key<?>> cycle = Lists.newArrayList();
+			for (Creation creation = this; creation != null && !creation.isDone() && cycle.size() <= waiting.size(); creation = waiting.get(creation.thread)) {
+				cycle.add(creation.key);
+				if (creation.thread == current) {
+					throw new ProvisionException("Threads are waiting for each other to create " + Joiner.on(", ").join(cycle) + " so " + current.getName()
+							+ " gives up to avoid a deadlock");
+				}
+			}
+			waiting.put(current, this);
+		}
+	}
+
+	private Object get(Key<?> key) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new ProvisionException("Failed to create " + key + ". Reason: " + cause, cause);
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
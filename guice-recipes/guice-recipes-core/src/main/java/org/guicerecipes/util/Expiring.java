@@ -0,0 +1,47 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.guicerecipes.util;
+
+import java.lang.annotation.*;
+import java.util.concurrent.*;
+
+import com.google.inject.*;
+
+/**
+ * This defines a {@link com.google.inject.Scope} in which objects expire after a time to live and are created again in the background shortly before they expire. The times given on
+ * a class override those of the scope for objects of that class; a time of zero means the time of the scope is used.
+ * 
+ * @see ExpiringScope for an implementation of this scope
+ * @version $Revision: 1.1 $
+ */
+@Target( { ElementType.TYPE, ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+@ScopeAnnotation
+public @interface Expiring {
+	/**
+	 * The time after an object is created that it expires
+	 */
+	long ttl() default 0;
+
+	/**
+	 * How long before an object expires it is created again in the background, or zero to use the time of the scope
+	 */
+	long refreshAhead() default 0;
+
+	TimeUnit unit() default TimeUnit.MILLISECONDS;
+}
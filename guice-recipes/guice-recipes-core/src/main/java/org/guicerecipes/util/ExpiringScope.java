@@ -0,0 +1,379 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.guicerecipes.util;
+
+import java.lang.annotation.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.guicerecipes.*;
+import org.guicerecipes.metrics.*;
+import org.guicerecipes.support.*;
+import org.guicerecipes.support.internal.*;
+
+import com.google.common.base.*;
+import com.google.inject.*;
+
+/**
+ * A scope whose objects expire after a time to live. Once an object has lived for its time to live less its refresh ahead time, the next lookup starts creating a new object in the
+ * background while still returning the current one, so callers only wait for an object to be created the first time it is looked up or if it was not refreshed before it expired.
+ * <p>
+ * The times can be given for each class of object with the {@link Expiring} annotation, otherwise the times of the scope are used. The annotation is looked for on the class Guice
+ * creates for a binding, such as the implementation class of a linked binding, once the scope has been injected, and otherwise on the class of the key; a refresh ahead time which
+ * is not less than the time to live is rejected, while the refresh ahead time of the scope is not used for classes which live for less than it. The
+ * {@link CachingProvider#getCachedValue()} of the providers of this scope return the current object without refreshing it. If the scope has been injected, for example with
+ * {@link com.google.inject.Binder#requestInjection(Object)}, objects are created in the background through the injector and replaced objects are closed using the
+ * {@link Closer} implementations of the injector. Without the injector only objects which Guice does not construct itself, such as those of provider bindings, can be created in
+ * the background as Guice 3 needs the context of an injection to construct an object; other objects are created again when they expire.
+ * <p>
+ * A replaced object is closed as soon as its replacement has been created, so a thread which looked it up just before it was replaced may still be using it while it is closed;
+ * objects which cannot be used after they are closed should either tolerate this or {@link #closeReplaced(Key, Object)} should be overridden to delay the close. Failures to close
+ * replaced objects are counted by the {@link Metrics#CLOSE_ERROR} metric of the scope and passed to the {@link #setReplacedErrors(CloseErrors) replaced errors handler}, if there is
+ * one.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public class ExpiringScope implements Scope, HasScopeAnnotation {
+	private static Executor defaultRefreshExecutor;
+	private static final ThreadLocal<ExpiringProvider<?>> backgroundRefresh = new ThreadLocal<ExpiringProvider<?>>();
+
+	private final Class<? extends Annotation> scopeAnnotation;
+	private final long ttl;
+	private final long refreshAhead;
+	private final Set<ExpiringProvider<?>> providers = new CopyOnWriteArraySet<ExpiringProvider<?>>();
+	private final String hitMetric;
+	private final String missMetric;
+	private final String createMetric;
+	private final String closeErrorMetric;
+	private volatile Executor refreshExecutor;
+	private volatile CloseErrors replacedErrors;
+
+	@Inject
+	private Injector injector;
+
+	public ExpiringScope(long ttl, long refreshAhead, TimeUnit unit) {
+		this(Expiring.class, ttl, refreshAhead, unit);
+	}
+
+	public ExpiringScope(Class<? extends Annotation> scopeAnnotation, long ttl, long refreshAhead, TimeUnit unit) {
+		if (ttl <= 0 || refreshAhead < 0 || refreshAhead >= ttl) {
+			throw new IllegalArgumentException("ttl must be positive and refreshAhead less than it but were " + ttl + " and " + refreshAhead);
+		}
+		this.scopeAnnotation = scopeAnnotation;
+		this.ttl = unit.toNanos(ttl);
+		this.refreshAhead = unit.toNanos(refreshAhead);
+		String prefix = Metrics.SCOPE + scopeAnnotation.getName();
+		this.hitMetric = prefix + Metrics.HIT;
+		this.missMetric = prefix + Metrics.MISS;
+		this.createMetric = prefix + Metrics.CREATE;
+		this.closeErrorMetric = prefix + Metrics.CLOSE_ERROR;
+	}
+
+	public <T> Provider<T> scope(Key<T> key, Provider<T> creator) {
+		// reject invalid times of the key class when the injector is created
+		getTimes(key.getTypeLiteral().getRawType());
+		ExpiringProvider<T> provider = new ExpiringProvider<T>(key, creator);
+		providers.add(provider);
+		return provider;
+	}
+
+	/**
+	 * Returns the time to live and refresh ahead time of objects of the given class in nanoseconds, or null if the class is not annotated with {@link Expiring}
+	 */
+	protected long[] getTimes(Class<?> type) {
+		Expiring expiring = type.getAnnotation(Expiring.class);
+		if (expiring == null) {
+			return null;
+		}
+		if (expiring.ttl() < 0 || expiring.refreshAhead() < 0 || (expiring.refreshAhead() > 0 && expiring.refreshAhead() >= (expiring.ttl() > 0 ? expiring.ttl() : expiring.unit().convert(ttl, TimeUnit.NANOSECONDS)))) {
+			throw new IllegalArgumentException("The @Expiring ttl of " + type.getName() + " must not be negative and its refreshAhead less than the ttl but were " + expiring.ttl()
+					+ " and " + expiring.refreshAhead());
+		}
+		long typeTtl = expiring.ttl() > 0 ? expiring.unit().toNanos(expiring.ttl()) : ttl;
+		long typeRefreshAhead = expiring.refreshAhead() > 0 ? expiring.unit().toNanos(expiring.refreshAhead()) : refreshAhead;
+		// the refresh ahead time of the scope does not apply to objects which live for less than it
+		return new long[] { typeTtl, typeRefreshAhead < typeTtl ? typeRefreshAhead : 0 };
+	}
+
+	/**
+	 * Closes all of the objects within this scope using the given injector and scope annotation and clears the scope
+	 */
+	public void close() throws CloseFailedException {
+		close(injector);
+	}
+
+	/**
+	 * Closes all of the objects within the given injector of the specified scope and clears the scope. The current objects are closed directly rather than looked up through the
+	 * injector, which would create the objects which have expired again.
+	 */
+	public void close(Injector injector) throws CloseFailedException {
+		Preconditions.checkNotNull(injector, "injector");
+		Closer closer = Closers.getCloser(injector);
+		CloseRegistry registry = CloseRegistry.getInstance(injector);
+		CloseErrorsImpl errors = new CloseErrorsImpl(this);
+		for (ExpiringProvider<?> provider : providers) {
+			Object value = provider.clear();
+			if (value != null) {
+				if (closer != null) {
+					Closers.close(provider.key, value, closer, errors);
+				}
+				if (registry != null) {
+					registry.remove(value);
+				}
+			}
+		}
+		errors.throwIfNecessary();
+	}
+
+	public Class<? extends Annotation> getScopeAnnotation() {
+		return scopeAnnotation;
+	}
+
+	/**
+	 * Returns the executor used to create objects in the background, which defaults to a shared pool of daemon threads
+	 */
+	public Executor getRefreshExecutor() {
+		if (refreshExecutor == null) {
+			refreshExecutor = getDefaultRefreshExecutor();
+		}
+		return refreshExecutor;
+	}
+
+	public void setRefreshExecutor(Executor refreshExecutor) {
+		this.refreshExecutor = refreshExecutor;
+	}
+
+	public CloseErrors getReplacedErrors() {
+		return replacedErrors;
+	}
+
+	/**
+	 * Sets the handler of the failures to close replaced objects, which are printed if there is no handler as the thread replacing an object is only looking up the new one
+	 */
+	public void setReplacedErrors(CloseErrors replacedErrors) {
+		this.replacedErrors = replacedErrors;
+	}
+
+	@Override
+	public String toString() {
+		return "ExpiringScope(" + scopeAnnotation.getName() + ")";
+	}
+
+	/**
+	 * Closes an object which has been replaced by a new one straight away, reporting any failure to close it to the {@link #setReplacedErrors(CloseErrors) replaced errors handler}
+	 */
+	protected void closeReplaced(Key<?> key, Object value) {
+		if (injector == null) {
+			return;
+		}
+		Closer closer = Closers.getCloser(injector);
+		if (closer != null) {
+			Closers.close(key, value, closer, new ReportingCloseErrors(closeErrorMetric, replacedErrors));
+		}
+		CloseRegistry registry = CloseRegistry.getInstance(injector);
+		if (registry != null) {
+			registry.remove(value);
+		}
+	}
+
+	/**
+	 * Returns the current time in nanoseconds used to work out the age of objects
+	 */
+	protected long nanoTime() {
+		return System.nanoTime();
+	}
+
+	private static synchronized Executor getDefaultRefreshExecutor() {
+		if (defaultRefreshExecutor == null) {
+			defaultRefreshExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "guice-recipes expiring scope refresh");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return defaultRefreshExecutor;
+	}
+
+	/**
+	 * An object with the time it was created
+	 */
+	private static final class Entry {
+		final Object value;
+		final long created;
+
+		Entry(Object value, long created) {
+			this.value = value;
+			this.created = created;
+		}
+	}
+
+	private class ExpiringProvider<T> implements CachingProvider<T> {
+		private final Key<T> key;
+		private final Provider<T> creator;
+		private final AtomicBoolean refreshing = new AtomicBoolean();
+		private volatile long ttl;
+		private volatile long refreshAhead;
+		private volatile boolean resolved;
+		private volatile Entry entry;
+		private volatile Entry refreshed;
+
+		ExpiringProvider(Key<T> key, Provider<T> creator) {
+			this.key = key;
+			this.creator = creator;
+			long[] times = getTimes(key.getTypeLiteral().getRawType());
+			this.ttl = times != null ? times[0] : ExpiringScope.this.ttl;
+			this.refreshAhead = times != null ? times[1] : ExpiringScope.this.refreshAhead;
+		}
+
+		@SuppressWarnings("unchecked")
+		public T get() {
+			MetricsRecorder recorder = Metrics.getRecorder();
+			if (backgroundRefresh.get() == this) {
+				// the injector is asking for the object being refreshed in the background
+				return (T) createAndReplace(refreshed, recorder);
+			}
+			if (!resolved) {
+				resolveTimes();
+			}
+			Entry current = entry;
+			long now = nanoTime();
+			if (current == null || now - current.created >= ttl) {
+				Entry created = null;
+				Object replaced = null;
+				synchronized (this) {
+					current = entry;
+					if (current == null || nanoTime() - current.created >= ttl) {
+						if (recorder != null) {
+							recorder.increment(missMetric);
+						}
+						created = create(recorder);
+						replaced = replace(current, created);
+					}
+				}
+				if (created != null) {
+					// closed outside the lock so that other lookups do not wait for the close
+					if (replaced != null) {
+						closeReplaced(key, replaced);
+					}
+					return (T) created.value;
+				}
+			} else if (refreshAhead > 0 && now - current.created >= ttl - refreshAhead && refreshing.compareAndSet(false, true)) {
+				refresh();
+			}
+			if (recorder != null) {
+				recorder.increment(hitMetric);
+			}
+			return (T) current.value;
+		}
+
+		@SuppressWarnings("unchecked")
+		public T getCachedValue() {
+			Entry current = entry;
+			return current != null ? (T) current.value : null;
+		}
+
+		/**
+		 * Clears the current object, returning it
+		 */
+		Object clear() {
+			synchronized (this) {
+				Entry current = entry;
+				entry = null;
+				return current != null ? current.value : null;
+			}
+		}
+
+		/**
+		 * Uses the times of the class Guice creates for the binding of the key if it is annotated, once the scope has been injected so that the binding can be looked up
+		 */
+		private synchronized void resolveTimes() {
+			if (resolved || injector == null) {
+				return;
+			}
+			Binding<T> binding = injector.getExistingBinding(key);
+			Class<?> type = binding != null ? CloseRegistry.getImplementationType(injector, binding) : null;
+			long[] times = type != null ? getTimes(type) : null;
+			if (times != null) {
+				ttl = times[0];
+				refreshAhead = times[1];
+			}
+			resolved = true;
+		}
+
+		private Entry create(MetricsRecorder recorder) {
+			long start = System.nanoTime();
+			T value = creator.get();
+			if (recorder != null) {
+				recorder.record(createMetric, System.nanoTime() - start);
+			}
+			return new Entry(value, nanoTime());
+		}
+
+		/**
+		 * Makes the given entry current if the current entry is still the given previous one, returning the object which has been replaced and should be closed
+		 */
+		private Object replace(Entry previous, Entry answer) {
+			synchronized (this) {
+				if (entry == previous) {
+					entry = answer;
+					return previous != null && previous.value != answer.value ? previous.value : null;
+				}
+			}
+			// the scope was cleared or the object created again while we were creating this one
+			return answer.value;
+		}
+
+		private Object createAndReplace(Entry previous, MetricsRecorder recorder) {
+			Entry answer = create(recorder);
+			Object replaced = replace(previous, answer);
+			if (replaced != null) {
+				closeReplaced(key, replaced);
+			}
+			return answer.value;
+		}
+
+		private void refresh() {
+			refreshed = entry;
+			Runnable task = new Runnable() {
+				public void run() {
+					try {
+						if (injector != null) {
+							backgroundRefresh.set(ExpiringProvider.this);
+							injector.getInstance(key);
+						} else {
+							createAndReplace(refreshed, Metrics.getRecorder());
+						}
+					} catch (RuntimeException e) {
+						// keep the current object and try again on the next lookup, or create it when it expires
+					} finally {
+						backgroundRefresh.remove();
+						refreshing.set(false);
+					}
+				}
+			};
+			try {
+				getRefreshExecutor().execute(task);
+			} catch (RejectedExecutionException e) {
+				refreshing.set(false);
+			}
+		}
+	}
+}
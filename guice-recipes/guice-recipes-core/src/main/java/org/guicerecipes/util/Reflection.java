@@ -3,12 +3,14 @@ package org.guicerecipes.util;
 import java.lang.annotation.*;
 import java.lang.reflect.*;
 
+import org.guicerecipes.support.internal.*;
+
 public class Reflection {
 
 	public static final Method findMethodWithAnnotation(Class<?> type, Class<? extends Annotation> annotationType, boolean lookInSuperClass) {
 		Class<?> currentClass = type;
 		while (currentClass != Object.class && currentClass != null) {
-			Method[] methods = currentClass.getDeclaredMethods();
+			Method[] methods = InjectionIndex.getDeclaredMethods(currentClass, annotationType);
 			for (Method method : methods) {
 				Annotation fromElement = method.getAnnotation(annotationType);
 				if (fromElement != null) {
@@ -0,0 +1,179 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.guicerecipes.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.guicerecipes.support.*;
+import org.guicerecipes.support.internal.*;
+
+import com.google.common.collect.*;
+import com.google.inject.*;
+
+/**
+ * The objects of a {@link UnitOfWorkScope} for one unit of work, such as the handling of a request. The objects live in this context rather than in the thread, so a unit of work
+ * can be handed from thread to thread, and are closed when the unit of work is closed.
+ * <p>
+ * A unit of work can be forked into a child which sees the objects of its parent but keeps the objects it creates itself, so that work done in parallel can have its own objects
+ * and close them when it completes without closing those of its parent.
+ * <p>
+ * Each object is created by the first thread to ask for it without holding any lock, while other threads asking for the same key wait for it, so a slow object only holds up the
+ * threads which need it and does not pin the carrier thread of a virtual thread. Threads which wait for each other's objects fail instead of deadlocking, as they do in
+ * {@link CloseableScope}. An object whose unit of work is closed while it is being created is closed as soon as it has been created.
+ * 
+ * @version $Revision: 1.1 $
+ */
+public class UnitOfWork {
+	private final UnitOfWork parent;
+	private final Injector injector;
+	// the values are either the objects of this unit of work or the Creation of an object which is still being created
+	private final ConcurrentMap<Key<?>, Object> objects = new ConcurrentHashMap<Key<?>, Object>();
+	private final List<Map.Entry<Key<?>, Object>> created = Lists.newArrayList();
+	private volatile boolean closed;
+
+	UnitOfWork(UnitOfWork parent, Injector injector) {
+		this.parent = parent;
+		this.injector = injector;
+	}
+
+	/**
+	 * Returns a child of this unit of work which sees the objects of this unit of work but keeps the objects it creates
+	 */
+	public UnitOfWork fork() {
+		return new UnitOfWork(this, injector);
+	}
+
+	public UnitOfWork getParent() {
+		return parent;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Returns the object of the given key in this unit of work or its parents, or null if it has not been created yet
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getObject(Key<T> key) {
+		for (UnitOfWork unit = this; unit != null; unit = unit.parent) {
+			Object value = unit.objects.get(key);
+			if (value != null && !(value instanceof Creation)) {
+				return (T) value;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the object of the given key, creating it in this unit of work if neither this unit of work nor its parents have one
+	 */
+	@SuppressWarnings("unchecked")
+	<T> T getObject(Key<T> key, Provider<T> creator) {
+		T value = getObject(key);
+		if (value != null) {
+			return value;
+		}
+		Object o = objects.get(key);
+		if (o == null) {
+			if (closed) {
+				throw new OutOfScopeException("Cannot create " + key + " as the unit of work has been closed");
+			}
+			Creation creation = new Creation(key, creator);
+			o = objects.putIfAbsent(key, creation);
+			if (o == null) {
+				value = (T) creation.create(objects);
+				if (value != null) {
+					created(key, value);
+				}
+				return value;
+			}
+		}
+		if (o instanceof Creation) {
+			o = ((Creation) o).await();
+		}
+		return (T) o;
+	}
+
+	/**
+	 * Records an object created in this unit of work so it is closed with it, or closes it straight away if the unit of work was closed while it was being created
+	 */
+	private void created(Key<?> key, Object value) {
+		synchronized (created) {
+			if (!closed) {
+				created.add(Maps.<Key<?>, Object> immutableEntry(key, value));
+				return;
+			}
+		}
+		objects.remove(key, value);
+		List<Map.Entry<Key<?>, Object>> list = Lists.newArrayList();
+		list.add(Maps.<Key<?>, Object> immutableEntry(key, value));
+		try {
+			close(list);
+		} catch (CloseFailedException e) {
+			throw new OutOfScopeException("The unit of work was closed while " + key + " was being created and it could not be closed: " + e);
+		}
+		throw new OutOfScopeException("Cannot use " + key + " as the unit of work was closed while it was being created");
+	}
+
+	/**
+	 * Closes the objects created in this unit of work in the reverse order to which they were created using the {@link Closer} implementations of the injector. The objects of
+	 * the parents of this unit of work are not closed.
+	 */
+	public void close() throws CloseFailedException {
+		List<Map.Entry<Key<?>, Object>> list;
+		synchronized (created) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			list = Lists.newArrayList(created);
+			created.clear();
+			objects.clear();
+		}
+		close(list);
+	}
+
+	/**
+	 * Closes the given objects in the reverse order
+	 */
+	private void close(List<Map.Entry<Key<?>, Object>> list) throws CloseFailedException {
+		if (injector == null) {
+			return;
+		}
+		Closer closer = Closers.getCloser(injector);
+		CloseRegistry registry = CloseRegistry.getInstance(injector);
+		CloseErrorsImpl errors = new CloseErrorsImpl(this);
+		for (int i = list.size() - 1; i >= 0; i--) {
+			Map.Entry<Key<?>, Object> entry = list.get(i);
+			if (closer != null) {
+				Closers.close(entry.getKey(), entry.getValue(), closer, errors);
+			}
+			if (registry != null) {
+				registry.remove(entry.getValue());
+			}
+		}
+		errors.throwIfNecessary();
+	}
+
+	@Override
+	public String toString() {
+		return "UnitOfWork(" + objects.keySet() + (parent != null ? " parent: " + parent : "") + ")";
+	}
+}
@@ -0,0 +1,191 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.guicerecipes.util;
+
+import java.lang.annotation.*;
+import java.util.concurrent.*;
+
+import org.guicerecipes.support.*;
+
+import com.google.inject.*;
+
+/**
+ * A scope whose objects live in the {@link UnitOfWork} the current thread has entered. The only state held by a thread is which unit of work it is in, which is set by
+ * {@link #enter(UnitOfWork)} and always restored by {@link #exit(UnitOfWork)}, so threads do not keep units of work around once they are done with them. The wrappers returned by
+ * {@link #wrap(Executor)}, {@link #wrap(Callable)} and {@link #wrap(Runnable)} carry the unit of work of the calling thread over to the thread doing the work.
+ * <p>
+ * The scope has to be injected, for example with {@link com.google.inject.Binder#requestInjection(Object)}, for the objects to be closed when their unit of work is closed.
+ * 
+ * <pre>
+ * UnitOfWork unit = scope.begin();
+ * UnitOfWork previous = scope.enter(unit);
+ * try {
+ *     ...
+ * } finally {
+ *     scope.exit(previous);
+ *     unit.close();
+ * }
+ * </pre>
+ * 
+ * @version $Revision: 1.1 $
+ */
+public class UnitOfWorkScope implements Scope, HasScopeAnnotation {
+	private final ThreadLocal<UnitOfWork> current = new ThreadLocal<UnitOfWork>();
+	private final Class<? extends Annotation> scopeAnnotation;
+
+	@Inject
+	private Injector injector;
+
+	public UnitOfWorkScope() {
+		this(UnitOfWorkScoped.class);
+	}
+
+	public UnitOfWorkScope(Class<? extends Annotation> scopeAnnotation) {
+		this.scopeAnnotation = scopeAnnotation;
+	}
+
+	public <T> Provider<T> scope(final Key<T> key, final Provider<T> creator) {
+		return new CachingProvider<T>() {
+			public T get() {
+				return getCurrent(key).getObject(key, creator);
+			}
+
+			public T getCachedValue() {
+				UnitOfWork unit = current.get();
+				return unit != null ? unit.getObject(key) : null;
+			}
+
+			@Override
+			public String toString() {
+				return creator + "[" + scopeAnnotation.getName() + "]";
+			}
+		};
+	}
+
+	public Class<? extends Annotation> getScopeAnnotation() {
+		return scopeAnnotation;
+	}
+
+	/**
+	 * Creates a new unit of work which the current thread has not entered yet
+	 */
+	public UnitOfWork begin() {
+		return new UnitOfWork(null, injector);
+	}
+
+	/**
+	 * Returns the unit of work of the current thread or null if it is not in one
+	 */
+	public UnitOfWork getCurrent() {
+		return current.get();
+	}
+
+	/**
+	 * Makes the given unit of work the unit of work of the current thread
+	 * 
+	 * @return the previous unit of work of the current thread to pass to {@link #exit(UnitOfWork)}, which may be null
+	 */
+	public UnitOfWork enter(UnitOfWork unit) {
+		UnitOfWork previous = current.get();
+		current.set(unit);
+		return previous;
+	}
+
+	/**
+	 * Restores the unit of work the current thread was in before it entered its current unit of work
+	 */
+	public void exit(UnitOfWork previous) {
+		if (previous == null) {
+			current.remove();
+		} else {
+			current.set(previous);
+		}
+	}
+
+	/**
+	 * Calls the given callable in a new unit of work, closing the unit of work once the callable has completed
+	 */
+	public <T> T call(Callable<T> callable) throws Exception {
+		UnitOfWork unit = begin();
+		UnitOfWork previous = enter(unit);
+		try {
+			return callable.call();
+		} finally {
+			exit(previous);
+			unit.close();
+		}
+	}
+
+	/**
+	 * Returns a callable which calls the given callable in the unit of work of the thread calling this method
+	 */
+	public <T> Callable<T> wrap(final Callable<T> callable) {
+		final UnitOfWork unit = current.get();
+		return new Callable<T>() {
+			public T call() throws Exception {
+				UnitOfWork previous = enter(unit);
+				try {
+					return callable.call();
+				} finally {
+					exit(previous);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns a runnable which runs the given runnable in the unit of work of the thread calling this method
+	 */
+	public Runnable wrap(final Runnable runnable) {
+		final UnitOfWork unit = current.get();
+		return new Runnable() {
+			public void run() {
+				UnitOfWork previous = enter(unit);
+				try {
+					runnable.run();
+				} finally {
+					exit(previous);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns an executor which runs each task in the unit of work of the thread submitting it
+	 */
+	public Executor wrap(final Executor executor) {
+		return new Executor() {
+			public void execute(Runnable command) {
+				executor.execute(wrap(command));
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		return "UnitOfWorkScope(" + scopeAnnotation.getName() + ")";
+	}
+
+	private UnitOfWork getCurrent(Key<?> key) {
+		UnitOfWork unit = current.get();
+		if (unit == null) {
+			throw new OutOfScopeException("Cannot access " + key + " outside of a unit of work");
+		}
+		return unit;
+	}
+}
@@ -18,9 +18,15 @@
 
 package org.guicerecipes;
 
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
 import junit.framework.*;
 
+import com.google.common.collect.*;
 import com.google.inject.*;
+import com.google.inject.name.*;
 
 /** @version $Revision: 1.1 $ */
 public class InjectorsTest extends TestCase {
@@ -34,6 +40,40 @@ public class InjectorsTest extends TestCase {
 		//assertMatches(Injectors.getInstancesOf(injector, Matchers.subclassesOf(C.class).and(Matchers.annotatedWith(Blue.class))), hasSize(1));
 	}
 
+	public void testIterateInstancesOfCreatesInstancesOnDemand() throws Exception {
+		Injector injector = Guice.createInjector(new PluginModule());
+		Plugin.created.set(0);
+
+		Iterator<Plugin> iter = Injectors.iterateInstancesOf(injector, Plugin.class).iterator();
+		assertEquals(0, Plugin.created.get());
+		assertEquals("p0", iter.next().name);
+		assertEquals(1, Plugin.created.get());
+
+		List<String> names = Lists.newArrayList();
+		for (Plugin plugin : Injectors.iterateInstancesOf(injector, Plugin.class)) {
+			names.add(plugin.name);
+		}
+		assertEquals(Arrays.asList("p0", "p1", "p2", "p3", "p4"), names);
+	}
+
+	public void testIterateInstancesOfInParallel() throws Exception {
+		Injector injector = Guice.createInjector(new PluginModule());
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			List<String> names = Lists.newArrayList();
+			for (Plugin plugin : Injectors.iterateInstancesOf(injector, Plugin.class, executor, 2)) {
+				names.add(plugin.name);
+			}
+			assertEquals("Should keep the binding order", Arrays.asList("p0", "p1", "p2", "p3", "p4"), names);
+
+			Plugin.created.set(0);
+			Injectors.iterateInstancesOf(injector, Plugin.class, executor, 2).iterator().next();
+			assertTrue("Should only read ahead 2 instances but created " + Plugin.created.get(), Plugin.created.get() <= 2);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
 	public static class MyModule extends AbstractModule {
 		@Override
 		protected void configure() {
@@ -59,4 +99,28 @@ public class InjectorsTest extends TestCase {
 		}
 	}
 
+	public static class PluginModule extends AbstractModule {
+		@Override
+		protected void configure() {
+			for (int i = 0; i < 5; i++) {
+				final String name = "p" + i;
+				bind(Plugin.class).annotatedWith(Names.named(name)).toProvider(new Provider<Plugin>() {
+					public Plugin get() {
+						return new Plugin(name);
+					}
+				});
+			}
+		}
+	}
+
+	public static class Plugin {
+		static final AtomicInteger created = new AtomicInteger();
+		public final String name;
+
+		public Plugin(String name) {
+			this.name = name;
+			created.incrementAndGet();
+		}
+	}
+
 }
@@ -0,0 +1,188 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+import org.guicerecipes.support.*;
+import org.guicerecipes.support.internal.*;
+import org.guicerecipes.testing.*;
+import org.guicerecipes.util.*;
+
+import com.google.common.collect.*;
+import com.google.inject.*;
+
+/** @version $Revision: 1.1 $ */
+public class WarmUpTest extends TestCase {
+	static CyclicBarrier barrier;
+	static volatile Thread creatingThread;
+
+	private ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	@Override
+	protected void tearDown() throws Exception {
+		executor.shutdown();
+		super.tearDown();
+	}
+
+	public void testCreatesSingletonsAfterTheirDependencies() throws Exception {
+		InjectorProfiler profiler = new InjectorProfiler();
+		Injector injector = Injectors.createInjector(profiler, new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(First.class).in(Singleton.class);
+				bind(Second.class).in(Singleton.class);
+				bind(Third.class).in(Singleton.class);
+				bind(Other.class).in(Singleton.class);
+			}
+		});
+
+		List<List<Binding<?>>> levels = new DependencyLevels(injector, Singleton.class, false).getLevels();
+		assertEquals(3, levels.size());
+		assertEquals(Sets.newHashSet(Key.get(First.class), Key.get(Other.class)), keysOf(levels.get(0)));
+		assertEquals(Sets.newHashSet(Key.get(Second.class)), keysOf(levels.get(1)));
+		assertEquals("Should follow the unscoped dependency", Sets.newHashSet(Key.get(Third.class)), keysOf(levels.get(2)));
+
+		Map<Key<?>, Long> times = Injectors.warmUp(injector, executor);
+		assertEquals(4, times.size());
+		List<Key<?>> keys = Lists.newArrayList(times.keySet());
+		assertTrue(keys.indexOf(Key.get(First.class)) < keys.indexOf(Key.get(Second.class)));
+		assertEquals(Key.get(Third.class), keys.get(3));
+		for (Long time : times.values()) {
+			assertTrue(time >= 0);
+		}
+
+		Third third = injector.getInstance(Third.class);
+		assertSame(third, injector.getInstance(Third.class));
+		assertSame(injector.getInstance(First.class), third.unscoped.first);
+
+		boolean recorded = false;
+		for (InjectorProfiler.Sample sample : profiler.getSamples()) {
+			recorded |= sample.getCategory().equals(InjectorProfiler.WARM_UP);
+		}
+		assertTrue("Should have recorded the warm up in the profiler", recorded);
+	}
+
+	public void testCreatesSingletonsInTheCallingThread() throws Exception {
+		Injector injector = Guice.createInjector(new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(Recording.class).in(Singleton.class);
+			}
+		});
+
+		Injectors.warmUp(injector, executor);
+		assertSame(Thread.currentThread(), creatingThread);
+	}
+
+	public void testCreatesOtherScopesInParallel() throws Exception {
+		barrier = new CyclicBarrier(2);
+		Injector injector = Guice.createInjector(new AbstractModule() {
+			@Override
+			protected void configure() {
+				bindScope(ClassScoped.class, new CloseableScope(ClassScoped.class));
+				bind(Waiting.class).in(ClassScoped.class);
+				bind(OtherWaiting.class).in(ClassScoped.class);
+			}
+		});
+
+		// each object waits for the other so this only completes if they are created concurrently
+		Map<Key<?>, Long> times = Injectors.warmUp(injector, ClassScoped.class, executor);
+		assertEquals(2, times.size());
+		assertTrue(injector.getInstance(Waiting.class).created);
+		assertTrue(injector.getInstance(OtherWaiting.class).created);
+	}
+
+	public void testThrowsFailures() throws Exception {
+		Injector injector = Guice.createInjector(new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(Failing.class).in(Singleton.class);
+			}
+		});
+		try {
+			Injectors.warmUp(injector, executor);
+			fail("Should have thrown");
+		} catch (ProvisionException e) {
+			// expected
+		}
+	}
+
+	protected Set<Key<?>> keysOf(List<Binding<?>> bindings) {
+		Set<Key<?>> answer = Sets.newHashSet();
+		for (Binding<?> binding : bindings) {
+			answer.add(binding.getKey());
+		}
+		return answer;
+	}
+
+	public static class First {
+	}
+
+	public static class Other {
+	}
+
+	public static class Second {
+		@Inject
+		First first;
+	}
+
+	public static class Unscoped {
+		@Inject
+		First first;
+		@Inject
+		Second second;
+	}
+
+	public static class Third {
+		@Inject
+		Unscoped unscoped;
+		@Inject
+		Provider<Other> other;
+	}
+
+	public static class Recording {
+		public Recording() {
+			creatingThread = Thread.currentThread();
+		}
+	}
+
+	public static class Waiting {
+		final boolean created;
+
+		public Waiting() throws Exception {
+			barrier.await(10, TimeUnit.SECONDS);
+			created = true;
+		}
+	}
+
+	public static class OtherWaiting extends Waiting {
+		public OtherWaiting() throws Exception {
+		}
+	}
+
+	public static class Failing {
+		public Failing() {
+			throw new IllegalStateException("Failed to start");
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.jsr250;
+
+import java.util.concurrent.*;
+
+import javax.annotation.*;
+
+import junit.framework.*;
+
+import com.google.inject.*;
+
+/** @version $Revision: 1.1 $ */
+public class AsyncPostConstructTest extends TestCase {
+	static CyclicBarrier barrier;
+
+	@Override
+	protected void setUp() throws Exception {
+		barrier = new CyclicBarrier(2);
+	}
+
+	public void testInitialisersRunConcurrently() throws Exception {
+		// the default executor may only have one thread
+		Jsr250Module module = new Jsr250Module();
+		module.setPostConstructExecutor(Executors.newFixedThreadPool(2));
+		Injector injector = Guice.createInjector(module, new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(SlowBean.class).asEagerSingleton();
+				bind(AnotherSlowBean.class).asEagerSingleton();
+			}
+		});
+
+		// each bean waits for the other so this only completes if they are initialised concurrently
+		injector.getInstance(ReadinessFuture.class).get(10, TimeUnit.SECONDS);
+		assertTrue(injector.getInstance(ReadinessFuture.class).isDone());
+		assertTrue("Should have initialised the bean", injector.getInstance(SlowBean.class).initialised);
+		assertTrue("Should have initialised the other bean", injector.getInstance(AnotherSlowBean.class).initialised);
+	}
+
+	public void testFailuresAreReported() throws Exception {
+		Injector injector = Guice.createInjector(new Jsr250Module());
+
+		injector.getInstance(FailingBean.class);
+		try {
+			injector.getInstance(ReadinessFuture.class).get(10, TimeUnit.SECONDS);
+			fail("Should have failed");
+		} catch (ExecutionException e) {
+			assertTrue("Should have been caused by the method but was " + e.getCause(), e.getCause() instanceof IllegalStateException);
+		}
+		assertEquals(1, injector.getInstance(ReadinessFuture.class).getFailures().size());
+	}
+
+	public void testOtherInitialisersRunBeforeInjection() throws Exception {
+		Injector injector = Guice.createInjector(new Jsr250Module());
+
+		assertTrue("Should have initialised the bean", injector.getInstance(PlainBean.class).initialised);
+		assertTrue(injector.getInstance(ReadinessFuture.class).isDone());
+	}
+
+	public void testEachInjectorHasItsOwnReadinessFuture() throws Exception {
+		Jsr250Module module = new Jsr250Module();
+		Injector injector = Guice.createInjector(module);
+		Injector another = Guice.createInjector(module);
+
+		injector.getInstance(FailingBean.class);
+		try {
+			injector.getInstance(ReadinessFuture.class).get(10, TimeUnit.SECONDS);
+			fail("Should have failed");
+		} catch (ExecutionException e) {
+			// expected
+		}
+		assertNotSame(injector.getInstance(ReadinessFuture.class), another.getInstance(ReadinessFuture.class));
+		assertTrue("Should not see the failure of the other injector", another.getInstance(ReadinessFuture.class).getFailures().isEmpty());
+	}
+
+	public static class SlowBean {
+		volatile boolean initialised;
+
+		@PostConstruct
+		@AsyncPostConstruct
+		public void start() throws Exception {
+			barrier.await(10, TimeUnit.SECONDS);
+			initialised = true;
+		}
+	}
+
+	public static class AnotherSlowBean extends SlowBean {
+	}
+
+	public static class PlainBean {
+		boolean initialised;
+
+		@PostConstruct
+		public void start() {
+			initialised = true;
+		}
+	}
+
+	public static class FailingBean {
+		@PostConstruct
+		@AsyncPostConstruct
+		public void start() {
+			throw new IllegalStateException("Failed to start");
+		}
+	}
+}
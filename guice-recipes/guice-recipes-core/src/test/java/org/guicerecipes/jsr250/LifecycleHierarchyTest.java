@@ -0,0 +1,131 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.jsr250;
+
+import java.util.*;
+
+import javax.annotation.*;
+
+import junit.framework.*;
+
+import org.guicerecipes.*;
+
+import com.google.inject.*;
+
+/** @version $Revision: 1.1 $ */
+public class LifecycleHierarchyTest extends TestCase {
+
+	public void testLifecycleMethodsInvokedInOrder() throws Exception {
+		Injector injector = Guice.createInjector(new Jsr250Module(), new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(SubBean.class).in(Singleton.class);
+			}
+		});
+
+		SubBean bean = injector.getInstance(SubBean.class);
+		assertEquals(Arrays.asList("base start", "sub start"), bean.calls);
+
+		bean.calls.clear();
+		Injectors.close(injector);
+		assertEquals(Arrays.asList("sub stop", "base stop"), bean.calls);
+	}
+
+	public void testOverriddenMethodNotInvoked() throws Exception {
+		Injector injector = Guice.createInjector(new Jsr250Module());
+
+		OverridingBean bean = injector.getInstance(OverridingBean.class);
+		assertTrue("An overriding method which is not annotated should not be invoked: " + bean.calls, bean.calls.isEmpty());
+	}
+
+	public void testPrivateMethodsWithTheSameNameAreAllInvoked() throws Exception {
+		Injector injector = Guice.createInjector(new Jsr250Module(), new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(PrivateSubBean.class).in(Singleton.class);
+			}
+		});
+
+		PrivateSubBean bean = injector.getInstance(PrivateSubBean.class);
+		assertEquals("Private methods are not overridden", Arrays.asList("base", "sub"), bean.calls);
+
+		bean.calls.clear();
+		Injectors.close(injector);
+		assertEquals(Arrays.asList("sub stop", "base stop"), bean.calls);
+	}
+
+	public static class BaseBean {
+		List<String> calls = new ArrayList<String>();
+
+		@PostConstruct
+		public void start() {
+			calls.add("base start");
+		}
+
+		@PreDestroy
+		private void stop() {
+			calls.add("base stop");
+		}
+	}
+
+	public static class SubBean extends BaseBean {
+		@PostConstruct
+		void subStart() {
+			calls.add("sub start");
+		}
+
+		@PreDestroy
+		protected void subStop() {
+			calls.add("sub stop");
+		}
+	}
+
+	public static class OverridingBean extends BaseBean {
+		@Override
+		public void start() {
+			calls.add("sub start");
+		}
+	}
+
+	public static class PrivateBaseBean {
+		List<String> calls = new ArrayList<String>();
+
+		@PostConstruct
+		private void init() {
+			calls.add("base");
+		}
+
+		@PreDestroy
+		private void stop() {
+			calls.add("base stop");
+		}
+	}
+
+	public static class PrivateSubBean extends PrivateBaseBean {
+		@PostConstruct
+		private void init() {
+			calls.add("sub");
+		}
+
+		@PreDestroy
+		private void stop() {
+			calls.add("sub stop");
+		}
+	}
+}
@@ -0,0 +1,215 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.jsr250;
+
+import java.lang.annotation.*;
+import java.lang.reflect.*;
+import java.util.concurrent.atomic.*;
+
+import javax.annotation.*;
+
+import junit.framework.*;
+
+import org.guicerecipes.*;
+import org.guicerecipes.support.*;
+
+import com.google.common.base.*;
+import com.google.inject.*;
+
+import static java.lang.annotation.ElementType.*;
+import static java.lang.annotation.RetentionPolicy.*;
+
+/**
+ * @version $Revision: 1.1 $
+ */
+public class ResourceLazyTest extends TestCase {
+	private final AtomicInteger created = new AtomicInteger();
+
+	public void testLazyResourceInjection() throws Exception {
+		Injector injector = Guice.createInjector(new Jsr250Module() {
+			@Override
+			protected void configure() {
+				super.configure();
+
+				bind(MyBean.class);
+				bind(Greeter.class, "xyz").toProvider(new GreeterProvider("XYZ"));
+				bind(Greeter.class, "foo").toProvider(new GreeterProvider("Foo"));
+			}
+		});
+
+		MyBean bean = injector.getInstance(MyBean.class);
+		assertNotNull("Should have injected a foo", bean.foo);
+		assertNotNull("Should have injected a bar", bean.bar);
+		assertNotNull("Should have injected a supplier", bean.supplier);
+		assertEquals("Should not have resolved any greeters yet", 0, created.get());
+
+		assertEquals("Foo", bean.foo.get().greet());
+		assertSame("Should only resolve the value once", bean.foo.get(), bean.foo.get());
+		assertEquals(1, created.get());
+
+		assertEquals("XYZ", bean.bar.greet());
+		assertEquals("XYZ", bean.bar.greet());
+		assertEquals(2, created.get());
+
+		assertEquals("XYZ", bean.supplier.get().greet());
+		assertEquals(3, created.get());
+	}
+
+	public void testLazyInjectionOfModule() throws Exception {
+		Injector injector = Guice.createInjector(new Jsr250Module() {
+			@Override
+			protected void configure() {
+				super.configure();
+				setLazyInjection(true);
+
+				bind(EagerBean.class);
+				bind(Greeter.class, "foo").toProvider(new GreeterProvider("Foo"));
+				bind(AnotherBean.class, "another").toInstance(new AnotherBean());
+			}
+		});
+
+		EagerBean bean = injector.getInstance(EagerBean.class);
+		assertNotNull("Should have injected a foo", bean.foo);
+		assertNotNull("Should have injected another", bean.another);
+		assertEquals("Should not have resolved the greeter yet", 0, created.get());
+
+		assertEquals("Foo", bean.foo.greet());
+		assertEquals(1, created.get());
+	}
+
+	public void testProxiesAreOnlyEqualToThemselves() throws Exception {
+		Injector injector = Guice.createInjector(new Jsr250Module() {
+			@Override
+			protected void configure() {
+				super.configure();
+
+				bind(MyBean.class);
+				bind(Greeter.class, "xyz").toProvider(new GreeterProvider("XYZ"));
+				bind(Greeter.class, "foo").toProvider(new GreeterProvider("Foo"));
+			}
+		});
+
+		MyBean bean = injector.getInstance(MyBean.class);
+		assertTrue(bean.bar.equals(bean.bar));
+		assertFalse(bean.bar.equals(injector.getInstance(MyBean.class).bar));
+		assertEquals(bean.bar.hashCode(), bean.bar.hashCode());
+		assertEquals("Should not have resolved the greeter to compare it", 0, created.get());
+	}
+
+	public void testOptionalValuesAreNotProxied() throws Exception {
+		Injector injector = Guice.createInjector(new GuiceyFruitModule() {
+			@Override
+			protected void configure() {
+				super.configure();
+				setLazyInjection(true);
+
+				bindAnnotationInjector(Optional.class, new AnnotationMemberProviderSupport<Optional>() {
+					@Override
+					protected Object provide(Optional annotation, Member member, TypeLiteral<?> requiredType, Class<?> memberType, Annotation[] annotations) {
+						return null;
+					}
+
+					public boolean isNullParameterAllowed(Optional annotation, Method method, Class<?> parameterType, int parameterIndex) {
+						return true;
+					}
+				});
+				bind(OptionalBean.class);
+			}
+		});
+
+		OptionalBean bean = injector.getInstance(OptionalBean.class);
+		assertNull("Should have injected null rather than a proxy", bean.field);
+		assertTrue("Should have invoked the method", bean.invoked);
+		assertNull("Should have passed null rather than a proxy", bean.parameter);
+		assertNotNull("Should still inject a holder", bean.provider);
+		assertNull(bean.provider.get());
+	}
+
+	public interface Greeter {
+		String greet();
+	}
+
+	public static class MyBean {
+		@Resource
+		@Lazy
+		public Provider<Greeter> foo;
+
+		@Resource(name = "xyz")
+		@Lazy
+		public Greeter bar;
+
+		public Supplier<Greeter> supplier;
+
+		@Resource(name = "xyz")
+		public void supplier(@Lazy Supplier<Greeter> supplier) {
+			this.supplier = supplier;
+		}
+	}
+
+	public static class EagerBean {
+		@Resource
+		public Greeter foo;
+
+		/** not an interface so is injected eagerly */
+		@Resource
+		public AnotherBean another;
+	}
+
+	public static class AnotherBean {
+	}
+
+	@Target( { FIELD, METHOD })
+	@Retention(RUNTIME)
+	public @interface Optional {
+	}
+
+	public static class OptionalBean {
+		@Optional
+		public Greeter field;
+
+		@Optional
+		public Provider<Greeter> provider;
+
+		public Greeter parameter;
+		public boolean invoked;
+
+		@Optional
+		public void parameter(Greeter parameter) {
+			this.parameter = parameter;
+			invoked = true;
+		}
+	}
+
+	class GreeterProvider implements Provider<Greeter> {
+		private final String name;
+
+		GreeterProvider(String name) {
+			this.name = name;
+		}
+
+		public Greeter get() {
+			created.incrementAndGet();
+			return new Greeter() {
+				public String greet() {
+					return name;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2006 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.jsr250;
+
+import javax.annotation.*;
+
+import junit.framework.*;
+
+import com.google.inject.*;
+
+/** @version $Revision: 1.1 $ */
+public class ResourceWithGeneratedInjectorsTest extends TestCase {
+
+	public void testResourceInjection() throws Exception {
+		Injector injector = createInjector(MyBean.class);
+
+		MyBean bean = injector.getInstance(MyBean.class);
+		assertNotNull("Should have instantiated the bean", bean);
+		assertEquals("Should have injected correct foo", "Foo", bean.foo.name);
+		assertEquals("Should have injected correct private foo", "Foo", bean.privateFoo.name);
+		assertEquals("Should have injected correct bar", "XYZ", bean.bar.name);
+		assertEquals("Should have injected correct timeout", 5, bean.timeout);
+		assertEquals("Should have injected correct first", "Both", bean.first.name);
+		assertEquals("Should have injected correct second", "Both", bean.second.name);
+	}
+
+	public void testInjectionFailureIsWrapped() throws Exception {
+		Injector injector = createInjector(FailingBean.class);
+
+		try {
+			injector.getInstance(FailingBean.class);
+			fail("Should have failed to inject");
+		} catch (ProvisionException e) {
+			assertTrue("Should report the failed method: " + e.getMessage(), e.getMessage().contains("Failed to inject method"));
+			Throwable cause = e;
+			while (cause.getCause() != null) {
+				cause = cause.getCause();
+			}
+			assertTrue("Should have been caused by the method but was " + cause, cause instanceof IllegalStateException);
+			assertTrue("Should be invoked by a generated injector", isGeneratedInjectorFrame(cause.getStackTrace()));
+		}
+	}
+
+	protected Injector createInjector(final Class<?> beanType) {
+		Jsr250Module module = new Jsr250Module() {
+			@Override
+			protected void configure() {
+				super.configure();
+
+				bind(beanType);
+				bindInstance("foo", new AnotherBean("Foo"));
+				bindInstance("privateFoo", new AnotherBean("Foo"));
+				bindInstance("xyz", new AnotherBean("XYZ"));
+				bindInstance("both", new AnotherBean("Both"));
+				bindInstance("timeout", 5);
+			}
+		};
+		module.setGenerateMembersInjectors(true);
+		return Guice.createInjector(module);
+	}
+
+	protected boolean isGeneratedInjectorFrame(StackTraceElement[] elements) {
+		for (StackTraceElement element : elements) {
+			if (element.getClassName().contains("$$MembersInjectorByGuiceRecipes$$")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public static class MyBean {
+		@Resource
+		public AnotherBean foo;
+
+		@Resource
+		private AnotherBean privateFoo;
+
+		@Resource
+		int timeout;
+
+		AnotherBean bar;
+		AnotherBean first;
+		AnotherBean second;
+
+		@Resource(name = "xyz")
+		void bar(AnotherBean bar) {
+			this.bar = bar;
+		}
+
+		@Resource
+		public void both(AnotherBean first, AnotherBean second) {
+			this.first = first;
+			this.second = second;
+		}
+	}
+
+	public static class FailingBean {
+		@Resource(name = "xyz")
+		public void bar(AnotherBean bar) {
+			throw new IllegalStateException("Failed on purpose");
+		}
+	}
+
+	static class AnotherBean {
+		public String name = "undefined";
+
+		AnotherBean(String name) {
+			this.name = name;
+		}
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.jsr250;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+import javax.annotation.*;
+
+import junit.framework.*;
+
+import org.guicerecipes.support.internal.*;
+
+import com.google.inject.*;
+
+/** @version $Revision: 1.1 $ */
+public class ResourceWithInjectionIndexTest extends TestCase {
+
+	public void testTestClassesAreIndexed() throws Exception {
+		InjectionIndex.Entry entry = InjectionIndex.getEntry(MyBean.class, Resource.class);
+		assertNotNull("The test classes should have been indexed", entry);
+		assertEquals(Arrays.asList(MyBean.class.getDeclaredField("foo")), Arrays.asList(entry.getDeclaredFields(MyBean.class)));
+		Method[] methods = entry.getDeclaredMethods(MyBean.class);
+		assertEquals(Arrays.asList(MyBean.class.getDeclaredMethod("bar", AnotherBean.class)), Arrays.asList(methods));
+		assertEquals("Should list a method overriding an annotated method", Arrays.asList(OverridingBean.class.getDeclaredMethod("bar", AnotherBean.class)), Arrays.asList(InjectionIndex
+				.getEntry(OverridingBean.class, Resource.class).getDeclaredMethods(OverridingBean.class)));
+
+		assertEquals("Should not list any members of an unannotated class", 0, InjectionIndex.getEntry(AnotherBean.class, Resource.class).getDeclaredMethods(AnotherBean.class).length);
+		assertFalse("Should not cover other annotations", entry.covers(Override.class));
+	}
+
+	public void testResourceInjection() throws Exception {
+		Injector injector = createInjector(MyBean.class);
+
+		MyBean bean = injector.getInstance(MyBean.class);
+		assertEquals("Should have injected correct foo", "Foo", bean.foo.name);
+		assertEquals("Should have injected correct bar", "XYZ", bean.bar.name);
+	}
+
+	public void testOverriddenMethodIsNotInjected() throws Exception {
+		Injector injector = createInjector(OverridingBean.class);
+
+		OverridingBean bean = injector.getInstance(OverridingBean.class);
+		assertEquals("Should have injected correct foo", "Foo", bean.foo.name);
+		assertNull("Should not inject a method overridden without @Resource", bean.bar);
+	}
+
+	protected Injector createInjector(final Class<?> beanType) {
+		return Guice.createInjector(new Jsr250Module() {
+			@Override
+			protected void configure() {
+				super.configure();
+
+				bind(beanType);
+				bindInstance("foo", new AnotherBean("Foo"));
+				bindInstance("xyz", new AnotherBean("XYZ"));
+			}
+		});
+	}
+
+	public static class MyBean {
+		@Resource
+		public AnotherBean foo;
+
+		public AnotherBean bar;
+
+		@Resource(name = "xyz")
+		public void bar(AnotherBean bar) {
+			this.bar = bar;
+		}
+
+		public void notInjected(AnotherBean bar) {
+			throw new IllegalStateException("Should not be invoked");
+		}
+
+		public void bar(String bar) {
+			throw new IllegalStateException("Should not be invoked");
+		}
+	}
+
+	public static class OverridingBean extends MyBean {
+		@Override
+		public void bar(AnotherBean bar) {
+			// not annotated so should not be injected
+		}
+	}
+
+	static class AnotherBean {
+		public String name = "undefined";
+
+		AnotherBean(String name) {
+			this.name = name;
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.metrics;
+
+import java.lang.annotation.*;
+import java.util.*;
+
+import javax.annotation.*;
+import javax.management.*;
+import javax.naming.*;
+
+import junit.framework.*;
+
+import org.guicerecipes.*;
+import org.guicerecipes.jndi.internal.*;
+import org.guicerecipes.jsr250.*;
+import org.guicerecipes.util.*;
+
+import com.google.inject.*;
+
+/** @version $Revision: 1.1 $ */
+public class JmxMetricsRecorderTest extends TestCase {
+	private JmxMetricsRecorder recorder = new JmxMetricsRecorder();
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		Metrics.setRecorder(recorder);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		Metrics.setRecorder(null);
+		super.tearDown();
+	}
+
+	public void testRecordsHotPaths() throws Exception {
+		final CloseableScope scope = new CloseableScope(MyScoped.class);
+		Injector injector = Guice.createInjector(new Jsr250Module() {
+			@Override
+			protected void configure() {
+				super.configure();
+				bindScope(MyScoped.class, scope);
+				bind(MyBean.class).in(MyScoped.class);
+				bindInstance("foo", "Foo");
+			}
+		});
+
+		MyBean bean = injector.getInstance(MyBean.class);
+		assertSame(bean, injector.getInstance(MyBean.class));
+		assertEquals("Foo", bean.foo);
+		Injectors.close(injector, MyScoped.class);
+		assertTrue(bean.closed);
+
+		assertEquals(1, recorder.getCount(Metrics.PROVISION + Resource.class.getName()));
+		assertEquals(1, recorder.getCount(Metrics.LIFECYCLE + PostConstruct.class.getName()));
+		assertEquals(1, recorder.getCount(Metrics.LIFECYCLE + PreDestroy.class.getName()));
+		String scopeName = Metrics.SCOPE + MyScoped.class.getName();
+		assertEquals(1, recorder.getCount(scopeName + Metrics.MISS));
+		assertEquals(1, recorder.getCount(scopeName + Metrics.CREATE));
+		assertTrue(recorder.getCount(scopeName + Metrics.HIT) >= 1);
+		assertEquals(1, recorder.getCount(Metrics.CLOSE + MyScoped.class.getName()));
+
+		JndiContext context = new JndiContext();
+		context.bind("bar", "Bar");
+		assertEquals("Bar", context.lookup("bar"));
+		try {
+			context.lookup("cheese");
+			fail("Should not have found cheese");
+		} catch (NameNotFoundException e) {
+			// expected
+		}
+		assertEquals(2, recorder.getCount(Metrics.JNDI_LOOKUP));
+		assertEquals(1, recorder.getCount(Metrics.JNDI_NOT_FOUND));
+	}
+
+	public void testMBeanAttributes() throws Exception {
+		MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+		recorder.register(mbeanServer);
+		try {
+			recorder.increment("cheese");
+			recorder.record("lookup", 100);
+			recorder.record("lookup", 1000);
+			recorder.record("lookup", 100000);
+
+			ObjectName name = new ObjectName(JmxMetricsRecorder.DEFAULT_OBJECT_NAME);
+			assertEquals(1L, mbeanServer.getAttribute(name, "cheese.count"));
+			assertEquals(3L, mbeanServer.getAttribute(name, "lookup.count"));
+			assertEquals(101100L, mbeanServer.getAttribute(name, "lookup.totalNanos"));
+			assertEquals(100000L, mbeanServer.getAttribute(name, "lookup.maxNanos"));
+			assertEquals(1023L, mbeanServer.getAttribute(name, "lookup.p50Nanos"));
+			assertEquals(131071L, mbeanServer.getAttribute(name, "lookup.p99Nanos"));
+
+			Set<String> attributes = new HashSet<String>();
+			for (MBeanAttributeInfo info : mbeanServer.getMBeanInfo(name).getAttributes()) {
+				attributes.add(info.getName());
+			}
+			assertTrue(attributes.toString(), attributes.containsAll(Arrays.asList("cheese.count", "lookup.count", "lookup.p90Nanos")));
+			assertFalse(attributes.toString(), attributes.contains("cheese.p90Nanos"));
+
+			mbeanServer.invoke(name, "reset", new Object[0], new String[0]);
+			assertEquals(0, recorder.getNames().size());
+		} finally {
+			recorder.unregister();
+		}
+	}
+
+	@Target( { ElementType.TYPE, ElementType.METHOD })
+	@Retention(RetentionPolicy.RUNTIME)
+	@ScopeAnnotation
+	public @interface MyScoped {
+	}
+
+	public static class MyBean {
+		@Resource
+		String foo;
+
+		boolean closed;
+
+		@PostConstruct
+		public void start() {
+		}
+
+		@PreDestroy
+		public void stop() {
+			closed = true;
+		}
+	}
+}
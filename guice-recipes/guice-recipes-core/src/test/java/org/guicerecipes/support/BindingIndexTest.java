@@ -0,0 +1,118 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.support;
+
+import java.util.*;
+
+import junit.framework.*;
+
+import org.guicerecipes.*;
+
+import com.google.inject.*;
+import com.google.inject.name.*;
+
+/** @version $Revision: 1.1 $ */
+public class BindingIndexTest extends TestCase {
+
+	public void testIndexesSupertypesAndInterfaces() throws Exception {
+		Injector injector = Guice.createInjector(new MyModule());
+
+		assertEquals(Arrays.asList("a", "b", "c"), namesOf(Injectors.getInstancesOf(injector, Service.class)));
+		assertEquals(Arrays.asList("b", "c"), namesOf(Injectors.getInstancesOf(injector, SubService.class)));
+		assertEquals(Arrays.asList("c"), namesOf(Injectors.getInstancesOf(injector, Tagged.class)));
+		assertEquals("Should only include keys of the abstract type", Arrays.asList("c"), namesOf(Injectors.getInstancesOf(injector, AbstractService.class)));
+		assertTrue(Injectors.hasBinding(injector, Service.class));
+		assertFalse(Injectors.hasBinding(injector, Runnable.class));
+
+		BindingIndex index = BindingIndex.getInstance(injector);
+		assertSame("Should cache the index per injector", index, BindingIndex.getInstance(injector));
+		assertEquals(Injectors.getBindingsOf(injector, Object.class).size(), index.getBindingsOf(Object.class).size());
+	}
+
+	public void testIndexesParameterizedTypes() throws Exception {
+		Injector injector = Guice.createInjector(new MyModule());
+
+		Set<Collection<String>> strings = Injectors.getInstancesOf(injector, new TypeLiteral<Collection<String>>() {});
+		assertEquals(1, strings.size());
+		assertEquals(Arrays.asList("x"), strings.iterator().next());
+
+		assertEquals(1, Injectors.getBindingsOf(injector, new TypeLiteral<Iterable<Integer>>() {}).size());
+		assertEquals(0, Injectors.getBindingsOf(injector, new TypeLiteral<Iterable<Long>>() {}).size());
+		assertEquals("Raw class lookups only include class keys", 0, Injectors.getBindingsOf(injector, List.class).size());
+	}
+
+	protected List<String> namesOf(Collection<?> services) {
+		List<String> answer = new ArrayList<String>();
+		for (Object service : services) {
+			answer.add(((Service) service).getName());
+		}
+		return answer;
+	}
+
+	public static class MyModule extends AbstractModule {
+		@Override
+		protected void configure() {
+			bind(Service.class).annotatedWith(Names.named("a")).toInstance(new BasicService("a"));
+			bind(SubService.class).annotatedWith(Names.named("b")).toInstance(new BasicSubService("b"));
+			bind(TaggedService.class).toInstance(new TaggedService("c"));
+			bind(new TypeLiteral<List<String>>() {}).toInstance(Arrays.asList("x"));
+			bind(new TypeLiteral<Set<Integer>>() {}).toInstance(Collections.singleton(1));
+		}
+	}
+
+	public static interface Service {
+		String getName();
+	}
+
+	public static interface SubService extends Service {
+	}
+
+	public static interface Tagged {
+	}
+
+	public static abstract class AbstractService implements Service {
+		private final String name;
+
+		protected AbstractService(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	public static class BasicService extends AbstractService {
+		public BasicService(String name) {
+			super(name);
+		}
+	}
+
+	public static class BasicSubService extends AbstractService implements SubService {
+		public BasicSubService(String name) {
+			super(name);
+		}
+	}
+
+	public static class TaggedService extends BasicSubService implements Tagged {
+		public TaggedService(String name) {
+			super(name);
+		}
+	}
+}
@@ -0,0 +1,199 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.guicerecipes.support;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import javax.annotation.*;
+
+import junit.framework.*;
+
+import org.guicerecipes.*;
+import org.guicerecipes.jsr250.*;
+
+import com.google.inject.*;
+import com.google.inject.name.*;
+
+/** @version $Revision: 1.1 $ */
+public class CloseRegistryTest extends TestCase {
+
+	public void testCloseOnlyClosesCreatedObjects() throws Exception {
+		Injector injector = Guice.createInjector(new Jsr250Module(), new GuiceyFruitModule() {
+			@Override
+			protected void configure() {
+				// the registry should only be installed once
+				super.configure();
+
+				bind(Used.class).in(Singleton.class);
+				bind(Service.class).to(Unused.class).in(Singleton.class);
+			}
+		});
+		CloseRegistry registry = CloseRegistry.getInstance(injector);
+		assertNotNull("Should have a registry", registry);
+
+		Unused.created.set(0);
+		Used used = injector.getInstance(Used.class);
+		assertTrue(registry.contains(used));
+
+		Injectors.close(injector);
+		assertEquals("Should have closed the created object once", 1, used.closed);
+		assertEquals("Should not have created an object just to close it", 0, Unused.created.get());
+		assertFalse("Should have removed the closed object", registry.contains(used));
+	}
+
+	public void testSubclassDoesNotCountAsCreatingItsSuperclass() throws Exception {
+		Injector injector = Guice.createInjector(new Jsr250Module() {
+			@Override
+			protected void configure() {
+				super.configure();
+
+				bind(Unused.class).in(Singleton.class);
+				bind(UnusedSubclass.class).in(Singleton.class);
+			}
+		});
+		Unused.created.set(0);
+		UnusedSubclass subclass = injector.getInstance(UnusedSubclass.class);
+		assertEquals(1, Unused.created.get());
+
+		Injectors.close(injector);
+		assertEquals("Should not have created the super class binding just to close it", 1, Unused.created.get());
+		assertEquals(1, subclass.closed);
+	}
+
+	public void testOnlyScopedObjectsAreRecorded() throws Exception {
+		Injector injector = Guice.createInjector(new Jsr250Module());
+		CloseRegistry registry = CloseRegistry.getInstance(injector);
+
+		Used unscoped = injector.getInstance(Used.class);
+		assertFalse(registry.contains(unscoped));
+		assertTrue(registry.getCreatedKeys(Singleton.class).isEmpty());
+
+		Injectors.close(injector);
+		assertEquals(0, unscoped.closed);
+	}
+
+	public void testObjectsAreRecordedByScopeAndKey() throws Exception {
+		Injector injector = Guice.createInjector(new Jsr250Module() {
+			@Override
+			protected void configure() {
+				super.configure();
+
+				bind(Used.class).in(Singleton.class);
+				bind(Service.class).to(Unused.class).in(Singleton.class);
+			}
+		});
+		CloseRegistry registry = CloseRegistry.getInstance(injector);
+
+		Object service = injector.getInstance(Service.class);
+		assertTrue(registry.contains(service));
+		assertEquals(Collections.singleton(Key.get(Service.class)), registry.getCreatedKeys(Singleton.class));
+		assertTrue(registry.isCreated(Singleton.class, Key.get(Service.class)));
+		assertFalse(registry.isCreated(Singleton.class, Key.get(Used.class)));
+	}
+
+	public void testOnlyTheObjectsOfTheScopedBindingAreClosed() throws Exception {
+		final Key<Used> scopedKey = Key.get(Used.class, Names.named("scoped"));
+		Injector injector = Guice.createInjector(new Jsr250Module() {
+			@Override
+			protected void configure() {
+				super.configure();
+
+				bind(scopedKey).to(Used.class).in(Singleton.class);
+			}
+		});
+
+		Used unscoped = injector.getInstance(Used.class);
+		Used injected = new Used();
+		injector.injectMembers(injected);
+		Used scoped = injector.getInstance(scopedKey);
+
+		Injectors.close(injector);
+		assertEquals(1, scoped.closed);
+		assertEquals("Should not close an object of an unscoped binding of the same class", 0, unscoped.closed);
+		assertEquals("Should not close an object passed to injectMembers", 0, injected.closed);
+	}
+
+	public void testObjectsCreatedWhileCreatingTheInjectorAreClosed() throws Exception {
+		final Holder holder = new Holder();
+		Injector injector = Guice.createInjector(new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(Used.class).in(Singleton.class);
+				requestInjection(holder);
+			}
+		}, new Jsr250Module());
+
+		Injectors.close(injector);
+		assertEquals(1, holder.used.closed);
+	}
+
+	public void testCloseWithoutRegistryClosesAllObjects() throws Exception {
+		Injector injector = Guice.createInjector(new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(PreDestroyCloser.class);
+				bind(Service.class).to(Unused.class).in(Singleton.class);
+			}
+		});
+		assertNull(CloseRegistry.getInstance(injector));
+
+		Unused.created.set(0);
+		Injectors.close(injector);
+		assertEquals(1, Unused.created.get());
+	}
+
+	public static interface Service {
+	}
+
+	public static class Holder {
+		@Inject
+		Used used;
+	}
+
+	public static class Used {
+		int closed;
+
+		@PreDestroy
+		public void close() {
+			closed++;
+		}
+	}
+
+	public static class Unused implements Service {
+		static final AtomicInteger created = new AtomicInteger();
+
+		public Unused() {
+			created.incrementAndGet();
+		}
+
+		@PreDestroy
+		public void close() {
+		}
+	}
+
+	public static class UnusedSubclass extends Unused {
+		int closed;
+
+		@Override
+		@PreDestroy
+		public void close() {
+			closed++;
+		}
+	}
+}
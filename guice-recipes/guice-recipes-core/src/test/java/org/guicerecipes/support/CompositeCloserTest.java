@@ -0,0 +1,96 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.guicerecipes.support;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import junit.framework.*;
+
+import org.guicerecipes.*;
+
+import com.google.inject.*;
+
+/** @version $Revision: 1.1 $ */
+public class CompositeCloserTest extends TestCase {
+
+	public void testOnlyInvokesApplicableClosers() throws Throwable {
+		CountingCloser closeableCloser = new CountingCloser(Closeable.class);
+		CountingCloser anyCloser = new CountingCloser(null);
+		CompositeCloser closer = new CompositeCloser(Arrays.<Closer> asList(closeableCloser, anyCloser));
+
+		assertTrue(closer.canClose(StringReader.class));
+		assertTrue(closer.canClose(String.class));
+		closer.close(new StringReader("foo"));
+		closer.close("foo");
+		assertEquals(1, closeableCloser.count.get());
+		assertEquals(2, anyCloser.count.get());
+
+		CompositeCloser typedOnly = new CompositeCloser(Arrays.<Closer> asList(closeableCloser));
+		assertFalse(typedOnly.canClose(String.class));
+	}
+
+	public void testResolvesClosersOncePerInjectorAndSkipsObjectsWithNothingToClose() throws Exception {
+		final CountingCloser closer = new CountingCloser(Closeable.class);
+		Injector injector = Guice.createInjector(new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(Closer.class).toInstance(closer);
+				bind(Value.class).in(Singleton.class);
+				bind(Resource.class).in(Singleton.class);
+			}
+		});
+		assertSame(Closers.getCloser(injector), Closers.getCloser(injector));
+
+		Value.created.set(0);
+		Injectors.close(injector);
+		assertEquals("Should not create objects which have nothing to close", 0, Value.created.get());
+		assertEquals(1, closer.count.get());
+	}
+
+	public static class CountingCloser implements TypedCloser {
+		final Class<?> closes;
+		final AtomicInteger count = new AtomicInteger();
+
+		public CountingCloser(Class<?> closes) {
+			this.closes = closes;
+		}
+
+		public boolean canClose(Class<?> type) {
+			return closes == null || closes.isAssignableFrom(type);
+		}
+
+		public void close(Object object) throws Throwable {
+			count.incrementAndGet();
+		}
+	}
+
+	public static class Value {
+		static final AtomicInteger created = new AtomicInteger();
+
+		public Value() {
+			created.incrementAndGet();
+		}
+	}
+
+	public static class Resource implements Closeable {
+		public void close() throws IOException {
+		}
+	}
+}
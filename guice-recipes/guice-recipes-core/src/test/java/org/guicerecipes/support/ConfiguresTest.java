@@ -0,0 +1,84 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.support;
+
+import junit.framework.*;
+
+import org.guicerecipes.*;
+
+import com.google.inject.*;
+
+/** @version $Revision: 1.1 $ */
+public class ConfiguresTest extends TestCase {
+
+	public void testConfiguresMethodsAreInvoked() throws Exception {
+		Injector injector = Guice.createInjector(new MyModule());
+
+		MyBean bean = injector.getInstance(MyBean.class);
+		assertEquals("first", bean.name);
+		assertEquals("second", bean.other);
+		assertEquals("configured", injector.getInstance(AnotherBean.class).name);
+		assertNull("Should not configure sub classes", injector.getInstance(SubBean.class).name);
+	}
+
+	public void testConfiguresFailureIsWrapped() throws Exception {
+		Injector injector = Guice.createInjector(new GuiceyFruitModule() {
+			@Configures
+			public void configure(MyBean bean) {
+				throw new IllegalStateException("Bad bean");
+			}
+		});
+
+		try {
+			injector.getInstance(MyBean.class);
+			fail("Should have failed to configure");
+		} catch (ProvisionException e) {
+			assertTrue("Should report the failed method: " + e.getMessage(), e.getMessage().contains("Failed to invoke @Configures method"));
+		}
+	}
+
+	public static class MyModule extends GuiceyFruitModule {
+		@Configures
+		public void first(MyBean bean) {
+			bean.name = "first";
+		}
+
+		@Configures
+		protected void second(MyBean bean) {
+			bean.other = "second";
+		}
+
+		@Configures
+		public void configure(AnotherBean bean) {
+			bean.name = "configured";
+		}
+	}
+
+	public static class MyBean {
+		String name;
+		String other;
+	}
+
+	public static class SubBean extends MyBean {
+	}
+
+	public static class AnotherBean {
+		String name;
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.support;
+
+import java.io.*;
+import java.util.*;
+
+import javax.annotation.*;
+
+import junit.framework.*;
+
+import org.guicerecipes.*;
+import org.guicerecipes.jsr250.*;
+
+import com.google.common.collect.*;
+import com.google.inject.*;
+
+/** @version $Revision: 1.1 $ */
+public class InjectorProfilerTest extends TestCase {
+
+	public void testProfilesInjectorCreation() throws Exception {
+		InjectorProfiler profiler = new InjectorProfiler();
+		Injector injector = Injectors.createInjector(profiler, new MyModule());
+		assertSame("Should bind the profiler", profiler, injector.getInstance(InjectorProfiler.class));
+
+		MyBean bean = injector.getInstance(MyBean.class);
+		assertEquals("Foo", bean.foo);
+		assertTrue(bean.configured);
+
+		Set<String> categories = Sets.newHashSet();
+		List<InjectorProfiler.Sample> samples = profiler.getSamples();
+		for (InjectorProfiler.Sample sample : samples) {
+			categories.add(sample.getCategory());
+			assertTrue("Should have been recorded: " + sample, sample.getCount() > 0);
+		}
+		assertTrue("Should have recorded all categories: " + categories, categories.containsAll(Arrays.asList(InjectorProfiler.INJECTOR, InjectorProfiler.ENCOUNTER,
+				InjectorProfiler.ANNOTATION, InjectorProfiler.PROVIDE, InjectorProfiler.CONFIGURES)));
+		for (int i = 1; i < samples.size(); i++) {
+			assertTrue("Should be sorted by total time", samples.get(i - 1).getTotalNanos() >= samples.get(i).getTotalNanos());
+		}
+
+		String json = profiler.toJson();
+		assertTrue(json, json.contains("\"category\": \"provide\""));
+		assertTrue(json, json.contains("\"name\": \"@javax.annotation.Resource\""));
+		String text = profiler.toText();
+		assertTrue(text, text.contains("createInjector"));
+	}
+
+	public void testProfileReportFromEnvironment() throws Exception {
+		File report = File.createTempFile("profile", ".json");
+		report.deleteOnExit();
+
+		Map<String, String> environment = Maps.newHashMap();
+		environment.put(Injectors.PROFILE, "true");
+		environment.put(Injectors.PROFILE_REPORT, report.getPath());
+		Injector injector = Injectors.createInjector(environment, new MyModule());
+		assertNotNull(injector.getInstance(InjectorProfiler.class));
+
+		BufferedReader reader = new BufferedReader(new FileReader(report));
+		try {
+			assertEquals("[", reader.readLine());
+		} finally {
+			reader.close();
+		}
+	}
+
+	public void testNotProfiledByDefault() throws Exception {
+		Injector injector = Guice.createInjector(new MyModule());
+		assertNull(injector.getExistingBinding(Key.get(InjectorProfiler.class)));
+		assertNull(InjectorProfiler.getCurrent());
+	}
+
+	public static class MyModule extends Jsr250Module {
+		@Override
+		protected void configure() {
+			super.configure();
+			bind(MyBean.class).asEagerSingleton();
+			bindInstance("foo", "Foo");
+		}
+
+		@Configures
+		public void configure(MyBean bean) {
+			bean.configured = true;
+		}
+	}
+
+	public static class MyBean {
+		@Resource
+		String foo;
+
+		boolean configured;
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.guicerecipes.support;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+import org.guicerecipes.*;
+
+import com.google.inject.*;
+
+/** @version $Revision: 1.1 $ */
+public class ParallelCloseTest extends TestCase {
+	private ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	@Override
+	protected void tearDown() throws Exception {
+		executor.shutdownNow();
+		super.tearDown();
+	}
+
+	public void testClosesInReverseDependencyOrderInParallel() throws Exception {
+		Injector injector = createInjector();
+		injector.getInstance(Top.class);
+		injector.getInstance(Other.class);
+		RecordingCloser closer = injector.getInstance(RecordingCloser.class);
+
+		// Bottom and Other each wait for the other to start closing so they fail to close unless closed in parallel
+		Injectors.close(injector, executor, 5, 10, TimeUnit.SECONDS);
+
+		assertEquals(Arrays.asList("Top", "Bottom"), closer.getClosed("Top", "Bottom"));
+		assertTrue("Should have closed Other", closer.closed.contains("Other"));
+	}
+
+	public void testReportsTimeouts() throws Exception {
+		Injector injector = createInjector();
+		injector.getInstance(Top.class);
+		injector.getInstance(Other.class);
+		injector.getInstance(Slow.class);
+		RecordingCloser closer = injector.getInstance(RecordingCloser.class);
+		final List<Exception> errors = new CopyOnWriteArrayList<Exception>();
+
+		Injectors.close(injector, Singleton.class, executor, 1, 10, TimeUnit.SECONDS, new CloseErrors() {
+			public void closeError(Object key, Object object, Exception cause) {
+				errors.add(cause);
+			}
+
+			public void throwIfNecessary() {
+			}
+		});
+		assertTrue("Should still have closed the other objects", closer.closed.containsAll(Arrays.asList("Top", "Bottom", "Other")));
+
+		// the interrupted close of the slow object should not be reported as well as its timeout
+		assertTrue("Should have interrupted the slow object", closer.interrupted.await(10, TimeUnit.SECONDS));
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		assertEquals("Should only have reported the timeout but got " + errors, 1, errors.size());
+		assertTrue(errors.get(0) instanceof TimeoutException);
+		assertEquals("Not closed within 1000 ms", errors.get(0).getMessage());
+	}
+
+	protected Injector createInjector() {
+		return Guice.createInjector(new GuiceyFruitModule() {
+			@Override
+			protected void configure() {
+				super.configure();
+
+				bind(RecordingCloser.class).in(Singleton.class);
+				bind(Top.class).in(Singleton.class);
+				bind(Bottom.class).in(Singleton.class);
+				bind(Other.class).in(Singleton.class);
+				bind(Slow.class).in(Singleton.class);
+			}
+		});
+	}
+
+	public static class RecordingCloser implements Closer {
+		final List<String> closed = new CopyOnWriteArrayList<String>();
+		final CyclicBarrier barrier = new CyclicBarrier(2);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+
+		public void close(Object object) throws Throwable {
+			if (object instanceof Slow) {
+				try {
+					Thread.sleep(60000);
+				} catch (InterruptedException e) {
+					interrupted.countDown();
+					throw e;
+				}
+			} else if (object instanceof Bottom || object instanceof Other) {
+				barrier.await(5, TimeUnit.SECONDS);
+			}
+			closed.add(object.getClass().getSimpleName());
+		}
+
+		public List<String> getClosed(String... names) {
+			List<String> answer = new ArrayList<String>(closed);
+			answer.retainAll(Arrays.asList(names));
+			return answer;
+		}
+	}
+
+	public static class Bottom {
+	}
+
+	public static class Top {
+		@Inject
+		Bottom bottom;
+	}
+
+	public static class Other {
+	}
+
+	public static class Slow {
+	}
+}
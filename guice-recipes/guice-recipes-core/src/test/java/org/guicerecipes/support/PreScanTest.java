@@ -0,0 +1,115 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.support;
+
+import java.lang.annotation.*;
+import java.lang.reflect.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+import org.guicerecipes.*;
+import org.guicerecipes.support.internal.*;
+
+import com.google.inject.*;
+import com.google.inject.spi.*;
+
+import static java.lang.annotation.ElementType.*;
+import static java.lang.annotation.RetentionPolicy.*;
+
+/** @version $Revision: 1.1 $ */
+public class PreScanTest extends TestCase {
+	private ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	@Override
+	protected void tearDown() throws Exception {
+		executor.shutdown();
+	}
+
+	public void testPreScannerFindsBoundClassesAndAnnotations() throws Exception {
+		PreScanner preScanner = new PreScanner();
+		preScanner.addElements(Elements.getElements(new MyModule()));
+
+		assertTrue(preScanner.getAnnotationTypes().contains(Greeting.class));
+		assertTrue(preScanner.getTypes().contains(MyBean.class));
+		assertTrue("Should scan super classes", preScanner.getTypes().contains(BaseBean.class));
+		assertTrue(preScanner.getTypes().contains(AnotherBean.class));
+	}
+
+	public void testInjectionAfterPreScan() throws Exception {
+		Injector injector = Injectors.createInjector(executor, new MyModule());
+
+		InjectionIndex.Entry entry = InjectionIndex.getEntry(MyBean.class, Greeting.class);
+		assertNotNull("Should have scanned the bound class", entry);
+		assertEquals(1, entry.getDeclaredMethods(MyBean.class).length);
+
+		MyBean bean = injector.getInstance(MyBean.class);
+		assertEquals("Hello", bean.field);
+		assertEquals("Hello", bean.method);
+		assertEquals("Hello", bean.inherited);
+		assertEquals("Hello", injector.getInstance(AnotherBean.class).field);
+	}
+
+	@Target( { FIELD, METHOD })
+	@Retention(RUNTIME)
+	public @interface Greeting {
+	}
+
+	public static class MyModule extends GuiceyFruitModule {
+		@Override
+		protected void configure() {
+			super.configure();
+
+			bindAnnotationInjector(Greeting.class, new AnnotationMemberProviderSupport<Greeting>() {
+				@Override
+				protected Object provide(Greeting annotation, Member member, TypeLiteral<?> requiredType, Class<?> memberType, Annotation[] annotations) {
+					return "Hello";
+				}
+
+				public boolean isNullParameterAllowed(Greeting annotation, Method method, Class<?> parameterType, int parameterIndex) {
+					return false;
+				}
+			});
+			bind(MyBean.class);
+			bind(Object.class).to(AnotherBean.class);
+		}
+	}
+
+	public static class BaseBean {
+		@Greeting
+		String inherited;
+	}
+
+	public static class MyBean extends BaseBean {
+		@Greeting
+		String field;
+
+		String method;
+
+		@Greeting
+		public void setMethod(String method) {
+			this.method = method;
+		}
+	}
+
+	public static class AnotherBean {
+		@Greeting
+		String field;
+	}
+}
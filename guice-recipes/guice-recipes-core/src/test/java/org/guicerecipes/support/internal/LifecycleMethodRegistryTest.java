@@ -0,0 +1,91 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.support.internal;
+
+import java.util.*;
+
+import javax.annotation.*;
+
+import junit.framework.*;
+
+/** @version $Revision: 1.1 $ */
+public class LifecycleMethodRegistryTest extends TestCase {
+	private LifecycleMethodRegistry registry = LifecycleMethodRegistry.getInstance(PostConstruct.class);
+
+	public void testRegistryIsShared() throws Exception {
+		assertSame(registry, LifecycleMethodRegistry.getInstance(PostConstruct.class));
+		assertNotSame(registry, LifecycleMethodRegistry.getInstance(PreDestroy.class));
+	}
+
+	public void testMethodsAreCached() throws Exception {
+		LifecycleMethodChain methods = registry.getMethods(MyBean.class);
+		assertEquals(Arrays.asList(MyBean.class.getDeclaredMethod("start")), methods.getMethods());
+		assertTrue("Should have made the method accessible", methods.getMethods().get(0).isAccessible());
+		assertSame(methods, registry.getMethods(MyBean.class));
+		assertEquals(MyBean.class.getDeclaredMethod("start"), registry.getDeclaredMethod(MyBean.class));
+	}
+
+	public void testSuperClassMethodsComeFirst() throws Exception {
+		LifecycleMethodChain methods = registry.getMethods(SubBean.class);
+		assertEquals(Arrays.asList(MyBean.class.getDeclaredMethod("start"), SubBean.class.getDeclaredMethod("init")), methods.getMethods());
+		assertEquals(Arrays.asList(SubBean.class.getDeclaredMethod("init"), MyBean.class.getDeclaredMethod("start")), methods.reverse().getMethods());
+		assertSame(methods, methods.reverse().reverse());
+		assertEquals(SubBean.class.getDeclaredMethod("init"), registry.getDeclaredMethod(SubBean.class));
+	}
+
+	public void testOverriddenMethodsAreIgnored() throws Exception {
+		assertTrue(registry.getMethods(OverridingBean.class).isEmpty());
+	}
+
+	public void testMissingMethods() throws Exception {
+		assertTrue(registry.getMethods(Object.class).isEmpty());
+		assertTrue(registry.getMethods(NoLifecycleBean.class).isEmpty());
+		assertSame(registry.getMethods(NoLifecycleBean.class), registry.getMethods(Object.class));
+		assertNull(registry.getDeclaredMethod(NoLifecycleBean.class));
+	}
+
+	public static class MyBean {
+		@PostConstruct
+		private void start() {
+		}
+	}
+
+	public static class SubBean extends MyBean {
+		@PostConstruct
+		void init() {
+		}
+	}
+
+	public static class BaseBean {
+		@PostConstruct
+		public void start() {
+		}
+	}
+
+	public static class OverridingBean extends BaseBean {
+		@Override
+		public void start() {
+		}
+	}
+
+	public static class NoLifecycleBean {
+		public void start() {
+		}
+	}
+}
@@ -0,0 +1,184 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.guicerecipes.support.internal;
+
+import java.io.*;
+import java.lang.annotation.*;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.zip.*;
+
+import javax.annotation.*;
+
+import junit.framework.*;
+
+/** @version $Revision: 1.1 $ */
+public class ScanCacheTest extends TestCase {
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("scan", ".cache");
+		file.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	public void testEntriesAreReloadedWithoutScanning() throws Exception {
+		CountingScanCache cache = new CountingScanCache(file, 0);
+		assertMembers(cache.getEntry(MyBean.class, annotations(Resource.class)));
+		assertEquals(1, cache.scans);
+		cache.getEntry(MyBean.class, annotations(Resource.class));
+		assertEquals("Should only scan once", 1, cache.scans);
+		cache.save();
+		assertTrue("Should have written " + file, file.isFile());
+
+		CountingScanCache reloaded = new CountingScanCache(file, 0);
+		assertMembers(reloaded.getEntry(MyBean.class, annotations(Resource.class)));
+		assertEquals("Should have used the saved entry", 0, reloaded.scans);
+	}
+
+	public void testChangedClassesAreRescanned() throws Exception {
+		ScanCache cache = new ScanCache(file);
+		cache.getEntry(MyBean.class, annotations(Resource.class));
+		cache.save();
+
+		CountingScanCache changed = new CountingScanCache(file, 1);
+		assertMembers(changed.getEntry(MyBean.class, annotations(Resource.class)));
+		assertEquals("Should have detected the stale entry", 1, changed.scans);
+	}
+
+	public void testReloadedCacheCanReplaceItsFile() throws Exception {
+		ScanCache cache = new ScanCache(file);
+		cache.getEntry(MyBean.class, annotations(Resource.class));
+		cache.save();
+
+		ScanCache reloaded = new ScanCache(file);
+		reloaded.getEntry(OtherBean.class, annotations(Resource.class));
+		reloaded.save();
+
+		CountingScanCache both = new CountingScanCache(file, 0);
+		assertMembers(both.getEntry(MyBean.class, annotations(Resource.class)));
+		assertNotNull(both.getEntry(OtherBean.class, annotations(Resource.class)));
+		assertEquals("Should have kept the entries of both generations", 0, both.scans);
+	}
+
+	public void testClassFilesInDirectoriesAreHashedByTheirContents() throws Exception {
+		File classFile = new File(MyBean.class.getResource("ScanCacheTest$MyBean.class").toURI());
+		byte[] bytes = new byte[(int) classFile.length()];
+		DataInputStream in = new DataInputStream(new FileInputStream(classFile));
+		try {
+			in.readFully(bytes);
+		} finally {
+			in.close();
+		}
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		assertEquals((long) bytes.length << 32 | crc.getValue(), new ScanCache(file).hash(MyBean.class));
+	}
+
+	public void testOtherAnnotationsAreAddedToTheEntry() throws Exception {
+		CountingScanCache cache = new CountingScanCache(file, 0);
+		cache.getEntry(MyBean.class, annotations(Resource.class));
+		InjectionIndex.Entry entry = cache.getEntry(MyBean.class, annotations(PostConstruct.class));
+		assertEquals(2, cache.scans);
+		assertTrue(entry.covers(Resource.class));
+		assertTrue(entry.covers(PostConstruct.class));
+		assertEquals(3, entry.getDeclaredMethods(MyBean.class).length);
+	}
+
+	public void testMethodsOverridingAnnotatedMethodsAreListed() throws Exception {
+		InjectionIndex.Entry entry = new ScanCache(file).getEntry(OverridingBean.class, annotations(Resource.class));
+		assertEquals(Arrays.asList(OverridingBean.class.getDeclaredMethod("bar", String.class)), Arrays.asList(entry.getDeclaredMethods(OverridingBean.class)));
+	}
+
+	protected void assertMembers(InjectionIndex.Entry entry) throws Exception {
+		assertNotNull("Should have found an entry", entry);
+		assertEquals(Arrays.asList(MyBean.class.getDeclaredField("foo")), Arrays.asList(entry.getDeclaredFields(MyBean.class)));
+		Set<Method> expected = new HashSet<Method>(Arrays.asList(MyBean.class.getDeclaredMethod("bar", String.class), MyBean.class.getDeclaredMethod("values", int[].class,
+				String[][].class)));
+		assertEquals("Should only list the annotated overload of bar", expected, new HashSet<Method>(Arrays.asList(entry.getDeclaredMethods(MyBean.class))));
+	}
+
+	protected List<Class<? extends Annotation>> annotations(Class<? extends Annotation> annotationType) {
+		List<Class<? extends Annotation>> answer = new ArrayList<Class<? extends Annotation>>();
+		answer.add(annotationType);
+		return answer;
+	}
+
+	static class CountingScanCache extends ScanCache {
+		private final long hashOffset;
+		private int scans;
+
+		CountingScanCache(File file, long hashOffset) {
+			super(file);
+			this.hashOffset = hashOffset;
+		}
+
+		@Override
+		protected long hash(Class<?> type) {
+			return super.hash(type) + hashOffset;
+		}
+
+		@Override
+		protected InjectionIndex.Entry scan(Class<?> type, Set<String> annotationNames) {
+			scans++;
+			return super.scan(type, annotationNames);
+		}
+	}
+
+	public static class OtherBean {
+		@Resource
+		public String baz;
+	}
+
+	public static class OverridingBean extends MyBean {
+		@Override
+		public void bar(String bar) {
+		}
+
+		public void other() {
+		}
+	}
+
+	public static class MyBean {
+		@Resource
+		public String foo;
+
+		public String notAnnotated;
+
+		@Resource
+		public void bar(String bar) {
+		}
+
+		public void bar(Integer bar) {
+		}
+
+		@Resource
+		public void values(int[] values, String[][] names) {
+		}
+
+		@PostConstruct
+		public void start() {
+		}
+	}
+}
@@ -0,0 +1,149 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.guicerecipes.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.annotation.*;
+
+import junit.framework.*;
+
+import org.guicerecipes.jsr250.*;
+import org.guicerecipes.metrics.*;
+import org.guicerecipes.support.*;
+import org.guicerecipes.testing.*;
+
+import com.google.inject.*;
+
+/** @version $Revision: 1.1 $ */
+public class BoundedCloseableScopeTest extends TestCase {
+
+	public void testEvictsAndClosesLeastRecentlyUsedObjects() throws Exception {
+		BoundedCloseableScope scope = new BoundedCloseableScope(ClassScoped.class, 2);
+		Injector injector = createInjector(scope);
+
+		First first = injector.getInstance(First.class);
+		Second second = injector.getInstance(Second.class);
+		assertSame(first, injector.getInstance(First.class));
+		Third third = injector.getInstance(Third.class);
+
+		assertEquals(2, scope.size());
+		assertTrue("Should have closed the least recently used object", second.closed);
+		assertFalse(first.closed);
+		assertFalse(third.closed);
+		assertSame(first, injector.getInstance(First.class));
+		assertNotSame("Should create the evicted object again", second, injector.getInstance(Second.class));
+
+		scope.close();
+		assertEquals(0, scope.size());
+		assertTrue(third.closed);
+	}
+
+	public void testEvictsByWeight() throws Exception {
+		BoundedCloseableScope scope = new BoundedCloseableScope(ClassScoped.class, 10, new BoundedCloseableScope.Weigher() {
+			public long weigh(Key<?> key, Object value) {
+				return value instanceof Third ? 8 : 3;
+			}
+		});
+		Injector injector = createInjector(scope);
+
+		First first = injector.getInstance(First.class);
+		Second second = injector.getInstance(Second.class);
+		assertEquals(6, scope.getWeight());
+		injector.getInstance(Third.class);
+
+		assertTrue(first.closed);
+		assertTrue(second.closed);
+		assertEquals(1, scope.size());
+		assertEquals(8, scope.getWeight());
+	}
+
+	public void testReportsFailuresToCloseEvictedObjects() throws Exception {
+		BoundedCloseableScope scope = new BoundedCloseableScope(ClassScoped.class, 1);
+		final List<Object> failed = new ArrayList<Object>();
+		scope.setEvictionErrors(new CloseErrors() {
+			public void closeError(Object key, Object object, Exception cause) {
+				failed.add(object);
+			}
+
+			public void throwIfNecessary() {
+			}
+		});
+		final ConcurrentMap<String, Integer> counts = new ConcurrentHashMap<String, Integer>();
+		Metrics.setRecorder(new MetricsRecorder() {
+			public void increment(String name) {
+				Integer count = counts.get(name);
+				counts.put(name, count == null ? 1 : count + 1);
+			}
+
+			public void record(String name, long nanos) {
+			}
+		});
+		try {
+			Injector injector = createInjector(scope);
+			Failing failing = injector.getInstance(Failing.class);
+			injector.getInstance(First.class);
+
+			assertEquals(Arrays.<Object> asList(failing), failed);
+			assertEquals(Integer.valueOf(1), counts.get(Metrics.SCOPE + ClassScoped.class.getName() + Metrics.CLOSE_ERROR));
+		} finally {
+			Metrics.setRecorder(null);
+		}
+	}
+
+	protected Injector createInjector(final CloseableScope scope) {
+		return Guice.createInjector(new Jsr250Module() {
+			@Override
+			protected void configure() {
+				super.configure();
+				bindScope(ClassScoped.class, scope);
+				requestInjection(scope);
+				bind(First.class).in(ClassScoped.class);
+				bind(Second.class).in(ClassScoped.class);
+				bind(Third.class).in(ClassScoped.class);
+				bind(Failing.class).in(ClassScoped.class);
+			}
+		});
+	}
+
+	public static class Closeable {
+		boolean closed;
+
+		@PreDestroy
+		public void close() {
+			closed = true;
+		}
+	}
+
+	public static class First extends Closeable {
+	}
+
+	public static class Second extends Closeable {
+	}
+
+	public static class Third extends Closeable {
+	}
+
+	public static class Failing {
+		@PreDestroy
+		public void close() {
+			throw new IllegalStateException("Failed to close");
+		}
+	}
+}
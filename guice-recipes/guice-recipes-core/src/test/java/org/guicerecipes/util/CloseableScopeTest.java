@@ -0,0 +1,200 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.guicerecipes.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import junit.framework.*;
+
+import org.guicerecipes.metrics.*;
+import org.guicerecipes.testing.*;
+
+import com.google.inject.*;
+import com.google.inject.name.*;
+
+/** @version $Revision: 1.1 $ */
+public class CloseableScopeTest extends TestCase {
+	private ExecutorService executor = Executors.newCachedThreadPool();
+
+	@Override
+	protected void tearDown() throws Exception {
+		executor.shutdownNow();
+		super.tearDown();
+	}
+
+	public void testCreatesEachObjectOnce() throws Exception {
+		CloseableScope scope = new CloseableScope(ClassScoped.class);
+		final AtomicInteger created = new AtomicInteger();
+		final Provider<Object> provider = scope.scope(Key.get(Object.class), new Provider<Object>() {
+			public Object get() {
+				created.incrementAndGet();
+				sleep(200);
+				return new Object();
+			}
+		});
+
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();
+		for (int i = 0; i < 8; i++) {
+			futures.add(executor.submit(new Callable<Object>() {
+				public Object call() throws Exception {
+					return provider.get();
+				}
+			}));
+		}
+		Object value = provider.get();
+		for (Future<Object> future : futures) {
+			assertSame(value, future.get());
+		}
+		assertEquals(1, created.get());
+		assertSame(value, ((CachingProvider<Object>) provider).getCachedValue());
+	}
+
+	public void testSlowObjectDoesNotBlockOtherKeys() throws Exception {
+		CloseableScope scope = new CloseableScope(ClassScoped.class);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Provider<String> slow = scope.scope(Key.get(String.class), new Provider<String>() {
+			public String get() {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new ProvisionException("Interrupted");
+				}
+				return "slow";
+			}
+		});
+		Provider<Integer> fast = scope.scope(Key.get(Integer.class), new Provider<Integer>() {
+			public Integer get() {
+				return 42;
+			}
+		});
+
+		Future<String> future = executor.submit(new Callable<String>() {
+			public String call() throws Exception {
+				return slow.get();
+			}
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		assertNull("Should not return an object still being created", ((CachingProvider<String>) slow).getCachedValue());
+		assertEquals(Integer.valueOf(42), fast.get());
+		release.countDown();
+		assertEquals("slow", future.get(5, TimeUnit.SECONDS));
+	}
+
+	public void testFailedCreationIsRetried() throws Exception {
+		CloseableScope scope = new CloseableScope(ClassScoped.class);
+		final AtomicInteger attempts = new AtomicInteger();
+		Provider<String> provider = scope.scope(Key.get(String.class), new Provider<String>() {
+			public String get() {
+				if (attempts.incrementAndGet() == 1) {
+					throw new IllegalStateException("First attempt fails");
+				}
+				return "created";
+			}
+		});
+		try {
+			provider.get();
+			fail("Should have thrown");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertEquals("created", provider.get());
+	}
+
+	public void testFailedCreationIsNotCountedAsAMiss() throws Exception {
+		CloseableScope scope = new CloseableScope(ClassScoped.class);
+		Provider<String> provider = scope.scope(Key.get(String.class), new Provider<String>() {
+			public String get() {
+				throw new IllegalStateException("Fails");
+			}
+		});
+		final Map<String, Integer> counts = new HashMap<String, Integer>();
+		Metrics.setRecorder(new MetricsRecorder() {
+			public void increment(String name) {
+				Integer count = counts.get(name);
+				counts.put(name, count == null ? 1 : count + 1);
+			}
+
+			public void record(String name, long nanos) {
+			}
+		});
+		try {
+			provider.get();
+			fail("Should have thrown");
+		} catch (IllegalStateException e) {
+			// expected
+		} finally {
+			Metrics.setRecorder(null);
+		}
+		String prefix = Metrics.SCOPE + ClassScoped.class.getName();
+		assertNull(counts.get(prefix + Metrics.MISS));
+		assertEquals(Integer.valueOf(1), counts.get(prefix + Metrics.CREATE_ERROR));
+	}
+
+	public void testThreadsWaitingForEachOtherFailInsteadOfDeadlocking() throws Exception {
+		CloseableScope scope = new CloseableScope(ClassScoped.class);
+		final CyclicBarrier barrier = new CyclicBarrier(2);
+		final List<Provider<Object>> providers = new ArrayList<Provider<Object>>();
+		for (final String name : new String[] { "x", "y" }) {
+			providers.add(scope.scope(Key.get(Object.class, Names.named(name)), new Provider<Object>() {
+				public Object get() {
+					try {
+						barrier.await(5, TimeUnit.SECONDS);
+					} catch (Exception e) {
+						throw new ProvisionException("Both objects should be created at the same time", e);
+					}
+					// each object needs the one the other thread is creating
+					return providers.get(name.equals("x") ? 1 : 0).get();
+				}
+			}));
+		}
+
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();
+		for (final Provider<Object> provider : providers) {
+			futures.add(executor.submit(new Callable<Object>() {
+				public Object call() throws Exception {
+					return provider.get();
+				}
+			}));
+		}
+		String message = null;
+		for (Future<Object> future : futures) {
+			try {
+				future.get(5, TimeUnit.SECONDS);
+				fail("Should have failed to create the circular objects");
+			} catch (ExecutionException e) {
+				if (e.getCause().getMessage().contains("waiting for each other")) {
+					message = e.getCause().getMessage();
+				}
+			}
+		}
+		assertNotNull("Should have reported the deadlock", message);
+		assertTrue(message, message.contains("value=x") && message.contains("value=y"));
+	}
+
+	protected static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
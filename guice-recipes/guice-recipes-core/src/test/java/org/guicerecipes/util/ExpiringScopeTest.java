@@ -0,0 +1,285 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.guicerecipes.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.annotation.*;
+
+import junit.framework.*;
+
+import org.guicerecipes.jsr250.*;
+import org.guicerecipes.metrics.*;
+import org.guicerecipes.support.*;
+
+import com.google.inject.*;
+
+/** @version $Revision: 1.1 $ */
+public class ExpiringScopeTest extends TestCase {
+
+	public void testRefreshesAheadOfExpiryInTheBackground() throws Exception {
+		ManualScope scope = new ManualScope(400, 300);
+		final AtomicInteger created = new AtomicInteger();
+		CachingProvider<Integer> provider = (CachingProvider<Integer>) scope.scope(Key.get(Integer.class), new Provider<Integer>() {
+			public Integer get() {
+				return created.incrementAndGet();
+			}
+		});
+
+		assertNull(provider.getCachedValue());
+		assertEquals(Integer.valueOf(1), provider.get());
+		assertEquals(Integer.valueOf(1), provider.get());
+
+		scope.advance(150);
+		assertEquals("Should not refresh when looking at the cached value", Integer.valueOf(1), provider.getCachedValue());
+		assertTrue(scope.refreshes.isEmpty());
+
+		assertEquals("Should return the current value while refreshing", Integer.valueOf(1), provider.get());
+		assertEquals(1, created.get());
+		assertEquals(1, scope.refreshes.size());
+		assertEquals("Should only refresh once at a time", Integer.valueOf(1), provider.get());
+		assertEquals(1, scope.refreshes.size());
+
+		scope.runRefreshes();
+		assertEquals(Integer.valueOf(2), provider.getCachedValue());
+		assertEquals(Integer.valueOf(2), provider.get());
+	}
+
+	public void testCreatesExpiredObjects() throws Exception {
+		ManualScope scope = new ManualScope(100, 0);
+		final AtomicInteger created = new AtomicInteger();
+		Provider<Integer> provider = scope.scope(Key.get(Integer.class), new Provider<Integer>() {
+			public Integer get() {
+				return created.incrementAndGet();
+			}
+		});
+
+		assertEquals(Integer.valueOf(1), provider.get());
+		scope.advance(99);
+		assertEquals(Integer.valueOf(1), provider.get());
+		scope.advance(1);
+		assertEquals(Integer.valueOf(2), provider.get());
+		assertTrue(scope.refreshes.isEmpty());
+	}
+
+	public void testClosesReplacedObjectsAndUsesClassTimes() throws Exception {
+		ManualScope scope = new ManualScope(400, 300);
+		Injector injector = createInjector(scope);
+
+		Lookup lookup = injector.getInstance(Lookup.class);
+		LongLived longLived = injector.getInstance(LongLived.class);
+		scope.advance(200);
+		assertSame(lookup, injector.getInstance(Lookup.class));
+		assertSame("Should use the times of the class", longLived, injector.getInstance(LongLived.class));
+		assertFalse(lookup.closed);
+
+		scope.runRefreshes();
+		assertTrue("Should have closed the replaced object", lookup.closed);
+		assertNotSame(lookup, injector.getInstance(Lookup.class));
+		assertSame(longLived, injector.getInstance(LongLived.class));
+	}
+
+	public void testUsesTheTimesOfTheImplementationClass() throws Exception {
+		ManualScope scope = new ManualScope(400, 300);
+		Injector injector = createInjector(scope);
+
+		Service service = injector.getInstance(Service.class);
+		assertTrue(service instanceof ShortLived);
+		scope.advance(50);
+		assertNotSame("Should have expired after the ttl of the implementation class", service, injector.getInstance(Service.class));
+		assertTrue("Should not refresh ahead for longer than the ttl", scope.refreshes.isEmpty());
+	}
+
+	public void testRejectsRefreshAheadTimesNotLessThanTheTtl() throws Exception {
+		try {
+			new ExpiringScope(400, 300, TimeUnit.MILLISECONDS).scope(Key.get(Invalid.class), new Provider<Invalid>() {
+				public Invalid get() {
+					return new Invalid();
+				}
+			});
+			fail("Should have rejected the times of " + Invalid.class);
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testClosesReplacedObjectsWithoutHoldingTheProviderLock() throws Exception {
+		ManualScope scope = new ManualScope(100, 0);
+		Injector injector = createInjector(scope);
+
+		Lookup lookup = injector.getInstance(Lookup.class);
+		scope.advance(100);
+		assertNotSame(lookup, injector.getInstance(Lookup.class));
+		assertTrue(lookup.closed);
+		assertEquals(Arrays.asList(Boolean.FALSE), scope.closedWithLock);
+	}
+
+	public void testCloseDoesNotCreateExpiredObjects() throws Exception {
+		ManualScope scope = new ManualScope(400, 300);
+		Injector injector = createInjector(scope);
+
+		Lookup lookup = injector.getInstance(Lookup.class);
+		int created = Lookup.created.get();
+		scope.advance(500);
+		scope.close(injector);
+
+		assertTrue("Should have closed the current object", lookup.closed);
+		assertEquals("Should not have created the expired object again", created, Lookup.created.get());
+		assertTrue("Should not have started a refresh", scope.refreshes.isEmpty());
+		assertNotSame(lookup, injector.getInstance(Lookup.class));
+	}
+
+	public void testReportsFailuresToCloseReplacedObjects() throws Exception {
+		ManualScope scope = new ManualScope(100, 0);
+		final List<Object> failed = new ArrayList<Object>();
+		scope.setReplacedErrors(new CloseErrors() {
+			public void closeError(Object key, Object object, Exception cause) {
+				failed.add(object);
+			}
+
+			public void throwIfNecessary() {
+			}
+		});
+		final Map<String, Integer> counts = new HashMap<String, Integer>();
+		Metrics.setRecorder(new MetricsRecorder() {
+			public void increment(String name) {
+				Integer count = counts.get(name);
+				counts.put(name, count == null ? 1 : count + 1);
+			}
+
+			public void record(String name, long nanos) {
+			}
+		});
+		try {
+			Injector injector = createInjector(scope);
+			Failing failing = injector.getInstance(Failing.class);
+			scope.advance(100);
+			assertNotSame(failing, injector.getInstance(Failing.class));
+
+			assertEquals(Arrays.<Object> asList(failing), failed);
+			assertEquals(Integer.valueOf(1), counts.get(Metrics.SCOPE + Expiring.class.getName() + Metrics.CLOSE_ERROR));
+		} finally {
+			Metrics.setRecorder(null);
+		}
+	}
+
+	protected Injector createInjector(final ExpiringScope scope) {
+		return Guice.createInjector(new Jsr250Module() {
+			@Override
+			protected void configure() {
+				super.configure();
+				bindScope(Expiring.class, scope);
+				requestInjection(scope);
+				bind(Lookup.class).in(Expiring.class);
+				bind(Failing.class).in(Expiring.class);
+				bind(Service.class).to(ShortLived.class).in(Expiring.class);
+			}
+		});
+	}
+
+	/**
+	 * A scope whose time only moves when it is advanced and whose refreshes only run when asked to
+	 */
+	protected static class ManualScope extends ExpiringScope {
+		final List<Runnable> refreshes = new ArrayList<Runnable>();
+		final List<Provider<?>> providers = new ArrayList<Provider<?>>();
+		final List<Boolean> closedWithLock = new ArrayList<Boolean>();
+		private long now;
+
+		public ManualScope(long ttl, long refreshAhead) {
+			super(ttl, refreshAhead, TimeUnit.MILLISECONDS);
+			setRefreshExecutor(new Executor() {
+				public void execute(Runnable command) {
+					refreshes.add(command);
+				}
+			});
+		}
+
+		@Override
+		public <T> Provider<T> scope(Key<T> key, Provider<T> creator) {
+			Provider<T> provider = super.scope(key, creator);
+			providers.add(provider);
+			return provider;
+		}
+
+		@Override
+		protected void closeReplaced(Key<?> key, Object value) {
+			boolean locked = false;
+			for (Provider<?> provider : providers) {
+				locked |= Thread.holdsLock(provider);
+			}
+			closedWithLock.add(locked);
+			super.closeReplaced(key, value);
+		}
+
+		@Override
+		protected long nanoTime() {
+			return now;
+		}
+
+		void advance(long millis) {
+			now += TimeUnit.MILLISECONDS.toNanos(millis);
+		}
+
+		void runRefreshes() {
+			List<Runnable> tasks = new ArrayList<Runnable>(refreshes);
+			refreshes.clear();
+			for (Runnable task : tasks) {
+				task.run();
+			}
+		}
+	}
+
+	public static class Lookup {
+		static final AtomicInteger created = new AtomicInteger();
+		volatile boolean closed;
+
+		public Lookup() {
+			created.incrementAndGet();
+		}
+
+		@PreDestroy
+		public void close() {
+			closed = true;
+		}
+	}
+
+	@Expiring(ttl = 1, unit = TimeUnit.HOURS)
+	public static class LongLived {
+	}
+
+	public static interface Service {
+	}
+
+	@Expiring(ttl = 50)
+	public static class ShortLived implements Service {
+	}
+
+	@Expiring(ttl = 100, refreshAhead = 100)
+	public static class Invalid {
+	}
+
+	public static class Failing {
+		@PreDestroy
+		public void close() {
+			throw new IllegalStateException("Failed to close");
+		}
+	}
+}
@@ -0,0 +1,194 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.guicerecipes.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.annotation.*;
+
+import junit.framework.*;
+
+import org.guicerecipes.jsr250.*;
+
+import com.google.inject.*;
+
+/** @version $Revision: 1.1 $ */
+public class UnitOfWorkScopeTest extends TestCase {
+	private static final List<String> closed = Collections.synchronizedList(new ArrayList<String>());
+
+	private final UnitOfWorkScope scope = new UnitOfWorkScope();
+	private final ExecutorService executor = Executors.newFixedThreadPool(2);
+	private Injector injector;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		closed.clear();
+		injector = Guice.createInjector(new Jsr250Module() {
+			@Override
+			protected void configure() {
+				super.configure();
+				bindScope(UnitOfWorkScoped.class, scope);
+				requestInjection(scope);
+				bind(Session.class).in(UnitOfWorkScoped.class);
+				bind(Transaction.class).in(UnitOfWorkScoped.class);
+			}
+		});
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		executor.shutdown();
+		super.tearDown();
+	}
+
+	public void testObjectsLiveInTheirUnitOfWork() throws Exception {
+		UnitOfWork first = scope.begin();
+		UnitOfWork second = scope.begin();
+
+		UnitOfWork previous = scope.enter(first);
+		assertNull(previous);
+		Transaction transaction = injector.getInstance(Transaction.class);
+		assertSame(transaction, injector.getInstance(Transaction.class));
+		assertSame(transaction.session, injector.getInstance(Session.class));
+		scope.exit(previous);
+		assertNull("Should not leave the unit of work on the thread", scope.getCurrent());
+
+		previous = scope.enter(second);
+		assertNotSame(transaction, injector.getInstance(Transaction.class));
+		scope.exit(previous);
+
+		first.close();
+		assertEquals("Should close in the reverse order of creation", Arrays.asList("Transaction", "Session"), closed);
+		assertTrue(first.isClosed());
+		assertNull(second.getParent());
+	}
+
+	public void testOutOfScope() throws Exception {
+		try {
+			injector.getInstance(Session.class);
+			fail("Should have thrown");
+		} catch (ProvisionException e) {
+			// expected
+		} catch (OutOfScopeException e) {
+			// expected
+		}
+	}
+
+	public void testPropagatesUnitOfWorkToOtherThreads() throws Exception {
+		final Session session = scope.call(new Callable<Session>() {
+			public Session call() throws Exception {
+				Session session = injector.getInstance(Session.class);
+				Future<Session> future = executor.submit(scope.wrap(new Callable<Session>() {
+					public Session call() throws Exception {
+						return injector.getInstance(Session.class);
+					}
+				}));
+				assertSame(session, future.get());
+
+				final BlockingQueue<Object> results = new LinkedBlockingQueue<Object>();
+				scope.wrap(executor).execute(new Runnable() {
+					public void run() {
+						results.add(injector.getInstance(Session.class));
+					}
+				});
+				assertSame(session, results.poll(5, TimeUnit.SECONDS));
+				return session;
+			}
+		});
+		assertTrue("Should have closed the unit of work", session.closed);
+	}
+
+	public void testForkedUnitOfWorkKeepsItsOwnObjects() throws Exception {
+		UnitOfWork parent = scope.begin();
+		UnitOfWork previous = scope.enter(parent);
+		Session session = injector.getInstance(Session.class);
+		scope.exit(previous);
+
+		UnitOfWork child = parent.fork();
+		previous = scope.enter(child);
+		Transaction transaction = injector.getInstance(Transaction.class);
+		assertSame("Should see the objects of the parent", session, transaction.session);
+		scope.exit(previous);
+		assertNull(parent.getObject(Key.get(Transaction.class)));
+
+		child.close();
+		assertEquals(Arrays.asList("Transaction"), closed);
+		assertFalse(session.closed);
+
+		parent.close();
+		assertTrue(session.closed);
+	}
+
+	public void testSlowObjectDoesNotBlockOtherKeys() throws Exception {
+		final UnitOfWork unit = scope.begin();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Provider<String> slow = new Provider<String>() {
+			public String get() {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new ProvisionException("Interrupted");
+				}
+				return new String("slow");
+			}
+		};
+
+		Callable<String> getSlow = new Callable<String>() {
+			public String call() throws Exception {
+				return unit.getObject(Key.get(String.class), slow);
+			}
+		};
+		Future<String> first = executor.submit(getSlow);
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		Future<String> second = executor.submit(getSlow);
+		assertNull("Should not return an object still being created", unit.getObject(Key.get(String.class)));
+		assertEquals(Integer.valueOf(42), unit.getObject(Key.get(Integer.class), new Provider<Integer>() {
+			public Integer get() {
+				return 42;
+			}
+		}));
+		release.countDown();
+		assertEquals("slow", first.get(5, TimeUnit.SECONDS));
+		assertSame("Should wait for the object being created", first.get(), second.get(5, TimeUnit.SECONDS));
+		unit.close();
+	}
+
+	public static class Session {
+		volatile boolean closed;
+
+		@PreDestroy
+		public void close() {
+			closed = true;
+			UnitOfWorkScopeTest.closed.add("Session");
+		}
+	}
+
+	public static class Transaction {
+		@Inject
+		Session session;
+
+		@PreDestroy
+		public void close() {
+			UnitOfWorkScopeTest.closed.add("Transaction");
+		}
+	}
+}
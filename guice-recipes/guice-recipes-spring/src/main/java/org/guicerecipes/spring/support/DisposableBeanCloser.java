@@ -26,7 +26,11 @@ import org.springframework.beans.factory.*;
  * 
  * @version $Revision: 1.1 $
  */
-public class DisposableBeanCloser implements Closer {
+public class DisposableBeanCloser implements TypedCloser {
+	public boolean canClose(Class<?> type) {
+		return DisposableBean.class.isAssignableFrom(type);
+	}
+
 	public void close(Object object) throws Throwable {
 		if (object instanceof DisposableBean) {
 			DisposableBean disposableBean = (DisposableBean) object;